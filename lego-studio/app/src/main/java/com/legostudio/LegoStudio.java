@@ -0,0 +1,1050 @@
+package com.legostudio;
+
+import com.legostudio.analysis.StabilityAnalyzer;
+import com.legostudio.brickify.Brickifier;
+import com.legostudio.input.InputHandler;
+import com.legostudio.io.AutosaveLog;
+import com.legostudio.io.GeometryExporter;
+import com.legostudio.io.Importers;
+import com.legostudio.io.LDrawExporter;
+import com.legostudio.io.RegionFile;
+import com.legostudio.io.RegionStreamer;
+import com.legostudio.io.WorldFile;
+import com.legostudio.model.*;
+import com.legostudio.render.Camera;
+import com.legostudio.render.Renderer;
+import com.legostudio.render.UIRenderer;
+import org.joml.Vector3f;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.glViewport;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Main application class for the 3D Lego Studio.
+ * Model files given as arguments (e.g. MagicaVoxel .vox) are imported at startup.
+ *
+ * Controls:
+ * - Right mouse drag: Rotate camera
+ * - Middle mouse drag: Pan camera
+ * - Scroll wheel: Zoom in/out
+ * - Left click: Place brick
+ * - R: Rotate brick
+ * - X/Delete/Backspace: Delete the brick under the cursor
+ * - Q/[: Previous brick type
+ * - E/]: Next brick type
+ * - ,: Previous color
+ * - .: Next color
+ * - W/PageUp: Raise placement height
+ * - S/PageDown: Lower placement height
+ * - A: Toggle auto-stack (snap ghost onto the brick face under the cursor)
+ * - T: Toggle the stress view (highlight bricks likely to break off)
+ * - G: Recolor every brick of the hovered brick's color to the current color
+ * - H: Replace every brick of the hovered brick's type with the current type, where it fits
+ * - B: Box select (press at two opposite corners)
+ * - F: Select the assembly under the cursor
+ * - M: Move the selection (left click drops it, R turns it)
+ * - Ctrl+C/Ctrl+V: Copy the selection and paste copies (left click stamps one)
+ * - O: Merge the selection (or every brick) into fewer, larger bricks
+ * - Ctrl+E: Export the selection (or every brick) as an LDraw model
+ * - Ctrl+Shift+E: Export the visible geometry as binary glTF, in the background
+ * - Ctrl+S/Ctrl+O: Save the world, or reopen the saved world
+ * - Ctrl+Shift+S/Ctrl+Shift+O: Save the world as regions, or stream the saved regions back in
+ * - C: Clear all bricks
+ * - Ctrl+Z: Undo
+ * - Ctrl+Y/Ctrl+Shift+Z: Redo
+ * - Escape: Cancel move/paste/selection, otherwise exit
+ */
+public class LegoStudio implements InputHandler.BrickPlacementListener {
+    private static final int INITIAL_WIDTH = 1280;
+    private static final int INITIAL_HEIGHT = 720;
+    private static final int GRID_SIZE = 32; // Size of the rendered baseplate in studs
+    private static final Path EXPORT_FILE = Path.of("lego-studio.ldr");
+    private static final Path GEOMETRY_FILE = Path.of("lego-studio.glb");
+    private static final Path WORLD_FILE = Path.of("lego-studio." + WorldFile.EXTENSION);
+    private static final Path AUTOSAVE_DIR = Path.of("lego-studio-autosave");
+    private static final Path REGION_DIR = Path.of("lego-studio-regions");
+    private static final int AUTO_STACK_ITERATIONS = 4;
+    private static final long RESIDENT_BUDGET = Runtime.getRuntime().maxMemory() / 4; // Chunk IDs kept in memory
+
+    private long window;
+    private Renderer renderer;
+    private UIRenderer uiRenderer;
+    private Camera camera;
+    private InputHandler inputHandler;
+    private BrickWorld world;
+    private AutosaveLog autosave; // Null if autosave could not start
+    private RegionStreamer regions; // Non-null while a region world streams in around the camera
+    private Thread geometryExport; // Last background geometry export
+
+    // Help panel state
+    private boolean showHelpPanel = false;
+
+    // Window size for ray casting (screen coordinates, not pixels)
+    private int windowWidth = INITIAL_WIDTH;
+    private int windowHeight = INITIAL_HEIGHT;
+    // Framebuffer size for viewport (pixels, may differ on Retina displays)
+    private int framebufferWidth = INITIAL_WIDTH;
+    private int framebufferHeight = INITIAL_HEIGHT;
+
+    // Current brick placement state
+    private BrickType[] brickTypes = BrickType.values();
+    private BrickColor[] brickColors = BrickColor.values();
+    private int currentTypeIndex = 4;  // Start with 2x2 brick
+    private int currentColorIndex = 0; // Start with red
+    private int currentHeight = 0;     // Placement height in plates
+    private int currentRotation = 0;
+    private boolean autoStack = false; // Snap placement height to the surface under the cursor
+    private StabilityAnalyzer stability; // Non-null while the stress view is on
+
+    // Ghost brick for preview
+    private Brick ghostBrick;
+    private boolean ghostValid = false;
+    private long ghostVersion = -1; // World version ghostValid was computed against
+
+    // Selection state
+    private Selection selection;        // Highlighted bricks, or null
+    private long selectionVersion;      // World version the selection was last known current at
+    private Selection clipboard;
+    private PastePreview pastePreview;  // Non-null while a move or paste follows the cursor
+    private int[] boxCorner;            // First corner of a box selection in progress
+
+    // Picking state, refreshed every frame
+    private final Vector3f rayOrigin = new Vector3f();
+    private final Vector3f rayDirection = new Vector3f();
+    private RaycastHit hoverHit;
+
+    // Model files named on the command line, imported at startup
+    private final List<Path> modelFiles = new ArrayList<>();
+
+    /**
+     * @param args Model files to import, e.g. MagicaVoxel .vox
+     */
+    public static void main(String[] args) {
+        LegoStudio app = new LegoStudio();
+        for (String arg : args) {
+            app.modelFiles.add(Path.of(arg));
+        }
+        app.run();
+    }
+
+    public void run() {
+        try {
+            init();
+            loop();
+        } finally {
+            cleanup();
+        }
+    }
+
+    private void init() {
+        // Setup error callback
+        GLFWErrorCallback.createPrint(System.err).set();
+
+        if (!glfwInit()) {
+            throw new IllegalStateException("Unable to initialize GLFW");
+        }
+
+        // Configure GLFW
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE); // Required for macOS
+        glfwWindowHint(GLFW_SAMPLES, 4); // 4x antialiasing
+
+        // Create window
+        window = glfwCreateWindow(INITIAL_WIDTH, INITIAL_HEIGHT, "Lego Studio 3D", NULL, NULL);
+        if (window == NULL) {
+            glfwTerminate();
+            throw new RuntimeException("Failed to create GLFW window. Make sure your system supports OpenGL 3.3+");
+        }
+
+        // Center window on screen
+        var vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
+        if (vidmode != null) {
+            glfwSetWindowPos(window,
+                    (vidmode.width() - INITIAL_WIDTH) / 2,
+                    (vidmode.height() - INITIAL_HEIGHT) / 2);
+        }
+
+        glfwMakeContextCurrent(window);
+        glfwSwapInterval(1); // Enable vsync
+        glfwShowWindow(window);
+
+        // Initialize OpenGL
+        GL.createCapabilities();
+
+        // Initialize components
+        camera = new Camera();
+        camera.setTarget(GRID_SIZE / 2.0f, 2, GRID_SIZE / 2.0f); // Center on grid
+        camera.setAspectRatio((float) INITIAL_WIDTH / INITIAL_HEIGHT);
+
+        renderer = new Renderer();
+        renderer.init(GRID_SIZE);
+
+        uiRenderer = new UIRenderer();
+        uiRenderer.init();
+
+        world = new BrickWorld(BrickWorld.UNBOUNDED);
+        world.setResidentBudget(RESIDENT_BUDGET);
+
+        // Import the models given on the command line, or pick up the last session
+        if (!modelFiles.isEmpty()) {
+            importModels();
+            startAutosave();
+        } else {
+            try {
+                if (!recoverAutosave()) {
+                    addStarterBricks();
+                }
+                startAutosave();
+            } catch (IOException e) {
+                // Keep the unreadable autosave instead of replacing it with this session
+                addStarterBricks();
+                System.err.println("Could not recover the last session, autosave is off: " + e.getMessage());
+            }
+        }
+
+        inputHandler = new InputHandler(window, camera);
+        inputHandler.setPlacementListener(this);
+        inputHandler.setResizeListener(() -> {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                IntBuffer fw = stack.mallocInt(1);
+                IntBuffer fh = stack.mallocInt(1);
+                glfwGetFramebufferSize(window, fw, fh);
+                framebufferWidth = fw.get(0);
+                framebufferHeight = fh.get(0);
+                glViewport(0, 0, framebufferWidth, framebufferHeight);
+
+                IntBuffer ww = stack.mallocInt(1);
+                IntBuffer wh = stack.mallocInt(1);
+                glfwGetWindowSize(window, ww, wh);
+                windowWidth = ww.get(0);
+                windowHeight = wh.get(0);
+            }
+        });
+
+        // Initial viewport setup
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer fw = stack.mallocInt(1);
+            IntBuffer fh = stack.mallocInt(1);
+            glfwGetFramebufferSize(window, fw, fh);
+            framebufferWidth = fw.get(0);
+            framebufferHeight = fh.get(0);
+            glViewport(0, 0, framebufferWidth, framebufferHeight);
+
+            IntBuffer ww = stack.mallocInt(1);
+            IntBuffer wh = stack.mallocInt(1);
+            glfwGetWindowSize(window, ww, wh);
+            windowWidth = ww.get(0);
+            windowHeight = wh.get(0);
+        }
+
+        printControls();
+    }
+
+    private void addStarterBricks() {
+        // Create a small starter structure near center of grid
+        int cx = GRID_SIZE / 2 - 3;
+        int cz = GRID_SIZE / 2 - 2;
+        world.addBrick(new Brick(BrickType.BRICK_2X4, BrickColor.RED, cx, 0, cz));
+        world.addBrick(new Brick(BrickType.BRICK_2X4, BrickColor.RED, cx + 4, 0, cz));
+        world.addBrick(new Brick(BrickType.BRICK_2X4, BrickColor.BLUE, cx + 2, 3, cz));
+        world.addBrick(new Brick(BrickType.BRICK_2X2, BrickColor.YELLOW, cx, 6, cz));
+        world.addBrick(new Brick(BrickType.BRICK_2X2, BrickColor.YELLOW, cx + 4, 6, cz));
+    }
+
+    private boolean recoverAutosave() throws IOException {
+        long start = System.nanoTime();
+        if (!AutosaveLog.recover(world, AUTOSAVE_DIR)) {
+            return false;
+        }
+        System.out.printf("Recovered the last session: %d bricks in %d ms%n", world.getBrickCount(),
+                (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    private void startAutosave() {
+        try {
+            autosave = new AutosaveLog(world, AUTOSAVE_DIR);
+        } catch (IOException e) {
+            System.err.println("Autosave disabled: " + e.getMessage());
+        }
+    }
+
+    private void importModels() {
+        for (Path file : modelFiles) {
+            if (WorldFile.isWorldFile(file)) {
+                openWorld(file);
+                continue;
+            }
+            if (RegionFile.isRegionWorld(file)) {
+                openRegions(file);
+                continue;
+            }
+            try {
+                long start = System.nanoTime();
+                BatchResult result = Importers.load(world, file, GRID_SIZE / 2, GRID_SIZE / 2);
+                System.out.printf("Imported %s: %d bricks in %d ms%s%n", file.getFileName(),
+                        result.getAcceptedCount(), (System.nanoTime() - start) / 1_000_000,
+                        result.getRejectedCount() > 0 ? " (" + result.getRejectedCount() + " overlapping skipped)" : "");
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not import " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void printControls() {
+        System.out.println("""
+
+            ╔══════════════════════════════════════════╗
+            ║         LEGO STUDIO 3D CONTROLS          ║
+            ╠══════════════════════════════════════════╣
+            ║  CAMERA:                                 ║
+            ║    Right mouse drag  - Rotate           ║
+            ║    Middle mouse drag - Pan              ║
+            ║    Scroll wheel      - Zoom             ║
+            ╠══════════════════════════════════════════╣
+            ║  BUILDING:                               ║
+            ║    Left click        - Place brick      ║
+            ║    R                 - Rotate brick     ║
+            ║    X / Delete        - Delete brick     ║
+            ║    Q / [             - Previous type    ║
+            ║    E / ]             - Next type        ║
+            ║    , (comma)         - Previous color   ║
+            ║    . (period)        - Next color       ║
+            ║    W / PageUp        - Raise height     ║
+            ║    S / PageDown      - Lower height     ║
+            ║    A                 - Auto-stack       ║
+            ║    T                 - Stress view      ║
+            ║    G                 - Recolor matching ║
+            ║    H                 - Replace matching ║
+            ║    B                 - Box select       ║
+            ║    F                 - Select assembly  ║
+            ║    M                 - Move selection   ║
+            ║    Ctrl+C / Ctrl+V   - Copy / Paste     ║
+            ║    O                 - Merge bricks     ║
+            ║    Ctrl+E            - Export LDraw     ║
+            ║    Ctrl+Shift+E      - Export glTF      ║
+            ║    Ctrl+S / Ctrl+O   - Save / Open      ║
+            ║    Ctrl+Shift+S / O  - Regions          ║
+            ║    C                 - Clear all        ║
+            ║    Ctrl+Z            - Undo             ║
+            ║    Ctrl+Y            - Redo             ║
+            ║    Escape            - Cancel / Exit    ║
+            ╚══════════════════════════════════════════╝
+            """);
+    }
+
+    private void loop() {
+        long lastTime = System.nanoTime();
+        int frames = 0;
+        double fpsTimer = 0;
+
+        while (!glfwWindowShouldClose(window)) {
+            long currentTime = System.nanoTime();
+            double deltaTime = (currentTime - lastTime) / 1_000_000_000.0;
+            lastTime = currentTime;
+
+            // FPS counter
+            fpsTimer += deltaTime;
+            frames++;
+            if (fpsTimer >= 1.0) {
+                glfwSetWindowTitle(window, String.format(
+                        "Lego Studio 3D - %d FPS | Bricks: %d | Type: %s | Color: %s | Height: %d%s",
+                        frames, world.getBrickCount(),
+                        brickTypes[currentTypeIndex], brickColors[currentColorIndex], currentHeight,
+                        stability != null ? " | At risk: " + stability.getFailingCount() : ""));
+                frames = 0;
+                fpsTimer = 0;
+            }
+
+            // Drop a selection whose bricks were edited since it was made
+            if (selection != null && selectionVersion != world.getVersion()) {
+                if (world.isCurrent(selection)) {
+                    selectionVersion = world.getVersion();
+                } else {
+                    setSelection(null);
+                }
+            }
+
+            // Update ghost brick position
+            updateGhostBrick();
+
+            // Pick up finished stability results and queue edited assemblies
+            if (stability != null) {
+                stability.update();
+            }
+
+            // Stream in region chunks and keep chunks in memory around the camera
+            Vector3f target = camera.getTarget();
+            world.setPagingFocus((int) Math.floor(target.x), (int) Math.floor(target.z));
+            if (regions != null) {
+                regions.update(target.x, target.z);
+            }
+
+            // Render 3D scene
+            renderer.setPastePreview(pastePreview);
+            renderer.render(world, camera, ghostBrick, ghostValid);
+
+            // Render UI overlay
+            renderUI();
+
+            glfwSwapBuffers(window);
+            glfwPollEvents();
+        }
+    }
+
+    private void updateGhostBrick() {
+        float mouseX = (float) inputHandler.getMouseX();
+        float mouseY = (float) inputHandler.getMouseY();
+        BrickType type = brickTypes[currentTypeIndex];
+
+        // Pick the brick under the cursor
+        camera.getPickRay(mouseX, mouseY, windowWidth, windowHeight, rayOrigin, rayDirection);
+        hoverHit = world.raycast(rayOrigin, rayDirection, camera.getFarPlane());
+
+        if (pastePreview != null) {
+            updatePasteGhost(mouseX, mouseY);
+            return;
+        }
+
+        if (autoStack && hoverHit != null) {
+            // Place against the picked face, shifting the footprint so it extends away from the hit brick
+            int gridX = hoverHit.getAdjacentX();
+            int gridY = hoverHit.getAdjacentY();
+            int gridZ = hoverHit.getAdjacentZ();
+            if (hoverHit.getNormalX() < 0) gridX -= type.getActualWidth(currentRotation) - 1;
+            if (hoverHit.getNormalZ() < 0) gridZ -= type.getActualLength(currentRotation) - 1;
+            if (hoverHit.getNormalY() < 0) gridY -= type.getHeight() - 1;
+            currentHeight = Math.max(0, gridY);
+            setGhostBrick(type, gridX, currentHeight, gridZ);
+            return;
+        }
+
+        // Otherwise find where the mouse intersects the placement plane
+        var worldPos = camera.screenToWorldOnPlane(mouseX, mouseY, windowWidth, windowHeight,
+                currentHeight * 0.4f); // Convert plates to world units
+
+        if (autoStack) {
+            // Re-intersect at the surface height found under the cursor until it settles;
+            // each step is a constant-time heightmap lookup over the brick's footprint
+            for (int i = 0; i < AUTO_STACK_ITERATIONS && worldPos != null; i++) {
+                int height = world.getStackHeight(type, (int) Math.floor(worldPos.x),
+                        (int) Math.floor(worldPos.z), currentRotation);
+                if (height == currentHeight) {
+                    break;
+                }
+                currentHeight = height;
+                worldPos = camera.screenToWorldOnPlane(mouseX, mouseY, windowWidth, windowHeight,
+                        currentHeight * 0.4f);
+            }
+        }
+
+        if (worldPos == null) {
+            ghostBrick = null;
+            ghostValid = false;
+            return;
+        }
+
+        // Convert world position to grid coordinates (the world has no X/Z bounds)
+        int gridX = (int) Math.floor(worldPos.x);
+        int gridZ = (int) Math.floor(worldPos.z);
+
+        setGhostBrick(type, gridX, currentHeight, gridZ);
+    }
+
+    /**
+     * Follow the cursor with the selection ghost, centered on the cursor in X/Z.
+     * The preview revalidates incrementally as it moves.
+     */
+    private void updatePasteGhost(float mouseX, float mouseY) {
+        ghostBrick = null;
+        int gridX, gridY, gridZ;
+        if (autoStack && hoverHit != null) {
+            gridX = hoverHit.getAdjacentX();
+            gridY = Math.max(0, hoverHit.getAdjacentY());
+            gridZ = hoverHit.getAdjacentZ();
+        } else {
+            var worldPos = camera.screenToWorldOnPlane(mouseX, mouseY, windowWidth, windowHeight,
+                    currentHeight * 0.4f);
+            if (worldPos == null) {
+                return;
+            }
+            gridX = (int) Math.floor(worldPos.x);
+            gridY = currentHeight;
+            gridZ = (int) Math.floor(worldPos.z);
+        }
+        Selection ghost = pastePreview.getSelection();
+        pastePreview.moveTo(gridX - ghost.getSizeX() / 2, gridY, gridZ - ghost.getSizeZ() / 2);
+    }
+
+    private void setGhostBrick(BrickType type, int gridX, int gridY, int gridZ) {
+        // Revalidate only when the ghost moved or the world changed since the last check
+        boolean unchanged = ghostBrick != null && ghostVersion == world.getVersion()
+                && ghostBrick.getType() == type && ghostBrick.getRotation() == currentRotation
+                && ghostBrick.getPosition().equals(gridX, gridY, gridZ);
+
+        ghostBrick = new Brick(type, brickColors[currentColorIndex], gridX, gridY, gridZ);
+        ghostBrick.setRotation(currentRotation);
+
+        if (!unchanged) {
+            ghostValid = world.isValidPlacement(ghostBrick);
+            ghostVersion = world.getVersion();
+        }
+    }
+
+    // InputHandler.BrickPlacementListener implementation
+
+    @Override
+    public void onPlace() {
+        if (pastePreview != null) {
+            placeSelection();
+            return;
+        }
+        if (ghostBrick != null && ghostValid) {
+            Brick newBrick = new Brick(ghostBrick.getType(), ghostBrick.getColor(),
+                    ghostBrick.getPosition().x, ghostBrick.getPosition().y, ghostBrick.getPosition().z);
+            newBrick.setRotation(ghostBrick.getRotation());
+            int id = world.addBrick(newBrick.getType(), newBrick.getColor(), newBrick.getPosition().x,
+                    newBrick.getPosition().y, newBrick.getPosition().z, newBrick.getRotation());
+            if (id != BrickStore.NO_BRICK) {
+                System.out.println("Placed: " + newBrick);
+                warnIfFloating(new int[] {id});
+            }
+        }
+    }
+
+    @Override
+    public void onDelete() {
+        // Prefer the visible brick under the cursor, at any height
+        int id = BrickStore.NO_BRICK;
+        if (hoverHit != null) {
+            id = hoverHit.getBrickId();
+            hoverHit = null;
+        } else if (ghostBrick != null) {
+            id = world.getBrickIdAt(
+                    ghostBrick.getPosition().x,
+                    ghostBrick.getPosition().y,
+                    ghostBrick.getPosition().z);
+        }
+        Brick removed = world.getBrick(id);
+        if (removed != null) {
+            int[] neighbours = world.getConnectedBricks(id);
+            world.removeBrickById(id);
+            System.out.println("Removed: " + removed);
+            warnIfFloating(neighbours);
+        }
+    }
+
+    /**
+     * Drop the moved selection or stamp a copy of the pasted one at the ghost position.
+     */
+    private void placeSelection() {
+        if (!pastePreview.isValid()) {
+            return;
+        }
+        BatchResult result = pastePreview.commit();
+        if (!result.isCommitted()) {
+            System.out.println("Selection no longer matches the world; move cancelled");
+            pastePreview = null;
+            setSelection(null);
+            return;
+        }
+        int[] ids = new int[result.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = result.getId(i);
+        }
+        if (pastePreview.isMoving()) {
+            // The moved bricks stay selected; keep the copy ghost for further pastes
+            pastePreview = null;
+            setSelection(world.select(ids));
+            System.out.println("Moved " + ids.length + " brick(s)");
+        } else {
+            System.out.println("Pasted " + ids.length + " brick(s)");
+        }
+        warnIfFloating(ids);
+    }
+
+    private void setSelection(Selection selection) {
+        this.selection = selection;
+        this.selectionVersion = world.getVersion();
+        renderer.setSelection(selection);
+    }
+
+    /**
+     * Report assemblies among the given bricks that no longer reach the baseplate.
+     */
+    private void warnIfFloating(int[] ids) {
+        for (int i = 0; i < ids.length; i++) {
+            if (world.isGrounded(ids[i])) {
+                continue;
+            }
+            boolean reported = false;
+            for (int j = 0; j < i; j++) {
+                reported |= world.isConnected(ids[i], ids[j]);
+            }
+            if (!reported) {
+                System.out.println("Warning: " + world.getAssemblySize(ids[i])
+                        + " brick(s) not connected to the baseplate");
+            }
+        }
+    }
+
+    @Override
+    public void onRotate() {
+        if (pastePreview != null) {
+            pastePreview = new PastePreview(world, pastePreview.getSelection().rotated(), pastePreview.isMoving());
+            return;
+        }
+        currentRotation = (currentRotation + 90) % 360;
+        System.out.println("Rotation: " + currentRotation + "°");
+    }
+
+    @Override
+    public void onBrickTypeNext() {
+        currentTypeIndex = (currentTypeIndex + 1) % brickTypes.length;
+        System.out.println("Brick type: " + brickTypes[currentTypeIndex]);
+    }
+
+    @Override
+    public void onBrickTypePrev() {
+        currentTypeIndex = (currentTypeIndex - 1 + brickTypes.length) % brickTypes.length;
+        System.out.println("Brick type: " + brickTypes[currentTypeIndex]);
+    }
+
+    @Override
+    public void onColorNext() {
+        currentColorIndex = (currentColorIndex + 1) % brickColors.length;
+        System.out.println("Color: " + brickColors[currentColorIndex]);
+    }
+
+    @Override
+    public void onColorPrev() {
+        currentColorIndex = (currentColorIndex - 1 + brickColors.length) % brickColors.length;
+        System.out.println("Color: " + brickColors[currentColorIndex]);
+    }
+
+    @Override
+    public void onHeightUp() {
+        currentHeight++;
+        System.out.println("Height: " + currentHeight + " plates");
+    }
+
+    @Override
+    public void onHeightDown() {
+        currentHeight = Math.max(0, currentHeight - 1);
+        System.out.println("Height: " + currentHeight + " plates");
+    }
+
+    @Override
+    public void onClear() {
+        stopStreaming();
+        world.clear();
+        System.out.println("Cleared all bricks (Ctrl+Z to undo)");
+    }
+
+    @Override
+    public void onRecolorMatching() {
+        if (hoverHit == null) {
+            return;
+        }
+        BrickColor from = world.getBrickStore().getColor(hoverHit.getBrickId());
+        int count = world.recolorAll(from, brickColors[currentColorIndex]);
+        System.out.println("Recolored " + count + " " + from + " brick(s) to " + brickColors[currentColorIndex]);
+    }
+
+    @Override
+    public void onReplaceMatching() {
+        if (hoverHit == null) {
+            return;
+        }
+        BrickType from = world.getBrickStore().getType(hoverHit.getBrickId());
+        BatchResult result = world.replaceAll(from, brickTypes[currentTypeIndex]);
+        System.out.println("Replaced " + (result.size() - result.getRejectedCount()) + " " + from + " brick(s) with "
+                + brickTypes[currentTypeIndex] + ", " + result.getRejectedCount() + " did not fit");
+    }
+
+    @Override
+    public void onBoxSelect() {
+        // Corner at the brick under the cursor, or the ghost cell on the placement plane
+        int[] corner;
+        if (hoverHit != null) {
+            corner = new int[] {hoverHit.getCellX(), hoverHit.getCellY(), hoverHit.getCellZ()};
+        } else if (ghostBrick != null) {
+            var pos = ghostBrick.getPosition();
+            corner = new int[] {pos.x, pos.y, pos.z};
+        } else {
+            return;
+        }
+        if (boxCorner == null) {
+            boxCorner = corner;
+            System.out.println("Box select: press B again at the opposite corner");
+            return;
+        }
+        setSelection(world.selectBox(boxCorner[0], boxCorner[1], boxCorner[2], corner[0], corner[1], corner[2]));
+        boxCorner = null;
+        System.out.println("Selected " + selection.size() + " brick(s)");
+    }
+
+    @Override
+    public void onSelectAssembly() {
+        if (hoverHit == null) {
+            return;
+        }
+        setSelection(world.selectAssembly(hoverHit.getBrickId()));
+        System.out.println("Selected assembly of " + selection.size() + " brick(s)");
+    }
+
+    @Override
+    public void onMoveSelection() {
+        if (selection == null || selection.isEmpty() || pastePreview != null) {
+            return;
+        }
+        pastePreview = new PastePreview(world, selection, true);
+    }
+
+    @Override
+    public void onBrickify() {
+        if (pastePreview != null) {
+            return;
+        }
+        Brickifier.Result result = selection != null
+                ? Brickifier.optimize(world, selection.getSourceIds())
+                : Brickifier.optimize(world);
+        if (result.isApplied()) {
+            setSelection(null);
+        }
+        System.out.println(result);
+    }
+
+    @Override
+    public void onExport() {
+        try {
+            long start = System.nanoTime();
+            int count;
+            if (selection != null) {
+                count = selection.size();
+                LDrawExporter.write(world.getBrickStore(), selection.getSourceIds(), EXPORT_FILE);
+            } else {
+                loadAllRegions();
+                count = world.getBrickCount();
+                LDrawExporter.write(world.getBrickStore(), EXPORT_FILE);
+            }
+            System.out.printf("Exported %d brick(s) to %s in %d ms%n", count, EXPORT_FILE.toAbsolutePath(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Could not export " + EXPORT_FILE + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onExportGeometry() {
+        if (geometryExport != null && geometryExport.isAlive()) {
+            System.out.println("Geometry export already running");
+            return;
+        }
+        WorldSnapshot snapshot;
+        try {
+            loadAllRegions();
+            snapshot = world.snapshot();
+        } catch (IOException e) {
+            System.err.println("Could not export " + GEOMETRY_FILE + ": " + e.getMessage());
+            return;
+        }
+        // Meshing a large world takes seconds; the snapshot lets it run off the main thread
+        geometryExport = new Thread(() -> {
+            try {
+                long start = System.nanoTime();
+                long triangles = GeometryExporter.export(snapshot, GEOMETRY_FILE, true);
+                System.out.printf("Exported %d brick(s) as %d triangles to %s in %d ms%n", snapshot.getBrickCount(),
+                        triangles, GEOMETRY_FILE.toAbsolutePath(), (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException e) {
+                System.err.println("Could not export " + GEOMETRY_FILE + ": " + e.getMessage());
+            }
+        }, "geometry-export");
+        geometryExport.setDaemon(true);
+        geometryExport.start();
+        System.out.println("Exporting geometry to " + GEOMETRY_FILE.toAbsolutePath() + "...");
+    }
+
+    @Override
+    public void onSave() {
+        try {
+            loadAllRegions();
+            long start = System.nanoTime();
+            WorldFile.save(world.getBrickStore(), WORLD_FILE);
+            System.out.printf("Saved %d brick(s) to %s in %d ms%n", world.getBrickCount(), WORLD_FILE.toAbsolutePath(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Could not save " + WORLD_FILE + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onOpen() {
+        if (pastePreview != null) {
+            return;
+        }
+        openWorld(WORLD_FILE);
+    }
+
+    @Override
+    public void onSaveRegions() {
+        try {
+            loadAllRegions();
+            long start = System.nanoTime();
+            RegionFile.save(world.getBrickStore(), REGION_DIR);
+            System.out.printf("Saved %d brick(s) as regions in %s in %d ms%n", world.getBrickCount(),
+                    REGION_DIR.toAbsolutePath(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Could not save " + REGION_DIR + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onOpenRegions() {
+        if (pastePreview != null) {
+            return;
+        }
+        openRegions(REGION_DIR);
+    }
+
+    /**
+     * Replace the world's bricks with a region world that streams in around the camera.
+     * Loaded bricks are not part of the undo history, so the history is cleared.
+     */
+    private void openRegions(Path directory) {
+        stopStreaming();
+        try {
+            long start = System.nanoTime();
+            world.clear();
+            world.clearHistory();
+            setSelection(null);
+            Vector3f target = camera.getTarget();
+            regions = RegionStreamer.open(world, directory, target.x, target.z);
+            System.out.printf("Opened %s: %d bricks near the camera in %d ms, streaming the rest%n",
+                    directory.getFileName(), world.getBrickCount(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Could not open " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bring in every region chunk not streamed in yet, so the whole world can be saved or exported.
+     */
+    private void loadAllRegions() throws IOException {
+        if (regions == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        regions.loadAll();
+        System.out.printf("Loaded the rest of the regions: %d bricks in %d ms%n", world.getBrickCount(),
+                (System.nanoTime() - start) / 1_000_000);
+        stopStreaming();
+    }
+
+    private void stopStreaming() {
+        if (regions == null) {
+            return;
+        }
+        if (regions.getRejectedCount() > 0) {
+            System.out.println(regions.getRejectedCount()
+                    + " stored brick(s) were dropped: something was built in their place");
+        }
+        regions.close();
+        regions = null;
+    }
+
+    /**
+     * Replace the world's bricks with a saved world, as one undoable step.
+     */
+    private void openWorld(Path file) {
+        stopStreaming();
+        try {
+            long start = System.nanoTime();
+            BrickBatch bricks = WorldFile.load(file);
+            world.beginBatch();
+            try {
+                world.clear();
+                world.addBricks(bricks);
+            } finally {
+                world.endBatch();
+            }
+            setSelection(null);
+            System.out.printf("Opened %s: %d bricks in %d ms%n", file.getFileName(), world.getBrickCount(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.err.println("Could not open " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onCopy() {
+        if (selection == null || selection.isEmpty()) {
+            return;
+        }
+        clipboard = selection;
+        System.out.println("Copied " + clipboard.size() + " brick(s)");
+    }
+
+    @Override
+    public void onPaste() {
+        if (clipboard != null) {
+            pastePreview = new PastePreview(world, clipboard, false);
+        }
+    }
+
+    @Override
+    public boolean onCancel() {
+        if (pastePreview != null) {
+            pastePreview = null;
+        } else if (boxCorner != null) {
+            boxCorner = null;
+        } else if (selection != null) {
+            setSelection(null);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void onUndo() {
+        System.out.println(world.undo() ? "Undo" : "Nothing to undo");
+    }
+
+    @Override
+    public void onRedo() {
+        System.out.println(world.redo() ? "Redo" : "Nothing to redo");
+    }
+
+    @Override
+    public void onToggleHelp() {
+        showHelpPanel = !showHelpPanel;
+    }
+
+    @Override
+    public void onToggleAutoStack() {
+        autoStack = !autoStack;
+        System.out.println("Auto-stack: " + (autoStack ? "on" : "off"));
+    }
+
+    @Override
+    public void onToggleStability() {
+        if (stability == null) {
+            stability = new StabilityAnalyzer(world);
+        } else {
+            stability.close();
+            stability = null;
+        }
+        renderer.setStabilityOverlay(stability);
+        System.out.println("Stress view: " + (stability != null ? "on" : "off"));
+    }
+
+    private void renderUI() {
+        // Use framebuffer size for UI rendering on Retina displays
+        uiRenderer.setScreenSize(framebufferWidth, framebufferHeight);
+        uiRenderer.beginRender();
+
+        // Scale UI elements for Retina (use ratio of framebuffer to window)
+        float dpiScale = (float) framebufferWidth / windowWidth;
+
+        float scale = 2.0f * dpiScale;
+        float padding = 10.0f * dpiScale;
+
+        if (showHelpPanel) {
+            String[] controls = {
+                    "Left click - Place",
+                    "R - Rotate",
+                    "X - Delete",
+                    "Q/E - Brick type",
+                    "Comma/Period - Color",
+                    "W/S - Height",
+                    "A - Auto-stack",
+                    "T - Stress view",
+                    "Right drag - Camera",
+                    "Scroll - Zoom",
+                    "G/H - Recolor/Replace matching",
+                    "B/F - Box/Assembly select",
+                    "M - Move selection",
+                    "Ctrl+C/Ctrl+V - Copy/Paste",
+                    "O - Merge into larger bricks",
+                    "Ctrl+E - Export LDraw",
+                    "Ctrl+Shift+E - Export glTF",
+                    "Ctrl+S/Ctrl+O - Save/Open",
+                    "Ctrl+Shift+S/O - Save/Open regions",
+                    "C - Clear all",
+                    "Ctrl+Z/Ctrl+Y - Undo/Redo",
+                    "I - Close help"
+            };
+
+            // Draw semi-transparent background panel, sized to fit the longest line
+            float lineHeight = uiRenderer.getTextHeight(scale) + 4 * dpiScale;
+            float textWidth = uiRenderer.getTextWidth("CONTROLS", scale);
+            for (String line : controls) {
+                textWidth = Math.max(textWidth, uiRenderer.getTextWidth(line, scale));
+            }
+            float panelWidth = Math.max(280 * dpiScale, textWidth + 20 * dpiScale);
+            float panelHeight = (controls.length + 1) * lineHeight + 25 * dpiScale;
+            float panelX = padding;
+            float panelY = padding;
+            uiRenderer.drawRect(panelX, panelY, panelWidth, panelHeight, 0.0f, 0.0f, 0.0f, 0.7f);
+
+            // Draw controls text
+            float textX = panelX + 10 * dpiScale;
+            float textY = panelY + 10 * dpiScale;
+
+            uiRenderer.drawText("CONTROLS", textX, textY, scale, 1.0f, 0.85f, 0.0f, 1.0f);
+            textY += lineHeight + 5 * dpiScale;
+
+            for (String line : controls) {
+                uiRenderer.drawText(line, textX, textY, scale, 1.0f, 1.0f, 1.0f, 0.9f);
+                textY += lineHeight;
+            }
+        } else {
+            // Draw hint text in bottom-left corner
+            String hint = "Press I for controls";
+            float textY = framebufferHeight - uiRenderer.getTextHeight(scale) - padding;
+            uiRenderer.drawText(hint, padding, textY, scale, 1.0f, 1.0f, 1.0f, 0.5f);
+        }
+
+        uiRenderer.endRender();
+    }
+
+    private void cleanup() {
+        if (geometryExport != null) {
+            try {
+                geometryExport.join(); // Finish the file rather than leave a partial one behind
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (regions != null) regions.close();
+        if (autosave != null) autosave.close();
+        if (stability != null) stability.close();
+        if (inputHandler != null) inputHandler.cleanup();
+        if (renderer != null) renderer.cleanup();
+        if (uiRenderer != null) uiRenderer.cleanup();
+
+        if (window != NULL) {
+            glfwDestroyWindow(window);
+        }
+        glfwTerminate();
+
+        var callback = glfwSetErrorCallback(null);
+        if (callback != null) callback.free();
+    }
+}
@@ -43,6 +43,25 @@ public class InputHandler {
         void onHeightDown();
         void onClear();
         void onToggleHelp();
+        void onToggleAutoStack();
+        void onToggleStability();
+        void onUndo();
+        void onRedo();
+        void onRecolorMatching();
+        void onReplaceMatching();
+        void onBoxSelect();
+        void onSelectAssembly();
+        void onMoveSelection();
+        void onBrickify();
+        void onCopy();
+        void onPaste();
+        void onExport();
+        void onExportGeometry();
+        void onSave();
+        void onOpen();
+        void onSaveRegions();
+        void onOpenRegions();
+        boolean onCancel(); // False if there was nothing to cancel, so Escape exits
     }
 
     public InputHandler(long window, Camera camera) {
@@ -120,6 +139,44 @@ public class InputHandler {
                 if (action != GLFW_PRESS && action != GLFW_REPEAT) return;
                 if (placementListener == null) return;
 
+                // Ctrl (Cmd on macOS) shortcuts
+                if ((mods & (GLFW_MOD_CONTROL | GLFW_MOD_SUPER)) != 0) {
+                    switch (key) {
+                        case GLFW_KEY_Z -> {
+                            if ((mods & GLFW_MOD_SHIFT) != 0) {
+                                placementListener.onRedo();
+                            } else {
+                                placementListener.onUndo();
+                            }
+                        }
+                        case GLFW_KEY_Y -> placementListener.onRedo();
+                        case GLFW_KEY_C -> placementListener.onCopy();
+                        case GLFW_KEY_V -> placementListener.onPaste();
+                        case GLFW_KEY_E -> {
+                            if ((mods & GLFW_MOD_SHIFT) != 0) {
+                                placementListener.onExportGeometry();
+                            } else {
+                                placementListener.onExport();
+                            }
+                        }
+                        case GLFW_KEY_S -> {
+                            if ((mods & GLFW_MOD_SHIFT) != 0) {
+                                placementListener.onSaveRegions();
+                            } else {
+                                placementListener.onSave();
+                            }
+                        }
+                        case GLFW_KEY_O -> {
+                            if ((mods & GLFW_MOD_SHIFT) != 0) {
+                                placementListener.onOpenRegions();
+                            } else {
+                                placementListener.onOpen();
+                            }
+                        }
+                    }
+                    return;
+                }
+
                 switch (key) {
                     case GLFW_KEY_R -> placementListener.onRotate();
                     case GLFW_KEY_DELETE, GLFW_KEY_BACKSPACE, GLFW_KEY_X -> placementListener.onDelete();
@@ -131,7 +188,19 @@ public class InputHandler {
                     case GLFW_KEY_PAGE_DOWN, GLFW_KEY_S -> placementListener.onHeightDown();
                     case GLFW_KEY_C -> placementListener.onClear();
                     case GLFW_KEY_I -> placementListener.onToggleHelp();
-                    case GLFW_KEY_ESCAPE -> glfwSetWindowShouldClose(window, true);
+                    case GLFW_KEY_A -> placementListener.onToggleAutoStack();
+                    case GLFW_KEY_T -> placementListener.onToggleStability();
+                    case GLFW_KEY_G -> placementListener.onRecolorMatching();
+                    case GLFW_KEY_H -> placementListener.onReplaceMatching();
+                    case GLFW_KEY_B -> placementListener.onBoxSelect();
+                    case GLFW_KEY_F -> placementListener.onSelectAssembly();
+                    case GLFW_KEY_M -> placementListener.onMoveSelection();
+                    case GLFW_KEY_O -> placementListener.onBrickify();
+                    case GLFW_KEY_ESCAPE -> {
+                        if (!placementListener.onCancel()) {
+                            glfwSetWindowShouldClose(window, true);
+                        }
+                    }
                 }
             }
         };
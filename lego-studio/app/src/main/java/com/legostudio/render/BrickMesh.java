@@ -0,0 +1,117 @@
+package com.legostudio.render;
+
+import com.legostudio.model.BrickGeometry;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Uploads the {@link BrickGeometry} of one brick type to the GPU.
+ * Uses VAOs/VBOs for efficient rendering.
+ */
+public class BrickMesh {
+    private int vaoId;
+    private int vboVertices;
+    private int vboNormals;
+    private int eboIndices;
+    private int indexCount;
+
+    public BrickMesh(int width, int length, int height) {
+        generateMesh(width, length, height);
+    }
+
+    private void generateMesh(int width, int length, int height) {
+        List<Float> vertices = new ArrayList<>();
+        List<Float> normals = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+
+        // Box body with studs on top
+        BrickGeometry.brick(new BrickGeometry.MeshBuilder() {
+            @Override
+            public int vertex(float x, float y, float z, int normal) {
+                float[] n = BrickGeometry.NORMALS[normal];
+                vertices.add(x); vertices.add(y); vertices.add(z);
+                normals.add(n[0]); normals.add(n[1]); normals.add(n[2]);
+                return vertices.size() / 3 - 1;
+            }
+
+            @Override
+            public void triangle(int a, int b, int c) {
+                indices.add(a); indices.add(b); indices.add(c);
+            }
+        }, width, length, height);
+
+        // Upload to GPU
+        uploadToGPU(vertices, normals, indices);
+    }
+
+    private void uploadToGPU(List<Float> vertices, List<Float> normals, List<Integer> indices) {
+        FloatBuffer vertexBuffer = null;
+        FloatBuffer normalBuffer = null;
+        IntBuffer indexBuffer = null;
+
+        try {
+            vaoId = glGenVertexArrays();
+            glBindVertexArray(vaoId);
+
+            // Vertex positions
+            vertexBuffer = MemoryUtil.memAllocFloat(vertices.size());
+            for (float f : vertices) vertexBuffer.put(f);
+            vertexBuffer.flip();
+
+            vboVertices = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vboVertices);
+            glBufferData(GL_ARRAY_BUFFER, vertexBuffer, GL_STATIC_DRAW);
+            glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+            glEnableVertexAttribArray(0);
+
+            // Normals
+            normalBuffer = MemoryUtil.memAllocFloat(normals.size());
+            for (float f : normals) normalBuffer.put(f);
+            normalBuffer.flip();
+
+            vboNormals = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vboNormals);
+            glBufferData(GL_ARRAY_BUFFER, normalBuffer, GL_STATIC_DRAW);
+            glVertexAttribPointer(1, 3, GL_FLOAT, false, 0, 0);
+            glEnableVertexAttribArray(1);
+
+            // Indices
+            indexBuffer = MemoryUtil.memAllocInt(indices.size());
+            for (int i : indices) indexBuffer.put(i);
+            indexBuffer.flip();
+
+            eboIndices = glGenBuffers();
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboIndices);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexBuffer, GL_STATIC_DRAW);
+
+            indexCount = indices.size();
+
+            glBindVertexArray(0);
+        } finally {
+            if (vertexBuffer != null) MemoryUtil.memFree(vertexBuffer);
+            if (normalBuffer != null) MemoryUtil.memFree(normalBuffer);
+            if (indexBuffer != null) MemoryUtil.memFree(indexBuffer);
+        }
+    }
+
+    public void render() {
+        glBindVertexArray(vaoId);
+        glDrawElements(GL_TRIANGLES, indexCount, GL_UNSIGNED_INT, 0);
+        glBindVertexArray(0);
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(vboVertices);
+        glDeleteBuffers(vboNormals);
+        glDeleteBuffers(eboIndices);
+        glDeleteVertexArrays(vaoId);
+    }
+}
@@ -119,15 +119,16 @@ public class Camera {
     }
 
     /**
-     * Cast a ray from screen coordinates and find intersection with a horizontal plane.
+     * Build a world-space picking ray through the given screen position.
      * @param mouseX Mouse X in screen coordinates (0 to width)
      * @param mouseY Mouse Y in screen coordinates (0 to height)
      * @param screenWidth Window width
      * @param screenHeight Window height
-     * @param planeY Y coordinate of the horizontal plane to intersect
-     * @return World coordinates of intersection, or null if no intersection
+     * @param originOut Receives the ray origin on the near plane
+     * @param directionOut Receives the normalized ray direction
      */
-    public Vector3f screenToWorldOnPlane(float mouseX, float mouseY, int screenWidth, int screenHeight, float planeY) {
+    public void getPickRay(float mouseX, float mouseY, int screenWidth, int screenHeight,
+                           Vector3f originOut, Vector3f directionOut) {
         // Convert screen coords to normalized device coords (-1 to 1)
         float ndcX = (2.0f * mouseX) / screenWidth - 1.0f;
         float ndcY = 1.0f - (2.0f * mouseY) / screenHeight;
@@ -144,11 +145,29 @@ public class Camera {
         inverseViewProj.transform(farPoint);
 
         // Convert from homogeneous coordinates
-        Vector3f rayStart = new Vector3f(nearPoint.x / nearPoint.w, nearPoint.y / nearPoint.w, nearPoint.z / nearPoint.w);
-        Vector3f rayEnd = new Vector3f(farPoint.x / farPoint.w, farPoint.y / farPoint.w, farPoint.z / farPoint.w);
+        originOut.set(nearPoint.x / nearPoint.w, nearPoint.y / nearPoint.w, nearPoint.z / nearPoint.w);
+        directionOut.set(farPoint.x / farPoint.w, farPoint.y / farPoint.w, farPoint.z / farPoint.w)
+                .sub(originOut)
+                .normalize();
+    }
 
-        // Ray direction
-        Vector3f rayDir = new Vector3f(rayEnd).sub(rayStart).normalize();
+    public float getFarPlane() {
+        return farPlane;
+    }
+
+    /**
+     * Cast a ray from screen coordinates and find intersection with a horizontal plane.
+     * @param mouseX Mouse X in screen coordinates (0 to width)
+     * @param mouseY Mouse Y in screen coordinates (0 to height)
+     * @param screenWidth Window width
+     * @param screenHeight Window height
+     * @param planeY Y coordinate of the horizontal plane to intersect
+     * @return World coordinates of intersection, or null if no intersection
+     */
+    public Vector3f screenToWorldOnPlane(float mouseX, float mouseY, int screenWidth, int screenHeight, float planeY) {
+        Vector3f rayStart = new Vector3f();
+        Vector3f rayDir = new Vector3f();
+        getPickRay(mouseX, mouseY, screenWidth, screenHeight, rayStart, rayDir);
 
         // Intersect with horizontal plane at planeY
         // Ray: P = rayStart + t * rayDir
@@ -1,8 +1,12 @@
 package com.legostudio.render;
 
+import com.legostudio.analysis.StabilityAnalyzer;
 import com.legostudio.model.Brick;
 import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickType;
 import com.legostudio.model.BrickWorld;
+import com.legostudio.model.PastePreview;
+import com.legostudio.model.Selection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
@@ -80,6 +84,9 @@ public class Renderer {
     private GridMesh gridMesh;
     private TextMesh3D titleMesh;
     private int gridSizeCache;
+    private StabilityAnalyzer stabilityOverlay; // Tints bricks by stress when set
+    private Selection selection; // Highlighted bricks, or null
+    private PastePreview pastePreview; // Drawn instead of the ghost brick when set
 
     private final Vector3f lightDirection = new Vector3f(-0.5f, -1.0f, -0.3f).normalize();
     private final float ambientStrength = 0.3f;
@@ -106,12 +113,33 @@ public class Renderer {
         titleMesh = new TextMesh3D(TITLE_TEXT);
     }
 
+    /**
+     * Color bricks by structural stress from the given analyzer, or by their own color if null.
+     */
+    public void setStabilityOverlay(StabilityAnalyzer analyzer) {
+        this.stabilityOverlay = analyzer;
+    }
+
+    /**
+     * Highlight the source bricks of the given selection, or nothing if null.
+     */
+    public void setSelection(Selection selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * Draw the given selection ghost at its preview position, or nothing if null.
+     */
+    public void setPastePreview(PastePreview preview) {
+        this.pastePreview = preview;
+    }
+
     public void render(BrickWorld world, Camera camera, Brick ghostBrick, boolean ghostValid) {
         glClearColor(0.2f, 0.25f, 0.3f, 1.0f);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
         // Render grid
-        renderGrid(camera, world.getGridSize());
+        renderGrid(camera, gridSizeCache);
 
         // Render all placed bricks
         brickShader.bind();
@@ -120,12 +148,12 @@ public class Renderer {
         brickShader.setLightDir(lightDirection);
         brickShader.setAmbient(ambientStrength);
 
-        for (Brick brick : world.getBricks()) {
-            renderBrick(brick);
-        }
+        world.forEachBrick(this::renderBrick);
 
         // Render ghost brick (preview of placement)
-        if (ghostBrick != null) {
+        if (pastePreview != null) {
+            renderPasteGhost(pastePreview);
+        } else if (ghostBrick != null) {
             renderGhostBrick(ghostBrick, ghostValid);
         }
 
@@ -166,29 +194,51 @@ public class Renderer {
         gridShader.unbind();
     }
 
-    private void renderBrick(Brick brick) {
-        BrickColor color = brick.getColor();
-        brickShader.setColor(color.getR(), color.getG(), color.getB());
+    private void renderBrick(int id, BrickType type, BrickColor color, int x, int y, int z, int rotation) {
+        if (stabilityOverlay != null) {
+            setStressColor(stabilityOverlay.getStress(id));
+        } else if (selection != null && selection.contains(id)) {
+            // Lighten selected bricks towards white
+            brickShader.setColor(0.5f + 0.5f * color.getR(), 0.5f + 0.5f * color.getG(), 0.5f + 0.5f * color.getB());
+        } else {
+            brickShader.setColor(color.getR(), color.getG(), color.getB());
+        }
+        setBrickTransform(type, x, y, z, rotation);
+        meshCache.getMesh(type).render();
+    }
+
+    /**
+     * Green for unloaded, through yellow, to red at the failure threshold; magenta for floating bricks.
+     */
+    private void setStressColor(float stress) {
+        if (stress == Float.POSITIVE_INFINITY) {
+            brickShader.setColor(0.9f, 0.2f, 0.9f);
+        } else if (stress >= 1.0f) {
+            brickShader.setColor(1.0f, 0.1f, 0.1f);
+        } else {
+            float t = Math.max(stress, 0.0f);
+            brickShader.setColor(Math.min(1.0f, 2.0f * t) * 0.9f + 0.1f,
+                    Math.min(1.0f, 2.0f - 2.0f * t) * 0.7f + 0.1f, 0.15f);
+        }
+    }
 
+    private void setBrickTransform(BrickType type, int gridX, int gridY, int gridZ, int rotation) {
         // Brick position is grid cell (0-based), render at that position
-        float x = brick.getPosition().x;
-        float y = brick.getPosition().y * 0.4f; // Convert plates to world units
-        float z = brick.getPosition().z;
+        float x = gridX;
+        float y = gridY * 0.4f; // Convert plates to world units
+        float z = gridZ;
 
         modelMatrix.identity().translate(x, y, z);
 
-        if (brick.getRotation() != 0) {
-            float halfW = brick.getActualWidth() / 2.0f;
-            float halfL = brick.getActualLength() / 2.0f;
+        if (rotation != 0) {
+            float halfW = type.getActualWidth(rotation) / 2.0f;
+            float halfL = type.getActualLength(rotation) / 2.0f;
             modelMatrix.translate(halfW, 0, halfL)
-                    .rotateY((float) Math.toRadians(brick.getRotation()))
+                    .rotateY((float) Math.toRadians(rotation))
                     .translate(-halfW, 0, -halfL);
         }
 
         brickShader.setModel(modelMatrix);
-
-        BrickMesh mesh = meshCache.getMesh(brick.getType());
-        mesh.render();
     }
 
     private void renderGhostBrick(Brick brick, boolean valid) {
@@ -202,24 +252,30 @@ public class Renderer {
             brickShader.setColor(1.0f, 0.3f, 0.3f); // Red for invalid
         }
 
-        float x = brick.getPosition().x;
-        float y = brick.getPosition().y * 0.4f;
-        float z = brick.getPosition().z;
+        var pos = brick.getPosition();
+        setBrickTransform(brick.getType(), pos.x, pos.y, pos.z, brick.getRotation());
 
-        modelMatrix.identity().translate(x, y, z);
+        BrickMesh mesh = meshCache.getMesh(brick.getType());
+        mesh.render();
 
-        if (brick.getRotation() != 0) {
-            float halfW = brick.getActualWidth() / 2.0f;
-            float halfL = brick.getActualLength() / 2.0f;
-            modelMatrix.translate(halfW, 0, halfL)
-                    .rotateY((float) Math.toRadians(brick.getRotation()))
-                    .translate(-halfW, 0, -halfL);
-        }
+        glDisable(GL_BLEND);
+    }
 
-        brickShader.setModel(modelMatrix);
+    private void renderPasteGhost(PastePreview preview) {
+        glEnable(GL_BLEND);
+        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
 
-        BrickMesh mesh = meshCache.getMesh(brick.getType());
-        mesh.render();
+        if (preview.isValid()) {
+            brickShader.setColor(0.5f, 1.0f, 0.5f);
+        } else {
+            brickShader.setColor(1.0f, 0.3f, 0.3f);
+        }
+
+        int ox = preview.getX(), oy = preview.getY(), oz = preview.getZ();
+        preview.getSelection().forEachBrick((id, type, color, x, y, z, rotation) -> {
+            setBrickTransform(type, ox + x, oy + y, oz + z, rotation);
+            meshCache.getMesh(type).render();
+        });
 
         glDisable(GL_BLEND);
     }
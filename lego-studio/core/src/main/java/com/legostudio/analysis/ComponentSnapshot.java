@@ -0,0 +1,105 @@
+package com.legostudio.analysis;
+
+import com.legostudio.model.SnapshotCellIndex;
+import com.legostudio.model.WorldSnapshot;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Immutable copy of one assembly's geometry and stud connections, captured
+ * from a {@link WorldSnapshot} so it can be solved on any thread.
+ * Bricks are addressed by local index; adjacency is in compressed sparse rows.
+ */
+final class ComponentSnapshot {
+    final long version;     // World version the snapshot was taken at
+    final int size;
+    final int[] ids;        // Local index -> brick ID
+    final int[] x, y, z;    // Origin in studs / plates
+    final int[] w, l, h;    // Rotated footprint and height
+    final int[] edgeStart;  // Local index -> first edge; edgeStart[size] is the edge count
+    final int[] edges;      // Local indices of connected bricks
+
+    private ComponentSnapshot(long version, int[] ids, int[] x, int[] y, int[] z, int[] w, int[] l, int[] h,
+                              int[] edgeStart, int[] edges) {
+        this.version = version;
+        this.size = ids.length;
+        this.ids = ids;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        this.l = l;
+        this.h = h;
+        this.edgeStart = edgeStart;
+        this.edges = edges;
+    }
+
+    /**
+     * Capture the assemblies containing the bricks at the given cells by walking
+     * stud connections through a world snapshot, so the work is done by the
+     * calling thread rather than the one that owns the world. Each assembly is
+     * passed on once, however many of the cells fall in it; empty cells are skipped.
+     *
+     * @param seeds Cell coordinates as x, y, z triples
+     */
+    static void capture(WorldSnapshot world, int[] seeds, Consumer<ComponentSnapshot> consumer) {
+        SnapshotCellIndex cells = world.cellIndex();
+        int[] localIndex = new int[64]; // Brick number -> local index + 1, 0 until captured
+        for (int s = 0; s < seeds.length; s += 3) {
+            int seed = cells.find(seeds[s], seeds[s + 1], seeds[s + 2]);
+            if (seed < 0 || seed < localIndex.length && localIndex[seed] != 0) {
+                continue;
+            }
+            if (seed >= localIndex.length) {
+                localIndex = Arrays.copyOf(localIndex, Math.max(seed + 1, localIndex.length * 2));
+            }
+
+            // Breadth-first over connections; members double as the queue
+            int[] members = new int[16];
+            int[] edgeStart = new int[17];
+            int[] edges = new int[64];
+            members[0] = seed;
+            localIndex[seed] = 1;
+            int n = 1;
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                edgeStart[i] = count;
+                for (int neighbour : cells.getConnected(members[i])) {
+                    if (neighbour >= localIndex.length) {
+                        localIndex = Arrays.copyOf(localIndex, Math.max(cells.getBrickCount(), localIndex.length * 2));
+                    }
+                    if (localIndex[neighbour] == 0) {
+                        if (n == members.length) {
+                            members = Arrays.copyOf(members, n * 2);
+                            edgeStart = Arrays.copyOf(edgeStart, n * 2 + 1);
+                        }
+                        members[n++] = neighbour;
+                        localIndex[neighbour] = n;
+                    }
+                    if (count == edges.length) {
+                        edges = Arrays.copyOf(edges, count * 2);
+                    }
+                    edges[count++] = localIndex[neighbour] - 1;
+                }
+            }
+            edgeStart[n] = count;
+
+            int[] ids = new int[n];
+            int[] x = new int[n], y = new int[n], z = new int[n];
+            int[] w = new int[n], l = new int[n], h = new int[n];
+            for (int i = 0; i < n; i++) {
+                int brick = members[i];
+                ids[i] = cells.getId(brick);
+                x[i] = cells.getX(brick);
+                y[i] = cells.getY(brick);
+                z[i] = cells.getZ(brick);
+                w[i] = cells.getActualWidth(brick);
+                l[i] = cells.getActualLength(brick);
+                h[i] = cells.getHeight(brick);
+            }
+            consumer.accept(new ComponentSnapshot(world.getVersion(), ids, x, y, z, w, l, h,
+                    Arrays.copyOf(edgeStart, n + 1), Arrays.copyOf(edges, count)));
+        }
+    }
+}
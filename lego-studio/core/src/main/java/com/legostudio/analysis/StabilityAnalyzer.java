@@ -0,0 +1,269 @@
+package com.legostudio.analysis;
+
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickStore;
+import com.legostudio.model.BrickWorld;
+import com.legostudio.model.WorldChangeEvent;
+import com.legostudio.model.WorldChangeListener;
+import com.legostudio.model.WorldSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Background structural analysis of a {@link BrickWorld}.
+ *
+ * Change events mark the assemblies they touch as dirty. {@link #update()},
+ * called on the thread that owns the world, takes a {@link WorldSnapshot} (O(1)
+ * once the world's snapshot index exists) and hands it to a fork-join pool
+ * with the dirty bricks' positions, then collects finished results. The pool
+ * walks each dirty assembly out of the snapshot and solves it as its own task,
+ * so the owning thread's cost per edit does not grow with the assembly. Only
+ * assemblies touched since the last solve are re-analyzed.
+ */
+public class StabilityAnalyzer implements WorldChangeListener, AutoCloseable {
+    private static final class Result {
+        final long version;
+        final int[] ids;
+        final float[] ratios; // Null if the solve failed
+
+        Result(long version, int[] ids, float[] ratios) {
+            this.version = version;
+            this.ids = ids;
+            this.ratios = ratios;
+        }
+    }
+
+    private final BrickWorld world;
+    private final ForkJoinPool pool;
+    private static final Result BATCH_DONE = new Result(0, new int[0], null); // Posted after a batch's results
+
+    private final BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+    private int pending; // Submitted batches whose results have not all been applied
+
+    // Bricks whose assemblies need solving
+    private int[] dirty = new int[64];
+    private int dirtyCount;
+
+    // Per brick ID, valid while the brick exists
+    private float[] stress = new float[64];
+    private long[] stressVersion = new long[64];
+    private int failingCount;
+
+    /**
+     * Start analyzing the world; every existing assembly is queued for solving.
+     */
+    public StabilityAnalyzer(BrickWorld world) {
+        this.world = world;
+        this.pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        world.getBrickStore().forEach((id, type, color, x, y, z, rotation) -> markDirty(id));
+        world.addChangeListener(this);
+    }
+
+    /**
+     * Get the load on the brick's supports relative to their capacity.
+     * Values of 1 or more mean the brick is likely to fail; floating bricks report
+     * {@link Float#POSITIVE_INFINITY}. Returns 0 for bricks not analyzed yet.
+     */
+    public float getStress(int id) {
+        return id >= 0 && id < stress.length ? stress[id] : 0;
+    }
+
+    public boolean isFailing(int id) {
+        return getStress(id) >= 1;
+    }
+
+    /**
+     * Get the number of bricks currently flagged as likely to fail, including floating ones.
+     */
+    public int getFailingCount() {
+        return failingCount;
+    }
+
+    /**
+     * True while edits are waiting to be solved or results are outstanding.
+     */
+    public boolean isBusy() {
+        return dirtyCount > 0 || pending > 0;
+    }
+
+    /**
+     * Apply finished results and submit dirty assemblies. Must be called on the thread that owns the world.
+     */
+    public void update() {
+        Result result;
+        while ((result = completed.poll()) != null) {
+            apply(result);
+        }
+        if (dirtyCount == 0) {
+            return;
+        }
+
+        // Seed cells only; the assemblies are walked on the pool
+        BrickStore store = world.getBrickStore();
+        int[] seeds = new int[dirtyCount * 3];
+        int n = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            int seed = dirty[i];
+            if (store.contains(seed)) {
+                seeds[n++] = store.getX(seed);
+                seeds[n++] = store.getY(seed);
+                seeds[n++] = store.getZ(seed);
+            }
+        }
+        dirtyCount = 0;
+        if (n > 0) {
+            WorldSnapshot snapshot = world.snapshot();
+            int[] cells = Arrays.copyOf(seeds, n);
+            pending++;
+            pool.execute(() -> analyze(snapshot, cells));
+        }
+    }
+
+    /**
+     * Block until every queued edit has been solved and applied. Must be called on the thread that owns the world.
+     */
+    public void awaitIdle() {
+        update();
+        try {
+            while (pending > 0) {
+                apply(completed.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onWorldChanged(WorldChangeEvent event) {
+        if (event.isCleared()) {
+            Arrays.fill(stress, 0);
+            Arrays.fill(stressVersion, event.getVersion());
+            failingCount = 0;
+            dirtyCount = 0;
+        }
+
+        // Former neighbours of removed bricks may have lost support
+        BrickBatch removed = event.getRemoved();
+        for (int i = 0; i < removed.size(); i++) {
+            setStress(removed.getId(i), 0, event.getVersion());
+            int x = removed.getX(i), y = removed.getY(i), z = removed.getZ(i);
+            int w = removed.getType(i).getActualWidth(removed.getRotation(i));
+            int l = removed.getType(i).getActualLength(removed.getRotation(i));
+            int top = y + removed.getType(i).getHeight();
+            for (int cz = z; cz < z + l; cz++) {
+                for (int cx = x; cx < x + w; cx++) {
+                    markDirty(world.getBrickIdAt(cx, top, cz));
+                    if (y > 0) {
+                        markDirty(world.getBrickIdAt(cx, y - 1, cz));
+                    }
+                }
+            }
+        }
+
+        BrickBatch added = event.getAdded();
+        for (int i = 0; i < added.size(); i++) {
+            markDirty(added.getId(i));
+        }
+    }
+
+    /**
+     * Stop listening to the world and shut the worker pool down.
+     */
+    @Override
+    public void close() {
+        world.removeChangeListener(this);
+        pool.shutdownNow();
+    }
+
+    private void markDirty(int id) {
+        if (id == BrickStore.NO_BRICK) {
+            return;
+        }
+        if (dirtyCount > 0 && dirty[dirtyCount - 1] == id) {
+            return;
+        }
+        if (dirtyCount == dirty.length) {
+            dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+        }
+        dirty[dirtyCount++] = id;
+    }
+
+    /**
+     * Capture the dirty assemblies from a snapshot on a pool thread and solve each
+     * as a forked task. The batch marker is always posted once every solve has
+     * finished, even on failure, so that pending drops back to zero.
+     */
+    private void analyze(WorldSnapshot snapshot, int[] seeds) {
+        List<ForkJoinTask<?>> solves = new ArrayList<>();
+        try {
+            ComponentSnapshot.capture(snapshot, seeds,
+                    component -> solves.add(ForkJoinTask.adapt(() -> solve(component)).fork()));
+        } catch (RuntimeException e) {
+            System.err.println("Stability analysis at version " + snapshot.getVersion() + " failed: " + e);
+        } finally {
+            for (ForkJoinTask<?> task : solves) {
+                task.quietlyJoin();
+            }
+            completed.add(BATCH_DONE);
+        }
+    }
+
+    /**
+     * Solve one assembly on a pool thread and post its result; a failed solve posts no ratios.
+     */
+    private void solve(ComponentSnapshot snapshot) {
+        float[] ratios = null;
+        try {
+            ratios = StabilitySolver.solve(snapshot);
+        } catch (RuntimeException e) {
+            System.err.println("Stability analysis of " + snapshot.ids.length + " bricks failed: " + e);
+        } finally {
+            completed.add(new Result(snapshot.version, snapshot.ids, ratios));
+        }
+    }
+
+    private void apply(Result result) {
+        if (result == BATCH_DONE) {
+            pending--;
+            return;
+        }
+        if (result.ratios == null) {
+            return;
+        }
+        BrickStore store = world.getBrickStore();
+        for (int i = 0; i < result.ids.length; i++) {
+            int id = result.ids[i];
+            if (store.contains(id)) {
+                setStress(id, result.ratios[i], result.version);
+            }
+        }
+    }
+
+    /**
+     * Record a brick's stress unless a newer result is already in place.
+     */
+    private void setStress(int id, float value, long version) {
+        if (id >= stress.length) {
+            int capacity = Math.max(id + 1, stress.length * 2);
+            stress = Arrays.copyOf(stress, capacity);
+            stressVersion = Arrays.copyOf(stressVersion, capacity);
+        }
+        if (version < stressVersion[id]) {
+            return;
+        }
+        if (stress[id] >= 1) {
+            failingCount--;
+        }
+        if (value >= 1) {
+            failingCount++;
+        }
+        stress[id] = value;
+        stressVersion[id] = version;
+    }
+}
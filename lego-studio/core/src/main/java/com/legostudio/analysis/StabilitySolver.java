@@ -0,0 +1,143 @@
+package com.legostudio.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how close each brick of an assembly is to breaking loose.
+ *
+ * Load is routed from the top of the structure to the baseplate along the
+ * shortest connection paths: every brick hands its own weight plus everything
+ * it carries to the neighbours one step closer to the baseplate, split in
+ * proportion to the studs they share. Each brick is then scored against two
+ * failure modes of its supporting connections:
+ * <ul>
+ *   <li>pull-out, when a brick hangs from the studs above it, and</li>
+ *   <li>tipping, when the centre of the carried load lies off the contact
+ *       area, as with long cantilevers.</li>
+ * </ul>
+ * Units are plate volumes (a 1x1 plate weighs 1) and studs. This is a rough
+ * estimate for flagging weak spots, not a physical simulation.
+ */
+final class StabilitySolver {
+    /** Load one stud connection holds in tension before pulling apart, in 1x1 plate weights. */
+    static final float CLUTCH_PER_STUD = 1000.0f;
+
+    private StabilitySolver() {
+    }
+
+    /**
+     * @return Per local index, the load on the brick's supports relative to their capacity:
+     *         1 or more means likely to fail, {@link Float#POSITIVE_INFINITY} if the assembly is floating
+     */
+    static float[] solve(ComponentSnapshot s) {
+        int n = s.size;
+        float[] ratio = new float[n];
+
+        // Breadth-first order from the bricks resting on the baseplate
+        int[] order = new int[n];
+        int[] depth = new int[n];
+        Arrays.fill(depth, -1);
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (s.y[i] == 0) {
+                depth[i] = 0;
+                order[tail++] = i;
+            }
+        }
+        if (tail == 0) {
+            Arrays.fill(ratio, Float.POSITIVE_INFINITY);
+            return ratio;
+        }
+        for (int head = 0; head < tail; head++) {
+            int i = order[head];
+            for (int e = s.edgeStart[i]; e < s.edgeStart[i + 1]; e++) {
+                int j = s.edges[e];
+                if (depth[j] < 0) {
+                    depth[j] = depth[i] + 1;
+                    order[tail++] = j;
+                }
+            }
+        }
+
+        // Carried load and its first moments, seeded with each brick's own weight
+        float[] load = new float[n];
+        float[] momentX = new float[n];
+        float[] momentZ = new float[n];
+        for (int i = 0; i < n; i++) {
+            float weight = s.w[i] * s.l[i] * s.h[i];
+            load[i] = weight;
+            momentX[i] = weight * (s.x[i] + s.w[i] * 0.5f);
+            momentZ[i] = weight * (s.z[i] + s.l[i] * 0.5f);
+        }
+
+        // Top of the load paths first, so everything a brick carries has arrived before it is passed on
+        for (int o = n - 1; o >= 0; o--) {
+            int i = order[o];
+            float contacts = 0;
+            float contactX = 0, contactZ = 0;
+            float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE;
+            float minZ = Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+            float worst = 0;
+
+            if (depth[i] == 0) {
+                // Clutched to the baseplate over the whole footprint
+                contacts = s.w[i] * s.l[i];
+                contactX = s.x[i] + s.w[i] * 0.5f;
+                contactZ = s.z[i] + s.l[i] * 0.5f;
+                minX = s.x[i];
+                maxX = s.x[i] + s.w[i];
+                minZ = s.z[i];
+                maxZ = s.z[i] + s.l[i];
+            } else {
+                for (int e = s.edgeStart[i]; e < s.edgeStart[i + 1]; e++) {
+                    int j = s.edges[e];
+                    if (depth[j] >= depth[i]) {
+                        continue;
+                    }
+                    int x0 = Math.max(s.x[i], s.x[j]), x1 = Math.min(s.x[i] + s.w[i], s.x[j] + s.w[j]);
+                    int z0 = Math.max(s.z[i], s.z[j]), z1 = Math.min(s.z[i] + s.l[i], s.z[j] + s.l[j]);
+                    float area = (x1 - x0) * (z1 - z0);
+                    contacts += area;
+                    contactX += area * (x0 + x1) * 0.5f;
+                    contactZ += area * (z0 + z1) * 0.5f;
+                    minX = Math.min(minX, x0);
+                    maxX = Math.max(maxX, x1);
+                    minZ = Math.min(minZ, z0);
+                    maxZ = Math.max(maxZ, z1);
+                }
+                contactX /= contacts;
+                contactZ /= contacts;
+
+                // Hand the load on and check pull-out where the brick hangs from a support above it
+                for (int e = s.edgeStart[i]; e < s.edgeStart[i + 1]; e++) {
+                    int j = s.edges[e];
+                    if (depth[j] >= depth[i]) {
+                        continue;
+                    }
+                    int x0 = Math.max(s.x[i], s.x[j]), x1 = Math.min(s.x[i] + s.w[i], s.x[j] + s.w[j]);
+                    int z0 = Math.max(s.z[i], s.z[j]), z1 = Math.min(s.z[i] + s.l[i], s.z[j] + s.l[j]);
+                    float area = (x1 - x0) * (z1 - z0);
+                    float share = area / contacts;
+                    load[j] += load[i] * share;
+                    momentX[j] += momentX[i] * share;
+                    momentZ[j] += momentZ[i] * share;
+                    if (s.y[j] > s.y[i]) {
+                        worst = Math.max(worst, load[i] * share / (area * CLUTCH_PER_STUD));
+                    }
+                }
+            }
+
+            // Tipping: the carried load's centre against the contact area it pivots on
+            float offsetX = momentX[i] / load[i] - contactX;
+            float offsetZ = momentZ[i] / load[i] - contactZ;
+            float lever = (float) Math.sqrt(offsetX * offsetX + offsetZ * offsetZ);
+            float halfSpan = Math.abs(offsetX) >= Math.abs(offsetZ) ? (maxX - minX) * 0.5f : (maxZ - minZ) * 0.5f;
+            if (lever > halfSpan) {
+                float capacity = CLUTCH_PER_STUD * contacts * (halfSpan + 0.5f);
+                worst = Math.max(worst, load[i] * (lever - halfSpan) / capacity);
+            }
+            ratio[i] = worst;
+        }
+        return ratio;
+    }
+}
@@ -0,0 +1,106 @@
+package com.legostudio.bench;
+
+import com.legostudio.model.Brick;
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickType;
+import com.legostudio.model.BrickWorld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares placement validation through BrickWorld's bitset occupancy masks
+ * against the original linear scan over every placed brick.
+ *
+ * Usage: PlacementBenchmark [brickCount] [candidateCount]
+ */
+public final class PlacementBenchmark {
+    private static final int AREA = 1024;   // Studs per side of the populated area
+    private static final int LEVELS = 12;   // Brick layers stacked on the area
+    private static final int ROUNDS = 5;
+    private static final int BITSET_REPEATS = 100; // The indexed path is too fast to time in one pass
+
+    private PlacementBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int brickCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int candidateCount = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        Random random = new Random(42);
+        BrickWorld world = new BrickWorld();
+        List<Brick> placed = new ArrayList<>();
+        while (placed.size() < brickCount) {
+            Brick brick = randomBrick(random);
+            if (world.addBrick(brick)) {
+                placed.add(brick);
+            }
+        }
+
+        Brick[] candidates = new Brick[candidateCount];
+        for (int i = 0; i < candidateCount; i++) {
+            candidates[i] = randomBrick(random);
+        }
+
+        System.out.printf("%d bricks in %d chunks, %d candidate placements%n",
+                world.getBrickCount(), world.getChunkCount(), candidateCount);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int bitsetValid = 0;
+            for (int repeat = 0; repeat < BITSET_REPEATS; repeat++) {
+                bitsetValid = 0;
+                for (Brick candidate : candidates) {
+                    if (world.isValidPlacement(candidate)) {
+                        bitsetValid++;
+                    }
+                }
+            }
+            long bitsetNanos = (System.nanoTime() - start) / BITSET_REPEATS;
+
+            start = System.nanoTime();
+            int scanValid = 0;
+            for (Brick candidate : candidates) {
+                if (isValidByScan(placed, candidate)) {
+                    scanValid++;
+                }
+            }
+            long scanNanos = System.nanoTime() - start;
+
+            if (bitsetValid != scanValid) {
+                throw new IllegalStateException("Bitset and linear scan disagree: "
+                        + bitsetValid + " vs " + scanValid);
+            }
+            System.out.printf("round %d: bitset %,.0f checks/ms | linear scan %,.1f checks/ms | %d valid%n",
+                    round + 1, perMillisecond(candidateCount, bitsetNanos),
+                    perMillisecond(candidateCount, scanNanos), bitsetValid);
+        }
+    }
+
+    private static Brick randomBrick(Random random) {
+        BrickType[] types = BrickType.values();
+        BrickColor[] colors = BrickColor.values();
+        Brick brick = new Brick(types[random.nextInt(types.length)], colors[random.nextInt(colors.length)],
+                random.nextInt(AREA), random.nextInt(LEVELS) * 3, random.nextInt(AREA));
+        brick.setRotation(random.nextInt(4) * 90);
+        return brick;
+    }
+
+    // The pre-index placement check: AABB test against every brick
+    private static boolean isValidByScan(List<Brick> bricks, Brick candidate) {
+        if (candidate.getPosition().y < 0) {
+            return false;
+        }
+        for (Brick existing : bricks) {
+            if (candidate.collidesWith(existing)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double perMillisecond(int count, long nanos) {
+        return count / (nanos / 1_000_000.0);
+    }
+}
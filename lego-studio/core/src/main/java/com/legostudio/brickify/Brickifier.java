@@ -0,0 +1,221 @@
+package com.legostudio.brickify;
+
+import com.legostudio.model.BatchResult;
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickStore;
+import com.legostudio.model.BrickWorld;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Turns colored voxels into as few bricks as a greedy tiling finds, and
+ * rebuilds existing regions of a world from fewer, larger bricks.
+ *
+ * A grid is cut into courses three plates high. Columns whose three cells in
+ * a course share a color are tiled with full-height bricks; the rest of the
+ * course is tiled plate layer by plate layer. Courses are independent and
+ * are tiled in parallel on the fork-join pool. {@link LayerTiler} alternates
+ * brick orientation from course to course so joints are staggered.
+ */
+public final class Brickifier {
+    private static final int COURSE_HEIGHT = 3;
+    private static final int TILE_SIZE = 256; // X/Z extent of the grids a world region is split into
+
+    private static final LayerTiler BRICKS = new LayerTiler(COURSE_HEIGHT);
+    private static final LayerTiler PLATES = new LayerTiler(1);
+
+    // IDs of the bricks whose origin lies in one tile
+    private static final class Tile {
+        int[] ids = new int[16];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Outcome of {@link #optimize}.
+     */
+    public static final class Result {
+        private final int bricksBefore;
+        private final int bricksAfter;
+        private final boolean applied;
+        private final long nanos;
+
+        Result(int bricksBefore, int bricksAfter, boolean applied, long nanos) {
+            this.bricksBefore = bricksBefore;
+            this.bricksAfter = bricksAfter;
+            this.applied = applied;
+            this.nanos = nanos;
+        }
+
+        public int getBricksBefore() { return bricksBefore; }
+        public int getBricksAfter() { return bricksAfter; }
+
+        /**
+         * True if the world was changed; false if no tile could be rebuilt with fewer bricks.
+         */
+        public boolean isApplied() { return applied; }
+
+        public int getReduction() {
+            return applied ? bricksBefore - bricksAfter : 0;
+        }
+
+        public long getElapsedMillis() {
+            return nanos / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return applied
+                    ? String.format("Brickify: %d -> %d bricks (-%.0f%%) in %d ms", bricksBefore, bricksAfter,
+                    100.0 * getReduction() / bricksBefore, getElapsedMillis())
+                    : String.format("Brickify: no improvement over %d bricks (%d ms)", bricksBefore, getElapsedMillis());
+        }
+    }
+
+    private Brickifier() {
+    }
+
+    /**
+     * Choose bricks covering exactly the filled cells of the grid, in world coordinates.
+     */
+    public static BrickBatch brickify(VoxelGrid grid) {
+        int courses = (grid.getSizeY() + COURSE_HEIGHT - 1) / COURSE_HEIGHT;
+        BrickBatch[] parts = new BrickBatch[courses];
+        IntStream.range(0, courses).parallel().forEach(course -> parts[course] = tileCourse(grid, course));
+
+        BrickBatch bricks = new BrickBatch(Arrays.stream(parts).mapToInt(BrickBatch::size).sum());
+        for (BrickBatch part : parts) {
+            bricks.addAll(part);
+        }
+        return bricks;
+    }
+
+    /**
+     * Rebuild every brick of the world from fewer, larger bricks of the same colors.
+     */
+    public static Result optimize(BrickWorld world) {
+        BrickStore store = world.getBrickStore();
+        int[] ids = new int[store.size()];
+        for (int slot = 0; slot < ids.length; slot++) {
+            ids[slot] = store.getIdAt(slot);
+        }
+        return optimize(world, ids);
+    }
+
+    /**
+     * Rebuild the given bricks from fewer, larger bricks covering the same cells in the same
+     * colors, as a single undoable batch. Large regions are split into {@value #TILE_SIZE}-stud
+     * tiles that are tiled separately; a tile is only rebuilt if that lowers its brick count.
+     */
+    public static Result optimize(BrickWorld world, int[] ids) {
+        long start = System.nanoTime();
+        BrickStore store = world.getBrickStore();
+        ids = Arrays.stream(ids).filter(store::contains).distinct().toArray();
+
+        // Group the bricks by the tile holding their origin
+        Map<Long, Tile> tiles = new HashMap<>();
+        for (int id : ids) {
+            long key = (long) Math.floorDiv(store.getX(id), TILE_SIZE) << 32
+                    | (Math.floorDiv(store.getZ(id), TILE_SIZE) & 0xFFFFFFFFL);
+            tiles.computeIfAbsent(key, k -> new Tile()).add(id);
+        }
+
+        // Tiles whose tiling does not save bricks keep their original bricks
+        BrickBatch rebuilt = new BrickBatch(ids.length);
+        int[] replaced = new int[ids.length];
+        int replacedCount = 0;
+        for (Tile tile : tiles.values()) {
+            int[] members = Arrays.copyOf(tile.ids, tile.size);
+            BrickBatch bricks = brickify(voxelize(store, members));
+            if (bricks.size() < members.length) {
+                rebuilt.addAll(bricks);
+                System.arraycopy(members, 0, replaced, replacedCount, members.length);
+                replacedCount += members.length;
+            }
+        }
+
+        boolean applied = replacedCount > 0;
+        if (applied) {
+            world.beginBatch();
+            try {
+                world.removeBricks(Arrays.copyOf(replaced, replacedCount), true);
+                BatchResult result = world.addBricks(rebuilt, true);
+                if (!result.isCommitted()) {
+                    throw new IllegalStateException("Rebuilt bricks do not fit: " + result);
+                }
+            } finally {
+                world.endBatch();
+            }
+        }
+        return new Result(ids.length, ids.length - replacedCount + rebuilt.size(), applied, System.nanoTime() - start);
+    }
+
+    /**
+     * Fill a grid spanning the given bricks with their colors.
+     */
+    private static VoxelGrid voxelize(BrickStore store, int[] ids) {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int id : ids) {
+            minX = Math.min(minX, store.getX(id));
+            minY = Math.min(minY, store.getY(id));
+            minZ = Math.min(minZ, store.getZ(id));
+            maxX = Math.max(maxX, store.getX(id) + store.getActualWidth(id));
+            maxY = Math.max(maxY, store.getY(id) + store.getType(id).getHeight());
+            maxZ = Math.max(maxZ, store.getZ(id) + store.getActualLength(id));
+        }
+        VoxelGrid grid = new VoxelGrid(minX, minY, minZ, maxX - minX, maxY - minY, maxZ - minZ);
+        for (int id : ids) {
+            int x = store.getX(id) - minX, y = store.getY(id) - minY, z = store.getZ(id) - minZ;
+            grid.fill(x, y, z, x + store.getActualWidth(id), y + store.getType(id).getHeight(),
+                    z + store.getActualLength(id), store.getColor(id));
+        }
+        return grid;
+    }
+
+    private static BrickBatch tileCourse(VoxelGrid grid, int course) {
+        int sizeX = grid.getSizeX(), sizeZ = grid.getSizeZ(), area = sizeX * sizeZ;
+        int y0 = course * COURSE_HEIGHT;
+        int plates = Math.min(COURSE_HEIGHT, grid.getSizeY() - y0);
+        int ox = grid.getOriginX(), oy = grid.getOriginY(), oz = grid.getOriginZ();
+        BrickBatch bricks = new BrickBatch(area / 8 + 16);
+
+        // Columns filled with one color through the whole course take full-height bricks
+        byte[] columns = new byte[area];
+        if (plates == COURSE_HEIGHT) {
+            for (int i = 0; i < area; i++) {
+                byte color = grid.raw(y0 * area + i);
+                if (color != 0 && grid.raw((y0 + 1) * area + i) == color && grid.raw((y0 + 2) * area + i) == color) {
+                    columns[i] = color;
+                }
+            }
+        }
+        byte[] full = columns.clone();
+        BRICKS.tile(columns, sizeX, sizeZ, course, (type, color, x, z, rotation) ->
+                bricks.add(type, color, ox + x, oy + y0, oz + z, rotation));
+
+        // Everything else in the course is tiled with plates, layer by layer
+        byte[] layer = new byte[area];
+        for (int p = 0; p < plates; p++) {
+            int y = y0 + p;
+            grid.copyLayer(y, layer);
+            for (int i = 0; i < area; i++) {
+                if (full[i] != 0) {
+                    layer[i] = 0;
+                }
+            }
+            PLATES.tile(layer, sizeX, sizeZ, y, (type, color, x, z, rotation) ->
+                    bricks.add(type, color, ox + x, oy + y, oz + z, rotation));
+        }
+        return bricks;
+    }
+}
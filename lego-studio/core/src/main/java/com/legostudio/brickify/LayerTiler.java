@@ -0,0 +1,122 @@
+package com.legostudio.brickify;
+
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Greedy tiler for one layer of colored cells.
+ *
+ * Cells are visited in row order; the first uncovered cell of each run is the
+ * corner of the next brick, which is the largest footprint that fits over
+ * uncovered cells of one color. Footprints are tried by area, squarer first
+ * on ties, so 2x4 beats 2x3 beats 2x2 beats 1x4. Elongated footprints are
+ * laid lengthwise along Z on even layers and along X on odd layers, so the
+ * joints of one layer are bridged by the bricks of the next.
+ *
+ * A tiler holds no per-call state and may be shared between threads.
+ */
+public final class LayerTiler {
+    private static final BrickColor[] COLORS = BrickColor.values();
+
+    /**
+     * Receives the bricks of a tiled layer, in layer coordinates.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void place(BrickType type, BrickColor color, int x, int z, int rotation);
+    }
+
+    // Per layer parity: candidate footprints in order of preference
+    private final BrickType[][] types = new BrickType[2][];
+    private final int[][] rotations = new int[2][];
+
+    /**
+     * Create a tiler using every brick type of the given height in plates.
+     */
+    public LayerTiler(int height) {
+        List<BrickType> candidates = new ArrayList<>();
+        for (BrickType type : BrickType.values()) {
+            if (type.getHeight() == height) {
+                candidates.add(type);
+            }
+        }
+        if (candidates.stream().noneMatch(type -> type.getWidth() == 1 && type.getLength() == 1)) {
+            throw new IllegalArgumentException("No 1x1 type of height " + height + " to fill single cells");
+        }
+        candidates.sort(Comparator.comparingInt((BrickType type) -> type.getWidth() * type.getLength())
+                .thenComparingInt(type -> Math.min(type.getWidth(), type.getLength()))
+                .reversed());
+
+        for (int parity = 0; parity < 2; parity++) {
+            List<BrickType> orderedTypes = new ArrayList<>();
+            List<Integer> orderedRotations = new ArrayList<>();
+            for (BrickType type : candidates) {
+                // Long side along Z at rotation 0; prefer that on even layers and the quarter turn on odd ones
+                boolean longAlongZ = type.getLength() >= type.getWidth();
+                int preferred = (parity == 0) == longAlongZ || type.getWidth() == type.getLength() ? 0 : 90;
+                orderedTypes.add(type);
+                orderedRotations.add(preferred);
+                if (type.getWidth() != type.getLength()) {
+                    orderedTypes.add(type);
+                    orderedRotations.add(preferred ^ 90);
+                }
+            }
+            types[parity] = orderedTypes.toArray(new BrickType[0]);
+            rotations[parity] = orderedRotations.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Tile a layer of sizeX x sizeZ cells stored row by row (index z * sizeX + x),
+     * each holding a color ordinal + 1 or 0 for empty. Covered cells are cleared.
+     *
+     * @param parity Layer index or any number alternating between neighbouring layers
+     * @return Number of bricks placed
+     */
+    public int tile(byte[] layer, int sizeX, int sizeZ, int parity, Sink sink) {
+        BrickType[] order = types[parity & 1];
+        int[] orderRotations = rotations[parity & 1];
+        int placed = 0;
+        for (int z = 0; z < sizeZ; z++) {
+            for (int x = 0; x < sizeX; x++) {
+                byte color = layer[z * sizeX + x];
+                if (color == 0) {
+                    continue;
+                }
+                for (int i = 0; i < order.length; i++) {
+                    int w = order[i].getActualWidth(orderRotations[i]);
+                    int l = order[i].getActualLength(orderRotations[i]);
+                    if (fits(layer, sizeX, sizeZ, x, z, w, l, color)) {
+                        for (int dz = 0; dz < l; dz++) {
+                            Arrays.fill(layer, (z + dz) * sizeX + x, (z + dz) * sizeX + x + w, (byte) 0);
+                        }
+                        sink.place(order[i], COLORS[color - 1], x, z, orderRotations[i]);
+                        placed++;
+                        break;
+                    }
+                }
+            }
+        }
+        return placed;
+    }
+
+    private static boolean fits(byte[] layer, int sizeX, int sizeZ, int x, int z, int w, int l, byte color) {
+        if (x + w > sizeX || z + l > sizeZ) {
+            return false;
+        }
+        for (int dz = 0; dz < l; dz++) {
+            int row = (z + dz) * sizeX + x;
+            for (int dx = 0; dx < w; dx++) {
+                if (layer[row + dx] != color) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
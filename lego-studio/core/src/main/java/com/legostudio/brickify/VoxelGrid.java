@@ -0,0 +1,109 @@
+package com.legostudio.brickify;
+
+import com.legostudio.model.BrickColor;
+
+import java.util.Arrays;
+
+/**
+ * Dense box of colored cells, one cell per stud in X/Z and per plate in Y.
+ *
+ * The input format of {@link Brickifier}: anything that produces colored
+ * voxels (importers, generators, an existing region of bricks) fills a grid
+ * and lets the brickifier choose the bricks. Cells are stored layer by layer,
+ * so each plate layer is one contiguous run of the backing array.
+ */
+public final class VoxelGrid {
+    private static final BrickColor[] COLORS = BrickColor.values();
+
+    private final int originX, originY, originZ;
+    private final int sizeX, sizeY, sizeZ;
+    private final byte[] cells; // Color ordinal + 1, or 0 for empty; index (y * sizeZ + z) * sizeX + x
+
+    /**
+     * Create an empty grid whose cell (0, 0, 0) lies at world cell (originX, originY, originZ).
+     */
+    public VoxelGrid(int originX, int originY, int originZ, int sizeX, int sizeY, int sizeZ) {
+        if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0 || (long) sizeX * sizeY * sizeZ > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Invalid grid size: " + sizeX + "x" + sizeY + "x" + sizeZ);
+        }
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.cells = new byte[sizeX * sizeY * sizeZ];
+    }
+
+    public VoxelGrid(int sizeX, int sizeY, int sizeZ) {
+        this(0, 0, 0, sizeX, sizeY, sizeZ);
+    }
+
+    public int getOriginX() { return originX; }
+    public int getOriginY() { return originY; }
+    public int getOriginZ() { return originZ; }
+    public int getSizeX() { return sizeX; }
+    public int getSizeY() { return sizeY; }
+    public int getSizeZ() { return sizeZ; }
+
+    /**
+     * Get the color of a cell in grid coordinates, or null if it is empty.
+     */
+    public BrickColor get(int x, int y, int z) {
+        int value = cells[index(x, y, z)];
+        return value == 0 ? null : COLORS[value - 1];
+    }
+
+    /**
+     * Set the color of a cell in grid coordinates; null empties it.
+     */
+    public void set(int x, int y, int z, BrickColor color) {
+        cells[index(x, y, z)] = color == null ? 0 : (byte) (color.ordinal() + 1);
+    }
+
+    /**
+     * Fill a box of cells in grid coordinates, upper bounds exclusive.
+     */
+    public void fill(int x0, int y0, int z0, int x1, int y1, int z1, BrickColor color) {
+        byte value = color == null ? 0 : (byte) (color.ordinal() + 1);
+        for (int y = y0; y < y1; y++) {
+            for (int z = z0; z < z1; z++) {
+                int row = (y * sizeZ + z) * sizeX;
+                Arrays.fill(cells, row + x0, row + x1, value);
+            }
+        }
+    }
+
+    public boolean isFilled(int x, int y, int z) {
+        return cells[index(x, y, z)] != 0;
+    }
+
+    public int countFilled() {
+        int count = 0;
+        for (byte cell : cells) {
+            if (cell != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copy plate layer y into dest in {@link LayerTiler} layout.
+     */
+    void copyLayer(int y, byte[] dest) {
+        System.arraycopy(cells, y * sizeX * sizeZ, dest, 0, sizeX * sizeZ);
+    }
+
+    byte raw(int index) {
+        return cells[index];
+    }
+
+    private int index(int x, int y, int z) {
+        if (x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ) {
+            throw new IndexOutOfBoundsException("Cell (" + x + ", " + y + ", " + z + ") outside "
+                    + sizeX + "x" + sizeY + "x" + sizeZ + " grid");
+        }
+        return (y * sizeZ + z) * sizeX + x;
+    }
+}
@@ -0,0 +1,405 @@
+package com.legostudio.cli;
+
+import com.legostudio.brickify.Brickifier;
+import com.legostudio.io.GeometryExporter;
+import com.legostudio.io.Importers;
+import com.legostudio.io.LDrawExporter;
+import com.legostudio.io.ModelImporter;
+import com.legostudio.io.RegionFile;
+import com.legostudio.io.RegionStreamer;
+import com.legostudio.io.WorldFile;
+import com.legostudio.model.BatchResult;
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickStore;
+import com.legostudio.model.BrickWorld;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless batch tool: loads model files, validates, optimizes, converts and
+ * exports them, and prints statistics, without a window or OpenGL.
+ *
+ * Directories are searched for every readable model; a region world
+ * directory counts as one model. Models are processed in parallel, one per
+ * thread, and reported in the order given. The exit status is 1 if any model
+ * could not be processed, otherwise 2 if --validate found problems.
+ */
+public final class LegoStudioCli {
+    private static final long HISTORY_BUDGET = 4 << 10; // Nothing is undone here; keep each world's journal tiny
+    private static final String REGION_SUFFIX = "-regions";
+
+    private static final String USAGE = """
+            Usage: lego-studio-cli [options] <model file or directory>...
+
+            Prints statistics for every model. Reads .vox, .obj, .stl, .png, .jpg, .ldr, .mpd,
+            .lsb and region world directories.
+
+            Options:
+              --validate         Exit with status 2 if any model has overlapping or floating bricks
+              --optimize         Merge bricks into fewer, larger ones before converting
+              --convert <format> Write each model as lsb, ldr, lsr (region directory), glb, stl or obj
+              --out <dir>        Directory for converted models (default: next to each model)
+              --keep-hidden      Keep covered faces and studs in glb, stl and obj exports
+              --threads <n>      Models processed at once (default: one per core)
+            """;
+
+    private boolean validate;
+    private boolean optimize;
+    private String convert; // Target extension, or null
+    private Path outDirectory;
+    private boolean keepHidden;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final List<Path> inputs = new ArrayList<>();
+
+    /**
+     * Outcome of one model, printed as one line.
+     */
+    private static final class Report {
+        final Path model;
+        int bricks;
+        int dropped; // Overlapping or out of bounds on load
+        int floating;
+        int assemblies;
+        int chunks;
+        int sizeX, sizeZ, sizeY;
+        Brickifier.Result optimized;
+        Path output;
+        String error;
+        long nanos;
+
+        Report(Path model) {
+            this.model = model;
+        }
+
+        boolean hasProblems() {
+            return dropped > 0 || floating > 0;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return model + ": " + error;
+            }
+            StringBuilder line = new StringBuilder().append(model).append(": ")
+                    .append(bricks).append(" bricks, ")
+                    .append(assemblies).append(" assemblies, ")
+                    .append(chunks).append(" chunks, ")
+                    .append(sizeX).append('x').append(sizeZ).append(" studs x ").append(sizeY).append(" plates");
+            if (dropped > 0) {
+                line.append(", ").append(dropped).append(" overlapping dropped");
+            }
+            if (floating > 0) {
+                line.append(", ").append(floating).append(" floating");
+            }
+            if (optimized != null && optimized.isApplied()) {
+                line.append(", optimized from ").append(optimized.getBricksBefore());
+            }
+            if (output != null) {
+                line.append(" -> ").append(output);
+            }
+            return line.append(String.format(" (%d ms)", nanos / 1_000_000)).toString();
+        }
+    }
+
+    private LegoStudioCli() {
+    }
+
+    public static void main(String[] args) {
+        LegoStudioCli cli = new LegoStudioCli();
+        String problem = cli.parse(args);
+        if (problem != null && problem.isEmpty()) {
+            System.out.print(USAGE);
+            return;
+        }
+        if (problem != null) {
+            System.err.println(problem);
+            System.err.print(USAGE);
+            System.exit(1);
+        }
+        System.exit(cli.run());
+    }
+
+    /**
+     * Read the arguments; returns a message if they are not usable.
+     */
+    private String parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            switch (arg) {
+                case "--validate" -> validate = true;
+                case "--optimize" -> optimize = true;
+                case "--keep-hidden" -> keepHidden = true;
+                case "--convert" -> {
+                    if (!hasValue) {
+                        return "--convert needs a format";
+                    }
+                    convert = args[++i].toLowerCase(Locale.ROOT);
+                    if (!List.of("lsb", "ldr", "lsr", "glb", "stl", "obj").contains(convert)) {
+                        return "Unknown format: " + convert;
+                    }
+                }
+                case "--out" -> {
+                    if (!hasValue) {
+                        return "--out needs a directory";
+                    }
+                    outDirectory = Path.of(args[++i]);
+                }
+                case "--threads" -> {
+                    try {
+                        threads = hasValue ? Integer.parseInt(args[++i]) : 0;
+                    } catch (NumberFormatException e) {
+                        threads = 0;
+                    }
+                    if (threads < 1) {
+                        return "--threads needs a positive number";
+                    }
+                }
+                case "-h", "--help" -> {
+                    return "";
+                }
+                default -> {
+                    if (arg.startsWith("--")) {
+                        return "Unknown option: " + arg;
+                    }
+                    inputs.add(Path.of(arg));
+                }
+            }
+        }
+        return inputs.isEmpty() ? "No model files given" : null;
+    }
+
+    private int run() {
+        long start = System.nanoTime();
+        List<Path> models = new ArrayList<>();
+        boolean failed = false;
+        for (Path input : inputs) {
+            try {
+                collect(input, models);
+            } catch (IOException e) {
+                System.err.println("Could not read " + input + ": " + e.getMessage());
+                failed = true;
+            }
+        }
+        if (outDirectory != null && convert != null) {
+            try {
+                Files.createDirectories(outDirectory);
+            } catch (IOException e) {
+                System.err.println("Could not create " + outDirectory + ": " + e.getMessage());
+                return 1;
+            }
+        }
+
+        // Settle every output before anything runs: models convert concurrently, so
+        // two writing the same file, or one overwriting another's input, would corrupt it
+        Set<Path> sources = new HashSet<>();
+        for (Path model : models) {
+            sources.add(model.toAbsolutePath().normalize());
+        }
+        Map<Path, Path> writers = new HashMap<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, models.size())));
+        List<Future<Report>> pending = new ArrayList<>(models.size());
+        for (Path model : models) {
+            Path target = convert != null ? target(model) : null;
+            String conflict = null;
+            if (target != null) {
+                Path key = target.toAbsolutePath().normalize();
+                Path other = writers.putIfAbsent(key, model);
+                if (sources.contains(key)) {
+                    conflict = "Converting would overwrite the model " + target;
+                } else if (other != null) {
+                    conflict = "Converting would overwrite " + target + ", written from " + other;
+                }
+            }
+            if (conflict != null) {
+                Report report = new Report(model);
+                report.error = conflict;
+                pending.add(CompletableFuture.completedFuture(report));
+            } else {
+                pending.add(pool.submit(() -> process(model, target)));
+            }
+        }
+        pool.shutdown();
+
+        long bricks = 0;
+        int problems = 0, errors = 0;
+        for (Future<Report> future : pending) {
+            Report report;
+            try {
+                report = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 1;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            if (report.error != null) {
+                System.err.println(report);
+                errors++;
+                continue;
+            }
+            System.out.println(report);
+            bricks += report.bricks;
+            if (report.hasProblems()) {
+                problems++;
+            }
+        }
+
+        System.out.printf("%d model(s), %d bricks in %d ms%s%s%n", models.size(), bricks,
+                (System.nanoTime() - start) / 1_000_000,
+                errors > 0 ? ", " + errors + " failed" : "",
+                validate ? ", " + problems + " with problems" : "");
+        return failed || errors > 0 ? 1 : validate && problems > 0 ? 2 : 0;
+    }
+
+    /**
+     * Add the input, or every model under it if it is a directory.
+     */
+    private static void collect(Path input, List<Path> models) throws IOException {
+        if (!Files.isDirectory(input) || RegionFile.isRegionWorld(input)) {
+            models.add(input);
+            return;
+        }
+        List<Path> found = new ArrayList<>();
+        Files.walkFileTree(input, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (RegionFile.isRegionWorld(dir)) {
+                    found.add(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (WorldFile.isWorldFile(file) || Importers.isSupported(file)) {
+                    found.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        found.sort(null);
+        models.addAll(found);
+    }
+
+    /**
+     * Load, check, optimize and convert one model, writing the target if not null.
+     * Runs on a pool thread; never throws.
+     */
+    private Report process(Path model, Path target) {
+        long start = System.nanoTime();
+        Report report = new Report(model);
+        try {
+            BrickWorld world = new BrickWorld();
+            world.setHistoryBudget(HISTORY_BUDGET);
+            world.setResidentBudget(Runtime.getRuntime().maxMemory() / 4 / threads);
+            report.dropped = load(world, model);
+            if (optimize) {
+                report.optimized = Brickifier.optimize(world);
+            }
+            describe(world, report);
+            if (target != null) {
+                write(world, target);
+                report.output = target;
+            }
+        } catch (IOException | RuntimeException e) {
+            report.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        } catch (OutOfMemoryError e) {
+            report.error = "Out of memory; try fewer --threads or a larger -Xmx";
+        }
+        report.nanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Load a model at its stored position; returns the number of bricks that did not fit.
+     */
+    private static int load(BrickWorld world, Path model) throws IOException {
+        if (RegionFile.isRegionWorld(model)) {
+            try (RegionStreamer regions = RegionStreamer.open(world, model, 0, 0)) {
+                regions.loadAll();
+                return regions.getRejectedCount();
+            }
+        }
+        BrickBatch bricks;
+        if (WorldFile.isWorldFile(model)) {
+            bricks = WorldFile.load(model);
+        } else {
+            ModelImporter importer = Importers.forPath(model);
+            if (importer == null) {
+                throw new IOException("Unsupported model format");
+            }
+            bricks = importer.read(model);
+        }
+        BatchResult result = world.loadBricks(bricks);
+        return result.getRejectedCount();
+    }
+
+    private static void describe(BrickWorld world, Report report) {
+        BrickStore store = world.getBrickStore();
+        report.bricks = store.size();
+        report.assemblies = world.getAssemblyCount();
+        report.chunks = world.getChunkCount();
+        if (store.size() == 0) {
+            return;
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int slot = 0; slot < store.size(); slot++) {
+            int id = store.getIdAt(slot);
+            minX = Math.min(minX, store.getX(id));
+            minY = Math.min(minY, store.getY(id));
+            minZ = Math.min(minZ, store.getZ(id));
+            maxX = Math.max(maxX, store.getX(id) + store.getActualWidth(id));
+            maxY = Math.max(maxY, store.getY(id) + store.getType(id).getHeight());
+            maxZ = Math.max(maxZ, store.getZ(id) + store.getActualLength(id));
+            if (!world.isGrounded(id)) {
+                report.floating++;
+            }
+        }
+        report.sizeX = maxX - minX;
+        report.sizeY = maxY - minY;
+        report.sizeZ = maxZ - minZ;
+    }
+
+    /**
+     * The converted file for a model: its name with the new extension, next to it or in --out.
+     */
+    private Path target(Path model) {
+        String name = model.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 && !Files.isDirectory(model) ? name.substring(0, dot) : name;
+        Path directory = outDirectory != null ? outDirectory : model.toAbsolutePath().getParent();
+        return convert.equals("lsr")
+                ? directory.resolve(base.endsWith(REGION_SUFFIX) ? base : base + REGION_SUFFIX)
+                : directory.resolve(base + "." + convert);
+    }
+
+    private void write(BrickWorld world, Path target) throws IOException {
+        switch (convert) {
+            case "lsb" -> WorldFile.save(world.getBrickStore(), target);
+            case "ldr" -> LDrawExporter.write(world.getBrickStore(), target);
+            case "lsr" -> RegionFile.save(world.getBrickStore(), target);
+            default -> GeometryExporter.export(world.snapshot(), target, !keepHidden);
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickType;
+import com.legostudio.model.BrickWorld;
+import com.legostudio.model.WorldChangeEvent;
+import com.legostudio.model.WorldChangeListener;
+import com.legostudio.model.WorldSnapshot;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead autosave of a {@link BrickWorld}, for recovering the last
+ * session after a crash or an accidental exit.
+ *
+ * The directory holds one generation: a full snapshot {@code autosave-N.lsb}
+ * in the {@link WorldFile} format and a log {@code autosave-N.wal} of every
+ * change since. The log starts with a palette like the snapshot's, followed
+ * by records, little-endian:
+ * <pre>
+ *   i32 payload length, i32 CRC32C of the payload, then the payload:
+ *   u8 flags (1 = cleared), varint removed count, varint added count,
+ *   removed: zigzag varint x, y, z of each brick's origin,
+ *   added:   u16 type index &lt;&lt; 10 | color index &lt;&lt; 2 | quarter turns, zigzag varint x, y, z
+ * </pre>
+ * One record is one {@link WorldChangeEvent}, so a batch replays as a unit.
+ *
+ * The change listener only queues events; a background writer thread
+ * encodes everything queued since its last write and commits the group
+ * with a single {@code force}. Once the log outgrows the snapshot, a new
+ * snapshot is taken and written by the same thread, which then starts the
+ * next generation and deletes the previous one. Snapshot and log therefore
+ * stay about the same size, which bounds recovery time.
+ */
+public final class AutosaveLog implements WorldChangeListener, AutoCloseable {
+    private static final int MAGIC = 'L' | 'S' << 8 | 'W' << 16 | 0x1A << 24;
+    private static final int VERSION = 1;
+    private static final int CLEARED = 1;
+    private static final long MIN_COMPACT_BYTES = 4L << 20;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final Pattern FILE_NAME = Pattern.compile("autosave-(\\d+)\\.(lsb|wal)(\\.tmp)?");
+
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final BrickColor[] COLORS = BrickColor.values();
+
+    private static final Object CLOSE = new Object();
+
+    private final BrickWorld world;
+    private final Path directory;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>(); // Events, snapshots and CLOSE
+    private final Thread writer;
+    private long generation;
+
+    // Shared with the world's thread
+    private volatile long logBytes;
+    private volatile long compactAt = MIN_COMPACT_BYTES;
+    private volatile boolean compacting = true; // Until the first snapshot is written
+    private volatile boolean failed;
+
+    // Writer thread state
+    private FileChannel log;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final RecordEncoder record = new RecordEncoder();
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Start logging the world's changes to the directory, replacing any earlier
+     * autosave once the world's current state has been written as a snapshot.
+     * Call {@link #recover} first to continue from the earlier autosave.
+     */
+    public AutosaveLog(BrickWorld world, Path directory) throws IOException {
+        this.world = world;
+        this.directory = directory;
+        Files.createDirectories(directory);
+        generation = latestGeneration(directory) + 1;
+
+        queue.add(world.snapshot());
+        world.addChangeListener(this);
+        writer = new Thread(this::run, "autosave");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    /**
+     * Restore the last autosaved state into the world, as one batch with no undo history.
+     * The log is folded into the snapshot's bricks before anything is placed, so the
+     * world validates and indexes the final state once. A torn record at the end of
+     * the log, left by a crash mid-write, is ignored.
+     *
+     * @return False if the directory holds no autosave
+     */
+    public static boolean recover(BrickWorld world, Path directory) throws IOException {
+        long generation = latestGeneration(directory);
+        if (generation < 0) {
+            return false;
+        }
+        BrickBatch bricks = WorldFile.load(snapshotFile(directory, generation));
+        Path logFile = logFile(directory, generation);
+        if (Files.exists(logFile)) {
+            bricks = replay(bricks, logFile);
+        }
+
+        world.beginBatch();
+        try {
+            world.clear();
+            world.addBricks(bricks);
+        } finally {
+            world.endBatch();
+        }
+        world.clearHistory();
+        return true;
+    }
+
+    /**
+     * True if the writer hit an I/O error and stopped logging.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public void onWorldChanged(WorldChangeEvent event) {
+        if (failed) {
+            return;
+        }
+        queue.add(event);
+        if (!compacting && logBytes >= compactAt) {
+            compacting = true;
+            queue.add(world.snapshot());
+        }
+    }
+
+    /**
+     * Stop listening and wait for everything queued to reach the disk.
+     */
+    @Override
+    public void close() {
+        world.removeChangeListener(this);
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Object> group = new ArrayList<>();
+        try {
+            while (true) {
+                group.add(queue.take());
+                queue.drainTo(group);
+                boolean closing = false;
+                for (Object item : group) {
+                    if (item instanceof WorldChangeEvent event) {
+                        append(event);
+                    } else if (item instanceof WorldSnapshot snapshot) {
+                        commit();
+                        compact(snapshot);
+                    } else {
+                        closing = true;
+                    }
+                }
+                group.clear();
+                commit();
+                if (closing) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Autosave stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queue.clear();
+            try {
+                if (log != null) {
+                    log.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Encode one event into the write buffer.
+     */
+    private void append(WorldChangeEvent event) throws IOException {
+        record.encode(event);
+        crc.reset();
+        crc.update(record.bytes, 0, record.size);
+        if (buffer.remaining() < 8) {
+            drain();
+        }
+        buffer.putInt(record.size).putInt((int) crc.getValue());
+        for (int offset = 0; offset < record.size; ) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(buffer.remaining(), record.size - offset);
+            buffer.put(record.bytes, offset, n);
+            offset += n;
+        }
+        logBytes += 8 + record.size;
+    }
+
+    /**
+     * Write out the buffer and make the log durable; one force per group of events.
+     */
+    private void commit() throws IOException {
+        if (log != null && buffer.position() > 0) {
+            drain();
+            log.force(false);
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write a full snapshot as the next generation, start its empty log and drop the previous generation.
+     */
+    private void compact(WorldSnapshot snapshot) throws IOException {
+        long next = generation;
+        WorldFile.save(snapshot, snapshotFile(directory, next)); // Written aside and moved into place
+
+        if (log != null) {
+            log.close();
+        }
+        log = FileChannel.open(logFile(directory, next), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC).putShort((short) VERSION).put((byte) TYPES.length).put((byte) COLORS.length);
+        WorldFile.putPalette(buffer);
+        commit();
+        generation = next + 1;
+
+        // Older generations are superseded once the new snapshot is in place. A file
+        // still mapped by the recovery cannot be deleted on Windows; the next
+        // compaction tries again.
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (m.matches() && Long.parseLong(m.group(1)) < next) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // Left for the next compaction
+                    }
+                }
+            }
+        }
+
+        logBytes = 0;
+        compactAt = Math.max(MIN_COMPACT_BYTES, Files.size(snapshotFile(directory, next)));
+        compacting = false;
+    }
+
+    /**
+     * Apply the log to the snapshot's bricks. A world never holds two bricks with
+     * the same origin cell, so origins identify the bricks that records remove.
+     */
+    private static BrickBatch replay(BrickBatch snapshot, Path logFile) throws IOException {
+        OriginTable bricks = new OriginTable(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            bricks.put(snapshot.getX(i), snapshot.getY(i), snapshot.getZ(i),
+                    attributes(snapshot.getType(i), snapshot.getColor(i), snapshot.getRotation(i)));
+        }
+
+        // Read once, front to back: copied to the heap rather than mapped, so the new
+        // session can delete the file at its first compaction
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE - 8) {
+                throw new IOException("Autosave log too large: " + logFile.getFileName());
+            }
+            ByteBuffer in = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (in.hasRemaining()) {
+                if (channel.read(in, in.position()) < 0) {
+                    break;
+                }
+            }
+            in.flip();
+            BrickType[] types;
+            BrickColor[] colors;
+            try {
+                if (in.getInt() != MAGIC) {
+                    throw new IOException("Not an autosave log: " + logFile.getFileName());
+                }
+                int version = in.getShort() & 0xFFFF;
+                if (version != VERSION) {
+                    throw new IOException("Unsupported autosave log version " + version);
+                }
+                int typeCount = in.get() & 0xFF;
+                int colorCount = in.get() & 0xFF;
+                types = WorldFile.readTypes(in, typeCount);
+                colors = WorldFile.readColors(in, colorCount);
+            } catch (BufferUnderflowException e) {
+                return bricks.toBatch(); // Crashed before the header was written: nothing to replay
+            }
+
+            CRC32C crc = new CRC32C();
+            while (in.remaining() >= 8) {
+                int length = in.getInt();
+                int checksum = in.getInt();
+                if (length < 0 || length > in.remaining()) {
+                    break;
+                }
+                ByteBuffer payload = in.slice(in.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                in.position(in.position() + length);
+                try {
+                    apply(bricks, payload, types, colors);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                    throw new IOException("Corrupt autosave record in " + logFile.getFileName(), e);
+                }
+            }
+        }
+        return bricks.toBatch();
+    }
+
+    private static void apply(OriginTable bricks, ByteBuffer in, BrickType[] types, BrickColor[] colors)
+            throws IOException {
+        int flags = in.get();
+        int removedCount = getVarint(in);
+        int addedCount = getVarint(in);
+        if ((flags & CLEARED) != 0) {
+            bricks.clear();
+        }
+        for (int i = 0; i < removedCount; i++) {
+            bricks.remove(getZigzag(in), getZigzag(in), getZigzag(in));
+        }
+        for (int i = 0; i < addedCount; i++) {
+            int attributes = in.getShort() & 0xFFFF;
+            int type = attributes >>> 10, color = (attributes >>> 2) & 0xFF;
+            if (type >= types.length || color >= colors.length) {
+                throw new IOException("Autosave record refers to a missing palette entry");
+            }
+            bricks.put(getZigzag(in), getZigzag(in), getZigzag(in),
+                    attributes(types[type], colors[color], (attributes & 3) * 90));
+        }
+    }
+
+    private static int attributes(BrickType type, BrickColor color, int rotation) {
+        return type.ordinal() << 10 | color.ordinal() << 2 | rotation / 90;
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int getZigzag(ByteBuffer in) {
+        int v = getVarint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Highest generation with a complete snapshot, or -1.
+     */
+    private static long latestGeneration(Path directory) throws IOException {
+        long latest = -1;
+        if (!Files.isDirectory(directory)) {
+            return latest;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (m.matches() && m.group(2).equals(WorldFile.EXTENSION) && m.group(3) == null) {
+                    latest = Math.max(latest, Long.parseLong(m.group(1)));
+                }
+            }
+        }
+        return latest;
+    }
+
+    private static Path snapshotFile(Path directory, long generation) {
+        return directory.resolve("autosave-" + generation + "." + WorldFile.EXTENSION);
+    }
+
+    private static Path logFile(Path directory, long generation) {
+        return directory.resolve("autosave-" + generation + ".wal");
+    }
+
+    /**
+     * Reusable byte array that one event is encoded into before framing.
+     */
+    private static final class RecordEncoder {
+        byte[] bytes = new byte[256];
+        int size;
+
+        void encode(WorldChangeEvent event) {
+            BrickBatch removed = event.getRemoved();
+            BrickBatch added = event.getAdded();
+            size = 0;
+            ensure(11 + removed.size() * 15 + added.size() * 17);
+            bytes[size++] = (byte) (event.isCleared() ? CLEARED : 0);
+            putVarint(removed.size());
+            putVarint(added.size());
+            for (int i = 0; i < removed.size(); i++) {
+                putZigzag(removed.getX(i));
+                putZigzag(removed.getY(i));
+                putZigzag(removed.getZ(i));
+            }
+            for (int i = 0; i < added.size(); i++) {
+                int attributes = attributes(added.getType(i), added.getColor(i), added.getRotation(i));
+                bytes[size++] = (byte) attributes;
+                bytes[size++] = (byte) (attributes >>> 8);
+                putZigzag(added.getX(i));
+                putZigzag(added.getY(i));
+                putZigzag(added.getZ(i));
+            }
+        }
+
+        private void ensure(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = new byte[Math.max(capacity, bytes.length * 2)];
+            }
+        }
+
+        private void putVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void putZigzag(int value) {
+            putVarint(value << 1 ^ value >> 31);
+        }
+    }
+
+    /**
+     * Open-addressing map from brick origin cells to packed attributes, used while replaying.
+     * Removed entries keep their key with a {@value #REMOVED} value until the table is cleared.
+     */
+    private static final class OriginTable {
+        private static final int EMPTY = -2;
+        private static final int REMOVED = -1;
+
+        private int[] xs, ys, zs, values;
+        private int used; // Keys, including removed ones
+
+        OriginTable(int expected) {
+            allocate(Integer.highestOneBit(Math.max(expected, 16) * 2) * 2);
+        }
+
+        void put(int x, int y, int z, int value) {
+            int i = find(x, y, z);
+            if (values[i] == EMPTY) {
+                xs[i] = x;
+                ys[i] = y;
+                zs[i] = z;
+                if (++used * 2 > values.length) {
+                    values[i] = value;
+                    rehash();
+                    return;
+                }
+            }
+            values[i] = value;
+        }
+
+        void remove(int x, int y, int z) {
+            int i = find(x, y, z);
+            if (values[i] != EMPTY) {
+                values[i] = REMOVED;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(values, EMPTY);
+            used = 0;
+        }
+
+        BrickBatch toBatch() {
+            BrickBatch batch = new BrickBatch(used);
+            for (int i = 0; i < values.length; i++) {
+                int value = values[i];
+                if (value >= 0) {
+                    batch.add(TYPES[value >>> 10], COLORS[(value >>> 2) & 0xFF], xs[i], ys[i], zs[i], (value & 3) * 90);
+                }
+            }
+            return batch;
+        }
+
+        /**
+         * Slot holding the key, or the empty slot where it belongs.
+         */
+        private int find(int x, int y, int z) {
+            int mask = values.length - 1;
+            int h = x * 0x9E3779B1 ^ y * 0x85EBCA77 ^ z * 0xC2B2AE3D;
+            int i = (h ^ h >>> 16) & mask;
+            while (values[i] != EMPTY && (xs[i] != x || ys[i] != y || zs[i] != z)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void allocate(int capacity) {
+            xs = new int[capacity];
+            ys = new int[capacity];
+            zs = new int[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+        }
+
+        private void rehash() {
+            int[] oldXs = xs, oldYs = ys, oldZs = zs, oldValues = values;
+            allocate(values.length * 2);
+            used = 0;
+            for (int j = 0; j < oldValues.length; j++) {
+                if (oldValues[j] >= 0) { // Removed entries are dropped
+                    int i = find(oldXs[j], oldYs[j], oldZs[j]);
+                    xs[i] = oldXs[j];
+                    ys[i] = oldYs[j];
+                    zs[i] = oldZs[j];
+                    values[i] = oldValues[j];
+                    used++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,610 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickGeometry;
+import com.legostudio.model.BrickType;
+import com.legostudio.model.ChunkOccupancy;
+import com.legostudio.model.WorldSnapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.legostudio.io.WorldFile.CHUNK_SHIFT;
+import static com.legostudio.model.BrickGeometry.ALL_FACES;
+import static com.legostudio.model.BrickGeometry.BACK;
+import static com.legostudio.model.BrickGeometry.BOTTOM;
+import static com.legostudio.model.BrickGeometry.FRONT;
+import static com.legostudio.model.BrickGeometry.LEFT;
+import static com.legostudio.model.BrickGeometry.RIGHT;
+import static com.legostudio.model.BrickGeometry.TOP;
+import static com.legostudio.model.BrickType.PLATE_HEIGHT;
+
+/**
+ * Writes the triangle geometry of a world as binary glTF (.glb), binary STL
+ * (.stl) or OBJ (.obj), built from {@link BrickGeometry}.
+ *
+ * Bricks are grouped by 16x16x16 chunk and each chunk is meshed and encoded
+ * on a fork-join pool, a bounded window of chunks at a time, while the caller
+ * writes finished chunks to the file channel in order. Memory therefore
+ * depends on the window, not on the size of the model. With hidden surfaces
+ * stripped, a box face is dropped when every cell beyond it is occupied, and
+ * a stud when the cell above it is, tested against a {@link ChunkOccupancy}
+ * collected once per chunk.
+ *
+ * glTF is in meters with Y up and per-vertex colors. STL is in millimeters
+ * with Z up, as slicers expect, and has no colors. OBJ is in millimeters with
+ * Y up and refers to one material per brick color in a .mtl file next to it.
+ */
+public final class GeometryExporter {
+    public enum Format {
+        GLB, STL, OBJ
+    }
+
+    private static final float MILLIMETERS_PER_STUD = 8;
+    private static final float METERS_PER_STUD = 0.008f;
+    private static final int CHUNKS_PER_THREAD = 2; // Window of chunks in flight
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final BrickColor[] COLORS = BrickColor.values();
+
+    private GeometryExporter() {
+    }
+
+    /**
+     * Get the format for a file name, or null if it is not a geometry format.
+     */
+    public static Format formatOf(Path path) {
+        return switch (Importers.extension(path)) {
+            case "glb" -> Format.GLB;
+            case "stl" -> Format.STL;
+            case "obj" -> Format.OBJ;
+            default -> null;
+        };
+    }
+
+    /**
+     * Write every brick of a snapshot in the format given by the file extension.
+     * Safe to call from any thread.
+     *
+     * @param stripHidden Drop box faces and studs that are covered by other bricks
+     * @return Number of triangles written
+     */
+    public static long export(WorldSnapshot snapshot, Path path, boolean stripHidden) throws IOException {
+        Format format = formatOf(path);
+        if (format == null) {
+            throw new IOException("Unsupported geometry format: " + path.getFileName());
+        }
+        WorldFile.ChunkRecords grouped = WorldFile.ChunkRecords.group(snapshot.getBrickCount(), snapshot::forEachBrick);
+        int chunks = grouped.index.size;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = CHUNKS_PER_THREAD * pool.getParallelism();
+        ArrayDeque<Future<ChunkMesh>> inFlight = new ArrayDeque<>(window);
+
+        try (Output output = switch (format) {
+            case GLB -> new GlbOutput(path);
+            case STL -> new StlOutput(path);
+            case OBJ -> new ObjOutput(path);
+        }) {
+            int submitted = 0;
+            for (int c = 0; c < chunks; c++) {
+                while (submitted < chunks && submitted - c < window) {
+                    int chunk = submitted++;
+                    inFlight.add(pool.submit(() -> output.encode(mesh(snapshot, grouped, chunk, stripHidden))));
+                }
+                output.write(take(inFlight.poll()));
+            }
+            output.finish();
+            return output.triangles;
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
+        }
+    }
+
+    private static ChunkMesh take(Future<ChunkMesh> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Mesh the bricks whose origin lies in one chunk, in world units.
+     */
+    private static ChunkMesh mesh(WorldSnapshot snapshot, WorldFile.ChunkRecords grouped, int c, boolean stripHidden) {
+        BrickBatch bricks = new BrickBatch(grouped.start[c + 1] - grouped.start[c]);
+        try {
+            for (int i = grouped.start[c]; i < grouped.start[c + 1]; i++) {
+                WorldFile.addRecord(bricks, grouped.records[i], grouped.index.cx[c] << CHUNK_SHIFT,
+                        grouped.index.cy[c] << CHUNK_SHIFT, grouped.index.cz[c] << CHUNK_SHIFT, TYPES, COLORS);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ChunkOccupancy occupied = stripHidden
+                ? snapshot.occupancyAround(grouped.index.cx[c], grouped.index.cy[c], grouped.index.cz[c]) : null;
+        ChunkMesh mesh = new ChunkMesh();
+        for (int i = 0; i < bricks.size(); i++) {
+            int x = bricks.getX(i), y = bricks.getY(i), z = bricks.getZ(i);
+            int rotation = bricks.getRotation(i);
+            int w = bricks.getType(i).getActualWidth(rotation);
+            int l = bricks.getType(i).getActualLength(rotation);
+            int h = bricks.getType(i).getHeight();
+            mesh.color = (byte) bricks.getColor(i).ordinal();
+
+            int faces = ALL_FACES;
+            if (stripHidden) {
+                faces &= ~(occupied.isFull(x + w, y, z, x + w + 1, y + h, z + l) ? 1 << RIGHT : 0);
+                faces &= ~(occupied.isFull(x - 1, y, z, x, y + h, z + l) ? 1 << LEFT : 0);
+                faces &= ~(occupied.isFull(x, y + h, z, x + w, y + h + 1, z + l) ? 1 << TOP : 0);
+                faces &= ~(y > 0 && occupied.isFull(x, y - 1, z, x + w, y, z + l) ? 1 << BOTTOM : 0);
+                faces &= ~(occupied.isFull(x, y, z + l, x + w, y + h, z + l + 1) ? 1 << FRONT : 0);
+                faces &= ~(occupied.isFull(x, y, z - 1, x + w, y + h, z) ? 1 << BACK : 0);
+            }
+            float top = (y + h) * PLATE_HEIGHT;
+            BrickGeometry.box(mesh, x, y * PLATE_HEIGHT, z, x + w, top, z + l, faces);
+            if ((faces & 1 << TOP) == 0) {
+                continue;
+            }
+            for (int sx = x; sx < x + w; sx++) {
+                for (int sz = z; sz < z + l; sz++) {
+                    if (!stripHidden || !occupied.isOccupied(sx, y + h, sz)) {
+                        BrickGeometry.stud(mesh, sx + 0.5f, top, sz + 0.5f);
+                    }
+                }
+            }
+        }
+        return mesh;
+    }
+
+    /**
+     * Indexed triangles of one chunk, then its encoding in the output format.
+     */
+    private static final class ChunkMesh implements BrickGeometry.MeshBuilder {
+        float[] positions = new float[3 * 256];
+        byte[] normals = new byte[256];
+        byte[] colors = new byte[256];
+        int vertexCount;
+        int[] indices = new int[3 * 256];
+        int indexCount;
+        byte color; // Color of the vertices being added
+
+        ByteBuffer data; // Encoded chunk
+        ByteBuffer indexData; // Encoded indices, relative to the chunk, for formats that keep them apart
+        float[] bounds; // Min x, y, z, max x, y, z of the encoded positions
+
+        @Override
+        public int vertex(float x, float y, float z, int normal) {
+            if (vertexCount == normals.length) {
+                positions = Arrays.copyOf(positions, vertexCount * 6);
+                normals = Arrays.copyOf(normals, vertexCount * 2);
+                colors = Arrays.copyOf(colors, vertexCount * 2);
+            }
+            positions[3 * vertexCount] = x;
+            positions[3 * vertexCount + 1] = y;
+            positions[3 * vertexCount + 2] = z;
+            normals[vertexCount] = (byte) normal;
+            colors[vertexCount] = color;
+            return vertexCount++;
+        }
+
+        @Override
+        public void triangle(int a, int b, int c) {
+            if (indexCount == indices.length) {
+                indices = Arrays.copyOf(indices, indexCount * 2);
+            }
+            indices[indexCount++] = a;
+            indices[indexCount++] = b;
+            indices[indexCount++] = c;
+        }
+
+        int getTriangleCount() {
+            return indexCount / 3;
+        }
+
+        /**
+         * Drop the geometry once encoded; only the encoding waits to be written.
+         */
+        void release() {
+            positions = null;
+            normals = null;
+            colors = null;
+            indices = null;
+        }
+    }
+
+    /**
+     * A file being written. Chunks are encoded on worker threads and written
+     * by the caller in order, into a temporary file that replaces the target
+     * once complete.
+     */
+    private abstract static class Output implements Closeable {
+        final Path path;
+        final Path tmp;
+        final FileChannel channel;
+        long triangles;
+
+        Output(Path path) throws IOException {
+            this.path = path;
+            this.tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * Encode a chunk into mesh.data. Runs on a worker thread.
+         */
+        abstract ChunkMesh encode(ChunkMesh mesh);
+
+        /**
+         * Append an encoded chunk. Runs on the caller.
+         */
+        void write(ChunkMesh mesh) throws IOException {
+            writeFully(channel, mesh.data);
+            triangles += mesh.indexCount / 3;
+        }
+
+        void finish() throws IOException {
+            channel.force(false);
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Binary STL: an 80-byte header, the triangle count, then 50 bytes per
+     * triangle with a facet normal. The count is filled in at the end.
+     */
+    private static final class StlOutput extends Output {
+        private static final int HEADER_BYTES = 80;
+        private static final int TRIANGLE_BYTES = 50;
+
+        StlOutput(Path path) throws IOException {
+            super(path);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 4);
+            header.put("Lego Studio".getBytes(StandardCharsets.US_ASCII)).position(header.capacity()).flip();
+            writeFully(channel, header);
+        }
+
+        @Override
+        ChunkMesh encode(ChunkMesh mesh) {
+            ByteBuffer out = ByteBuffer.allocate(mesh.getTriangleCount() * TRIANGLE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            float[] p = mesh.positions;
+            float s = MILLIMETERS_PER_STUD;
+            for (int i = 0; i < mesh.indexCount; i += 3) {
+                int a = 3 * mesh.indices[i], b = 3 * mesh.indices[i + 1], c = 3 * mesh.indices[i + 2];
+                // Z up: (x, y, z) becomes (x, -z, y)
+                float ux = p[b] - p[a], uy = p[a + 2] - p[b + 2], uz = p[b + 1] - p[a + 1];
+                float vx = p[c] - p[a], vy = p[a + 2] - p[c + 2], vz = p[c + 1] - p[a + 1];
+                float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+                float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (length > 0) {
+                    nx /= length;
+                    ny /= length;
+                    nz /= length;
+                }
+                out.putFloat(nx).putFloat(ny).putFloat(nz)
+                        .putFloat(p[a] * s).putFloat(-p[a + 2] * s).putFloat(p[a + 1] * s)
+                        .putFloat(p[b] * s).putFloat(-p[b + 2] * s).putFloat(p[b + 1] * s)
+                        .putFloat(p[c] * s).putFloat(-p[c + 2] * s).putFloat(p[c + 1] * s)
+                        .putShort((short) 0);
+            }
+            mesh.data = out.flip();
+            mesh.release();
+            return mesh;
+        }
+
+        @Override
+        void finish() throws IOException {
+            if (triangles > 0xFFFFFFFFL) {
+                throw new IOException("Too many triangles for STL: " + triangles);
+            }
+            ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) triangles).flip();
+            channel.write(count, HEADER_BYTES);
+            super.finish();
+        }
+    }
+
+    /**
+     * OBJ text. The normal table comes first so faces can index it; face
+     * vertices use negative indexes, relative to the end of the vertex list,
+     * so each chunk encodes without knowing how many vertices came before.
+     */
+    private static final class ObjOutput extends Output {
+        private static final int VERTEX_BYTES = 2 + 3 * 16 + 1; // "v", three numbers, newline
+        private static final int FACE_BYTES = 2 + 3 * 17 + 1; // "f", three "-vertex//normal", newline
+        private static final int USEMTL_BYTES = 8 + Arrays.stream(COLORS).mapToInt(c -> c.name().length()).max().orElse(0);
+
+        ObjOutput(Path path) throws IOException {
+            super(path);
+            String name = path.getFileName().toString();
+            String library = name.substring(0, name.length() - ".obj".length()) + ".mtl";
+
+            StringBuilder materials = new StringBuilder("# Lego Studio\n");
+            for (BrickColor color : COLORS) {
+                materials.append("newmtl ").append(color.name()).append('\n')
+                        .append(String.format(Locale.ROOT, "Kd %.4f %.4f %.4f%n", color.getR(), color.getG(), color.getB()));
+            }
+            Files.writeString(path.resolveSibling(library), materials, StandardCharsets.US_ASCII);
+
+            StringBuilder header = new StringBuilder("# Lego Studio\nmtllib ").append(library).append('\n');
+            for (float[] n : BrickGeometry.NORMALS) {
+                header.append(String.format(Locale.ROOT, "vn %.6f %.6f %.6f%n", n[0], n[1], n[2]));
+            }
+            writeFully(channel, ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.US_ASCII)));
+        }
+
+        @Override
+        ChunkMesh encode(ChunkMesh mesh) {
+            int n = mesh.vertexCount;
+            ByteBuffer out = ByteBuffer.allocate(n * VERTEX_BYTES + mesh.getTriangleCount() * (FACE_BYTES + USEMTL_BYTES));
+            float[] p = mesh.positions;
+            for (int v = 0; v < 3 * n; v += 3) {
+                out.put((byte) 'v');
+                for (int k = 0; k < 3; k++) {
+                    out.put((byte) ' ');
+                    putFixed(out, p[v + k] * MILLIMETERS_PER_STUD);
+                }
+                out.put((byte) '\n');
+            }
+            int color = -1;
+            for (int i = 0; i < mesh.indexCount; i += 3) {
+                if (mesh.colors[mesh.indices[i]] != color) {
+                    color = mesh.colors[mesh.indices[i]];
+                    out.put("usemtl ".getBytes(StandardCharsets.US_ASCII))
+                            .put(COLORS[color].name().getBytes(StandardCharsets.US_ASCII)).put((byte) '\n');
+                }
+                out.put((byte) 'f');
+                for (int k = 0; k < 3; k++) {
+                    int vertex = mesh.indices[i + k];
+                    out.put((byte) ' ');
+                    putInt(out, vertex - n);
+                    out.put((byte) '/').put((byte) '/');
+                    putInt(out, mesh.normals[vertex] + 1);
+                }
+                out.put((byte) '\n');
+            }
+            mesh.data = out.flip();
+            mesh.release();
+            return mesh;
+        }
+
+        /**
+         * Append a number with up to four decimals, without going through String.
+         */
+        private static void putFixed(ByteBuffer out, float value) {
+            long fixed = Math.round(value * 10_000.0);
+            if (fixed < 0) {
+                out.put((byte) '-');
+                fixed = -fixed;
+            }
+            putInt(out, fixed / 10_000);
+            int fraction = (int) (fixed % 10_000);
+            if (fraction != 0) {
+                out.put((byte) '.');
+                for (int digit = 1000; fraction != 0; digit /= 10) {
+                    out.put((byte) ('0' + fraction / digit));
+                    fraction %= digit;
+                }
+            }
+        }
+
+        private static void putInt(ByteBuffer out, long value) {
+            if (value < 0) {
+                out.put((byte) '-');
+                value = -value;
+            }
+            int start = out.position();
+            do {
+                out.put((byte) ('0' + value % 10));
+                value /= 10;
+            } while (value != 0);
+            for (int i = start, j = out.position() - 1; i < j; i++, j--) {
+                byte digit = out.get(i);
+                out.put(i, out.get(j));
+                out.put(j, digit);
+            }
+        }
+    }
+
+    /**
+     * Binary glTF with a single primitive: interleaved position, normal and
+     * color, then 32-bit indices. The JSON chunk needs the final counts and
+     * bounds and must come first, so vertices and indices are streamed to
+     * two scratch files and copied behind the JSON at the end.
+     */
+    private static final class GlbOutput extends Output {
+        private static final int MAGIC = 0x46546C67; // "glTF"
+        private static final int CHUNK_JSON = 0x4E4F534A;
+        private static final int CHUNK_BIN = 0x004E4942;
+        private static final int STRIDE = 28; // Position and normal floats, RGBA bytes
+        private static final long MAX_BIN_BYTES = 0xFFFFFFFFL - (1 << 20); // Leaves room for the header and JSON
+        private static final byte[][] LINEAR_COLORS = new byte[COLORS.length][];
+
+        static {
+            for (BrickColor color : COLORS) {
+                LINEAR_COLORS[color.ordinal()] = new byte[] {
+                        toLinear(color.getR()), toLinear(color.getG()), toLinear(color.getB()), (byte) 255};
+            }
+        }
+
+        private final Path vertexFile, indexFile;
+        private final FileChannel vertices, indices;
+        private long vertexCount;
+        private long binLength;
+        private final float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+
+        GlbOutput(Path path) throws IOException {
+            super(path);
+            vertexFile = path.resolveSibling(path.getFileName() + ".vertices.tmp");
+            indexFile = path.resolveSibling(path.getFileName() + ".indices.tmp");
+            vertices = FileChannel.open(vertexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+            indices = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        @Override
+        ChunkMesh encode(ChunkMesh mesh) {
+            ByteBuffer out = ByteBuffer.allocate(mesh.vertexCount * STRIDE).order(ByteOrder.LITTLE_ENDIAN);
+            float[] box = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                    -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+            for (int v = 0; v < mesh.vertexCount; v++) {
+                for (int k = 0; k < 3; k++) {
+                    float value = mesh.positions[3 * v + k] * METERS_PER_STUD;
+                    box[k] = Math.min(box[k], value);
+                    box[3 + k] = Math.max(box[3 + k], value);
+                    out.putFloat(value);
+                }
+                float[] n = BrickGeometry.NORMALS[mesh.normals[v]];
+                out.putFloat(n[0]).putFloat(n[1]).putFloat(n[2]);
+                out.put(LINEAR_COLORS[mesh.colors[v]]);
+            }
+            ByteBuffer index = ByteBuffer.allocate(mesh.indexCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+            index.asIntBuffer().put(mesh.indices, 0, mesh.indexCount);
+            mesh.data = out.flip();
+            mesh.indexData = index;
+            mesh.bounds = box;
+            mesh.release();
+            return mesh;
+        }
+
+        @Override
+        void write(ChunkMesh mesh) throws IOException {
+            int count = mesh.data.remaining() / STRIDE;
+            ByteBuffer index = mesh.indexData;
+            binLength += mesh.data.remaining() + index.limit();
+            if (binLength > MAX_BIN_BYTES) {
+                throw new IOException("Model too large for binary glTF, which is limited to 4 GB");
+            }
+            int base = (int) vertexCount;
+            for (int i = 0; i < index.limit(); i += 4) {
+                index.putInt(i, index.getInt(i) + base);
+            }
+            writeFully(vertices, mesh.data);
+            writeFully(indices, index);
+            vertexCount += count;
+            triangles += index.limit() / 12;
+            for (int k = 0; k < 3; k++) {
+                bounds[k] = Math.min(bounds[k], mesh.bounds[k]);
+                bounds[3 + k] = Math.max(bounds[3 + k], mesh.bounds[3 + k]);
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            long vertexBytes = vertices.size(), indexBytes = indices.size();
+            byte[] json = json(vertexBytes, indexBytes).getBytes(StandardCharsets.UTF_8);
+            int jsonLength = (json.length + 3) & ~3;
+            long total = 12 + 8 + jsonLength + (binLength > 0 ? 8 + binLength : 0);
+            if (total > 0xFFFFFFFFL) {
+                throw new IOException("Model too large for binary glTF: " + total + " bytes");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(12 + 8 + jsonLength + 8).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(2).putInt((int) total);
+            header.putInt(jsonLength).putInt(CHUNK_JSON).put(json);
+            while (header.position() < 20 + jsonLength) {
+                header.put((byte) ' ');
+            }
+            if (binLength > 0) {
+                header.putInt((int) binLength).putInt(CHUNK_BIN);
+            }
+            writeFully(channel, header.flip());
+            copy(vertices, vertexBytes);
+            copy(indices, indexBytes);
+            super.finish();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                vertices.close();
+                indices.close();
+            } finally {
+                super.close();
+            }
+        }
+
+        private void copy(FileChannel from, long size) throws IOException {
+            for (long position = 0; position < size; ) {
+                position += from.transferTo(position, size - position, channel);
+            }
+        }
+
+        private String json(long vertexBytes, long indexBytes) {
+            StringBuilder json = new StringBuilder(1024)
+                    .append("{\"asset\":{\"version\":\"2.0\",\"generator\":\"Lego Studio\"},\"scene\":0,");
+            if (vertexCount == 0) {
+                return json.append("\"scenes\":[{}]}").toString();
+            }
+            json.append("\"scenes\":[{\"nodes\":[0]}],\"nodes\":[{\"mesh\":0}],")
+                    .append("\"meshes\":[{\"primitives\":[{\"attributes\":{\"POSITION\":0,\"NORMAL\":1,\"COLOR_0\":2},")
+                    .append("\"indices\":3,\"material\":0}]}],")
+                    .append("\"materials\":[{\"pbrMetallicRoughness\":{\"baseColorFactor\":[1,1,1,1],")
+                    .append("\"metallicFactor\":0,\"roughnessFactor\":0.5}}],")
+                    .append("\"buffers\":[{\"byteLength\":").append(vertexBytes + indexBytes).append("}],")
+                    .append("\"bufferViews\":[{\"buffer\":0,\"byteLength\":").append(vertexBytes)
+                    .append(",\"byteStride\":").append(STRIDE).append(",\"target\":34962},")
+                    .append("{\"buffer\":0,\"byteOffset\":").append(vertexBytes)
+                    .append(",\"byteLength\":").append(indexBytes).append(",\"target\":34963}],")
+                    .append("\"accessors\":[{\"bufferView\":0,\"componentType\":5126,\"count\":").append(vertexCount)
+                    .append(",\"type\":\"VEC3\",\"min\":[").append(bounds[0]).append(',').append(bounds[1])
+                    .append(',').append(bounds[2]).append("],\"max\":[").append(bounds[3]).append(',')
+                    .append(bounds[4]).append(',').append(bounds[5]).append("]},")
+                    .append("{\"bufferView\":0,\"byteOffset\":12,\"componentType\":5126,\"count\":").append(vertexCount)
+                    .append(",\"type\":\"VEC3\"},")
+                    .append("{\"bufferView\":0,\"byteOffset\":24,\"componentType\":5121,\"normalized\":true,\"count\":")
+                    .append(vertexCount).append(",\"type\":\"VEC4\"},")
+                    .append("{\"bufferView\":1,\"componentType\":5125,\"count\":").append(indexBytes / 4)
+                    .append(",\"type\":\"SCALAR\"}]}");
+            return json.toString();
+        }
+
+        /**
+         * sRGB color component to an 8-bit linear one, as glTF vertex colors are linear.
+         */
+        private static byte toLinear(float srgb) {
+            double linear = srgb <= 0.04045 ? srgb / 12.92 : Math.pow((srgb + 0.055) / 1.055, 2.4);
+            return (byte) Math.round(linear * 255);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BatchResult;
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickWorld;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Picks the importer for a model file by its extension and loads files into a world.
+ */
+public final class Importers {
+    private Importers() {
+    }
+
+    public static boolean isSupported(Path path) {
+        return forPath(path) != null;
+    }
+
+    /**
+     * Get the importer for the file's extension, or null if the format is not supported.
+     */
+    public static ModelImporter forPath(Path path) {
+        return switch (extension(path)) {
+            case "vox" -> new VoxImporter();
+            case "obj", "stl" -> new MeshImporter();
+            case "png", "jpg", "jpeg" -> new MosaicImporter();
+            case "ldr", "mpd" -> new LDrawImporter();
+            default -> null;
+        };
+    }
+
+    /**
+     * Import a model file and add it to the world in one batch, centered on (centerX, centerZ)
+     * and resting on the baseplate. Bricks that collide with the world are skipped.
+     */
+    public static BatchResult load(BrickWorld world, Path path, int centerX, int centerZ) throws IOException {
+        ModelImporter importer = forPath(path);
+        if (importer == null) {
+            throw new IOException("Unsupported model format: " + path.getFileName());
+        }
+        BrickBatch bricks = importer.read(path);
+        int maxX = 0, maxZ = 0;
+        for (int i = 0; i < bricks.size(); i++) {
+            maxX = Math.max(maxX, bricks.getX(i) + bricks.getType(i).getActualWidth(bricks.getRotation(i)));
+            maxZ = Math.max(maxZ, bricks.getZ(i) + bricks.getType(i).getActualLength(bricks.getRotation(i)));
+        }
+        bricks.translate(centerX - maxX / 2, 0, centerZ - maxZ / 2);
+        return world.addBricks(bricks);
+    }
+
+    static String extension(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,117 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickType;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * LDraw conventions shared by the importer and exporter.
+ *
+ * LDraw measures in LDU: 20 per stud and 8 per plate, with -Y up. A part's
+ * origin is the center of its top face, under the studs, and the long side of
+ * a rectangular part lies along X. The world is mapped as (x, -y, -z), a half
+ * turn about X, so models are not mirrored. World rotation r corresponds to a
+ * turn of 90 - r degrees about LDraw's Y axis, since BrickType puts the long
+ * side along Z at rotation 0.
+ */
+final class LDraw {
+    static final int LDU_PER_STUD = 20;
+    static final int LDU_PER_PLATE = 8;
+
+    // Part number per BrickType ordinal
+    private static final String[] PARTS = new String[BrickType.values().length];
+    // LDraw color code per BrickColor ordinal
+    private static final int[] COLOR_CODES = new int[BrickColor.values().length];
+
+    private static final Map<String, BrickType> TYPES_BY_PART = new HashMap<>();
+    private static final Map<Integer, BrickColor> COLORS_BY_CODE = new HashMap<>();
+
+    static {
+        part(BrickType.BRICK_1X1, "3005");
+        part(BrickType.BRICK_1X2, "3004");
+        part(BrickType.BRICK_1X3, "3622");
+        part(BrickType.BRICK_1X4, "3010");
+        part(BrickType.BRICK_2X2, "3003");
+        part(BrickType.BRICK_2X3, "3002");
+        part(BrickType.BRICK_2X4, "3001");
+        part(BrickType.PLATE_1X1, "3024");
+        part(BrickType.PLATE_1X2, "3023");
+        part(BrickType.PLATE_2X2, "3022");
+        part(BrickType.PLATE_2X4, "3020");
+
+        color(BrickColor.BLACK, 0);
+        color(BrickColor.BLUE, 1);
+        color(BrickColor.GREEN, 2);
+        color(BrickColor.RED, 4);
+        color(BrickColor.PINK, 13);
+        color(BrickColor.YELLOW, 14);
+        color(BrickColor.WHITE, 15);
+        color(BrickColor.TAN, 19);
+        color(BrickColor.ORANGE, 25);
+        color(BrickColor.LIME, 27);
+        color(BrickColor.BROWN, 70);
+        color(BrickColor.LIGHT_GRAY, 71);
+        color(BrickColor.DARK_GRAY, 72);
+        color(BrickColor.DARK_BLUE, 272);
+        color(BrickColor.AZURE, 322);
+        // Common codes without a color of their own map to the closest one
+        COLORS_BY_CODE.put(6, BrickColor.BROWN);
+        COLORS_BY_CODE.put(7, BrickColor.LIGHT_GRAY);
+        COLORS_BY_CODE.put(8, BrickColor.DARK_GRAY);
+        COLORS_BY_CODE.put(9, BrickColor.AZURE);
+        COLORS_BY_CODE.put(10, BrickColor.GREEN);
+        COLORS_BY_CODE.put(28, BrickColor.TAN);
+        COLORS_BY_CODE.put(73, BrickColor.AZURE);
+        COLORS_BY_CODE.put(191, BrickColor.ORANGE);
+        COLORS_BY_CODE.put(320, BrickColor.RED);
+    }
+
+    private LDraw() {
+    }
+
+    private static void part(BrickType type, String number) {
+        PARTS[type.ordinal()] = number;
+        TYPES_BY_PART.put(number, type);
+    }
+
+    private static void color(BrickColor color, int code) {
+        COLOR_CODES[color.ordinal()] = code;
+        COLORS_BY_CODE.put(code, color);
+    }
+
+    static String partFile(BrickType type) {
+        return PARTS[type.ordinal()] + ".dat";
+    }
+
+    /**
+     * Find the type of a part file reference such as "3001.dat" or "parts\3001.dat", or null.
+     */
+    static BrickType typeOf(String file) {
+        String name = file.toLowerCase(Locale.ROOT).replace('\\', '/');
+        if (name.startsWith("parts/")) {
+            name = name.substring(6);
+        }
+        if (!name.endsWith(".dat")) {
+            return null;
+        }
+        return TYPES_BY_PART.get(name.substring(0, name.length() - 4));
+    }
+
+    static int colorCode(BrickColor color) {
+        return COLOR_CODES[color.ordinal()];
+    }
+
+    /**
+     * Map a color code to a brick color: known codes by table, direct colors (0x2RRGGBB)
+     * to the nearest color, anything else to light gray.
+     */
+    static BrickColor colorOf(int code) {
+        if ((code & 0xFF000000) == 0x02000000) {
+            return BrickColor.nearest((code >> 16) & 0xFF, (code >> 8) & 0xFF, code & 0xFF);
+        }
+        return COLORS_BY_CODE.getOrDefault(code, BrickColor.LIGHT_GRAY);
+    }
+}
@@ -0,0 +1,430 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports LDraw models (.ldr, and .mpd files with their submodels).
+ *
+ * Files are read as a stream of bytes, tokenized in place; numbers are parsed
+ * without creating strings, so the only allocation per line is a part's file
+ * name. Each file section is parsed once into primitive arrays of references.
+ * The main model is then expanded recursively, composing placement matrices
+ * in preallocated per-depth buffers. References that are not submodels of the
+ * MPD are looked up as .ldr files in the model's directory or below it; paths
+ * that lead anywhere else are treated as missing. Color 16 and 24 inherit the
+ * color of the referencing line.
+ *
+ * Only the bricks and plates that {@link LDraw} maps to a BrickType, placed
+ * upright and turned in quarter turns, become bricks; other parts and
+ * placements are counted as skipped, as are references that would recurse
+ * into a model already being expanded and lines that cannot be parsed.
+ */
+public final class LDrawImporter implements ModelImporter {
+    private static final int MAX_DEPTH = 32;
+    private static final int INHERITED_COLOR = 16;
+    private static final int EDGE_COLOR = 24;
+    private static final double EPSILON = 1e-3;
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final BrickColor[] COLORS = BrickColor.values();
+
+    /**
+     * One file section: references as color, LDraw matrix (x y z a b c d e f g h i) and
+     * target, a BrickType ordinal or -1 for a submodel named in names.
+     */
+    private static final class Model {
+        int[] colors = new int[64];
+        double[] matrices = new double[64 * 12];
+        int[] types = new int[64];
+        String[] names = new String[64];
+        int size;
+        boolean expanding; // On the current expansion path; a reference back to it is a cycle
+
+        int add(int color, int type, String name) {
+            if (size == colors.length) {
+                colors = Arrays.copyOf(colors, size * 2);
+                matrices = Arrays.copyOf(matrices, size * 24);
+                types = Arrays.copyOf(types, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+            }
+            colors[size] = color;
+            types[size] = type;
+            names[size] = name;
+            return size++;
+        }
+    }
+
+    private final Map<String, Model> models = new HashMap<>();
+    private final double[][] transforms = new double[MAX_DEPTH + 1][12];
+    private final double[] scratch = new double[12];
+    private Path directory;
+    private int skipped;
+
+    @Override
+    public BrickBatch read(Path path) throws IOException {
+        models.clear();
+        skipped = 0;
+        directory = path.toAbsolutePath().normalize().getParent();
+        Model main = parse(path);
+
+        BrickBatch bricks = new BrickBatch(main.size);
+        double[] identity = transforms[0];
+        Arrays.fill(identity, 0);
+        identity[3] = identity[7] = identity[11] = 1;
+        expand(main, identity, BrickColor.LIGHT_GRAY.ordinal(), 1, bricks);
+        normalize(bricks);
+        return bricks;
+    }
+
+    /**
+     * Parts that could not be represented in the last import: unknown parts, missing submodels,
+     * bricks that were tilted, upside down or turned by other than quarter turns, and malformed lines.
+     */
+    public int getSkippedCount() {
+        return skipped;
+    }
+
+    // ---- Parsing ----
+
+    /**
+     * Parse a file, registering each MPD section by name. Returns the first section.
+     */
+    private Model parse(Path path) throws IOException {
+        Model first = new Model();
+        Model current = first;
+        boolean sections = false;
+        try (InputStream in = Files.newInputStream(path)) {
+            LineReader line = new LineReader(in);
+            while (line.next()) {
+                if (!line.hasToken()) {
+                    continue;
+                }
+                try {
+                    int lineType = line.nextInt();
+                    if (lineType == 0) {
+                        String meta = line.nextWord();
+                        if (meta.equals("FILE")) {
+                            String name = key(line.rest());
+                            current = sections ? new Model() : first;
+                            sections = true;
+                            models.putIfAbsent(name, current);
+                        } else if (meta.equals("NOFILE") || meta.equals("!DATA")) {
+                            current = null; // Embedded data is not model content
+                        }
+                    } else if (lineType == 1 && current != null) {
+                        int color = line.nextColor();
+                        // Read into a scratch buffer first: add() may grow the arrays
+                        for (int i = 0; i < 12; i++) {
+                            scratch[i] = line.nextDouble();
+                        }
+                        String name = line.rest();
+                        BrickType type = LDraw.typeOf(name);
+                        int index = current.add(color, type != null ? type.ordinal() : -1, type != null ? null : name);
+                        System.arraycopy(scratch, 0, current.matrices, index * 12, 12);
+                    }
+                } catch (NumberFormatException e) {
+                    skipped++; // One bad line does not spoil the rest of the model
+                }
+            }
+        }
+        return first;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT).replace('\\', '/');
+    }
+
+    /**
+     * Find a submodel of the MPD, or an .ldr file of that name in or below the model's directory.
+     */
+    private Model resolve(String name) {
+        String key = key(name);
+        if (models.containsKey(key)) {
+            return models.get(key);
+        }
+        models.put(key, null); // Also guards against a file referencing itself while it is parsed
+        Model model = null;
+        Path file = null;
+        if (directory != null) {
+            try {
+                file = directory.resolve(name.replace('\\', '/')).normalize();
+            } catch (InvalidPathException e) {
+                file = null;
+            }
+        }
+        // Absolute names and ".." segments must not reach outside the model's directory
+        if (file != null && file.startsWith(directory) && Files.isRegularFile(file)) {
+            try {
+                model = parse(file);
+            } catch (IOException e) {
+                model = null;
+            }
+        }
+        models.put(key, model);
+        return model;
+    }
+
+    // ---- Expansion ----
+
+    private void expand(Model model, double[] parent, int parentColor, int depth, BrickBatch out) {
+        model.expanding = true;
+        double[] world = transforms[depth];
+        for (int r = 0; r < model.size; r++) {
+            int code = model.colors[r];
+            int color = code == INHERITED_COLOR || code == EDGE_COLOR ? parentColor : LDraw.colorOf(code).ordinal();
+            compose(parent, model.matrices, r * 12, world);
+            if (model.types[r] >= 0) {
+                if (!addBrick(TYPES[model.types[r]], COLORS[color], world, out)) {
+                    skipped++;
+                }
+                continue;
+            }
+            Model child = depth < MAX_DEPTH ? resolve(model.names[r]) : null;
+            if (child == null || child.expanding) {
+                skipped++;
+            } else {
+                expand(child, world, color, depth + 1, out);
+            }
+        }
+        model.expanding = false;
+    }
+
+    /**
+     * out = parent * local, both in LDraw line order (x y z a b c d e f g h i).
+     */
+    private static void compose(double[] p, double[] local, int o, double[] out) {
+        for (int row = 0; row < 3; row++) {
+            double r0 = p[3 + row * 3], r1 = p[4 + row * 3], r2 = p[5 + row * 3];
+            out[row] = r0 * local[o] + r1 * local[o + 1] + r2 * local[o + 2] + p[row];
+            for (int col = 0; col < 3; col++) {
+                out[3 + row * 3 + col] = r0 * local[o + 3 + col] + r1 * local[o + 6 + col] + r2 * local[o + 9 + col];
+            }
+        }
+    }
+
+    private static boolean addBrick(BrickType type, BrickColor color, double[] m, BrickBatch out) {
+        // Upright: only a turn about Y, which leaves b, d, f and h zero and e one
+        if (Math.abs(m[4]) > EPSILON || Math.abs(m[6]) > EPSILON || Math.abs(m[8]) > EPSILON
+                || Math.abs(m[10]) > EPSILON || Math.abs(m[7] - 1) > EPSILON) {
+            return false;
+        }
+        double cos = m[3], sin = m[5];
+        int quarterTurns;
+        if (Math.abs(cos - 1) < EPSILON && Math.abs(sin) < EPSILON) {
+            quarterTurns = 0;
+        } else if (Math.abs(cos) < EPSILON && Math.abs(sin - 1) < EPSILON) {
+            quarterTurns = 1;
+        } else if (Math.abs(cos + 1) < EPSILON && Math.abs(sin) < EPSILON) {
+            quarterTurns = 2;
+        } else if (Math.abs(cos) < EPSILON && Math.abs(sin + 1) < EPSILON) {
+            quarterTurns = 3;
+        } else {
+            return false;
+        }
+        int rotation = Math.floorMod(90 - quarterTurns * 90, 360);
+        int width = type.getActualWidth(rotation), length = type.getActualLength(rotation);
+        int x = (int) Math.round(m[0] / LDraw.LDU_PER_STUD - width / 2.0);
+        int z = (int) Math.round(-m[2] / LDraw.LDU_PER_STUD - length / 2.0);
+        int y = (int) Math.round(-m[1] / LDraw.LDU_PER_PLATE) - type.getHeight();
+        out.add(type, color, x, y, z, rotation);
+        return true;
+    }
+
+    private static void normalize(BrickBatch bricks) {
+        if (bricks.isEmpty()) {
+            return;
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        for (int i = 0; i < bricks.size(); i++) {
+            minX = Math.min(minX, bricks.getX(i));
+            minY = Math.min(minY, bricks.getY(i));
+            minZ = Math.min(minZ, bricks.getZ(i));
+        }
+        bricks.translate(-minX, -minY, -minZ);
+    }
+
+    /**
+     * Buffered line reader that tokenizes each line in place.
+     */
+    private static final class LineReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int pos, limit;
+        private byte[] line = new byte[256];
+        private int length, cursor;
+        private boolean first = true;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        boolean next() throws IOException {
+            boolean any = readLine();
+            // Skip a UTF-8 byte order mark
+            if (first && length >= 3 && line[0] == (byte) 0xEF && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+                cursor = 3;
+            }
+            first = false;
+            return any;
+        }
+
+        private boolean readLine() throws IOException {
+            length = cursor = 0;
+            boolean any = false;
+            while (true) {
+                if (pos == limit) {
+                    limit = in.readNBytes(buffer, 0, buffer.length);
+                    pos = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return any;
+                    }
+                }
+                any = true;
+                byte b = buffer[pos++];
+                if (b == '\n') {
+                    return true;
+                }
+                if (b != '\r') {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = b;
+                }
+            }
+        }
+
+        boolean hasToken() {
+            skipSpace();
+            return cursor < length;
+        }
+
+        int nextInt() {
+            skipSpace();
+            boolean negative = cursor < length && line[cursor] == '-';
+            if (negative) {
+                cursor++;
+            }
+            int start = cursor, value = 0;
+            while (cursor < length && line[cursor] >= '0' && line[cursor] <= '9') {
+                value = value * 10 + line[cursor++] - '0';
+            }
+            if (cursor == start || !atTokenEnd()) {
+                throw new NumberFormatException("Bad integer \"" + token(start) + "\"");
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * A color: a decimal code, or a direct color written in hex (0x2RRGGBB).
+         */
+        int nextColor() {
+            skipSpace();
+            if (cursor + 1 < length && line[cursor] == '0' && (line[cursor + 1] == 'x' || line[cursor + 1] == 'X')) {
+                int start = cursor;
+                cursor += 2;
+                int value = 0;
+                while (cursor < length && Character.digit(line[cursor], 16) >= 0) {
+                    value = value << 4 | Character.digit(line[cursor++], 16);
+                }
+                if (!atTokenEnd()) {
+                    throw new NumberFormatException("Bad color \"" + token(start) + "\"");
+                }
+                return value;
+            }
+            return nextInt();
+        }
+
+        double nextDouble() {
+            skipSpace();
+            int start = cursor;
+            boolean negative = cursor < length && line[cursor] == '-';
+            if (negative || (cursor < length && line[cursor] == '+')) {
+                cursor++;
+            }
+            long mantissa = 0;
+            int scale = 0, digits = 0;
+            boolean point = false;
+            while (cursor < length) {
+                byte b = line[cursor];
+                if (b >= '0' && b <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + b - '0';
+                        digits++;
+                        if (point) {
+                            scale++;
+                        }
+                    } else if (!point) {
+                        scale--;
+                    }
+                } else if (b == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+                cursor++;
+            }
+            if (!atTokenEnd()) {
+                // Exponents and other rare forms take the slow path
+                while (!atTokenEnd()) {
+                    cursor++;
+                }
+                return Double.parseDouble(token(start));
+            }
+            if (digits == 0) {
+                throw new NumberFormatException("Bad number \"" + token(start) + "\"");
+            }
+            double value = scale >= 0 ? mantissa / Math.pow(10, scale) : mantissa * Math.pow(10, -scale);
+            return negative ? -value : value;
+        }
+
+        String nextWord() {
+            skipSpace();
+            int start = cursor;
+            while (!atTokenEnd()) {
+                cursor++;
+            }
+            return token(start);
+        }
+
+        /**
+         * The rest of the line, trimmed; file names may contain spaces.
+         */
+        String rest() {
+            skipSpace();
+            int end = length;
+            while (end > cursor && (line[end - 1] == ' ' || line[end - 1] == '\t')) {
+                end--;
+            }
+            String value = new String(line, cursor, end - cursor, StandardCharsets.UTF_8);
+            cursor = length;
+            return value;
+        }
+
+        private boolean atTokenEnd() {
+            return cursor >= length || line[cursor] == ' ' || line[cursor] == '\t';
+        }
+
+        private void skipSpace() {
+            while (cursor < length && (line[cursor] == ' ' || line[cursor] == '\t')) {
+                cursor++;
+            }
+        }
+
+        private String token(int start) {
+            return new String(line, start, cursor - start, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.legostudio.io;
+
+import com.legostudio.brickify.Brickifier;
+import com.legostudio.brickify.VoxelGrid;
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * Imports triangle meshes (Wavefront .obj, binary or ASCII .stl) by voxelizing
+ * them at brick resolution: one stud in X/Z and one plate in Y.
+ *
+ * The mesh is scaled so its longest side spans a given number of studs and
+ * transformed into grid space, where every cell is a unit cube. The grid is
+ * cut into horizontal slabs of whole courses, and triangles are binned into
+ * the slabs they touch. Each slab is then processed on its own on the
+ * fork-join pool, with a bitset for its cells: surface cells are those a
+ * triangle overlaps (separating-axis triangle/box test), and in solid mode
+ * each X scanline is filled between pairs of surface crossings (even-odd
+ * parity). Filled slabs go through the {@link Brickifier}. Memory for cells
+ * is bounded by the slabs in flight, not the whole volume.
+ *
+ * Solid filling assumes a closed mesh; on open meshes a scanline that crosses
+ * an odd number of times leaves its last span empty.
+ */
+public final class MeshImporter implements ModelImporter {
+    public static final int DEFAULT_SIZE = 64;
+
+    private static final int SLAB_CELLS = 1 << 22; // Target cells per slab
+    private static final int COURSE_HEIGHT = BrickType.BRICK_1X1.getHeight();
+    private static final float SAMPLE_OFFSET = 1e-4f; // Keeps scanline samples off shared edges and vertices
+
+    private final int size;
+    private final boolean solid;
+    private final BrickColor color;
+
+    /**
+     * @param size  Length of the model's longest side in studs
+     * @param solid Fill the interior, or voxelize only the surface
+     */
+    public MeshImporter(int size, boolean solid, BrickColor color) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        this.size = size;
+        this.solid = solid;
+        this.color = color;
+    }
+
+    public MeshImporter() {
+        this(DEFAULT_SIZE, true, BrickColor.LIGHT_GRAY);
+    }
+
+    @Override
+    public BrickBatch read(Path path) throws IOException {
+        TriangleList triangles = Importers.extension(path).equals("stl") ? readStl(path) : readObj(path);
+        if (triangles.size == 0) {
+            throw new IOException("No triangles in " + path.getFileName());
+        }
+        return voxelize(triangles);
+    }
+
+    /**
+     * Growable list of triangles, nine floats each.
+     */
+    static final class TriangleList {
+        float[] coords = new float[9 * 1024];
+        int size;
+
+        void add(float[] v, int a, int b, int c) {
+            if ((size + 1) * 9 > coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            System.arraycopy(v, a * 3, coords, size * 9, 3);
+            System.arraycopy(v, b * 3, coords, size * 9 + 3, 3);
+            System.arraycopy(v, c * 3, coords, size * 9 + 6, 3);
+            size++;
+        }
+    }
+
+    // ---- Parsing ----
+
+    private static TriangleList readObj(Path path) throws IOException {
+        TriangleList triangles = new TriangleList();
+        float[] vertices = new float[3 * 1024];
+        int vertexCount = 0;
+        int[] face = new int[16];
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("v ")) {
+                    String[] parts = line.trim().split("\\s+");
+                    if ((vertexCount + 1) * 3 > vertices.length) {
+                        vertices = Arrays.copyOf(vertices, vertices.length * 2);
+                    }
+                    for (int axis = 0; axis < 3; axis++) {
+                        vertices[vertexCount * 3 + axis] = Float.parseFloat(parts[axis + 1]);
+                    }
+                    vertexCount++;
+                } else if (line.startsWith("f ")) {
+                    String[] parts = line.trim().split("\\s+");
+                    int corners = parts.length - 1;
+                    if (corners > face.length) {
+                        face = new int[corners];
+                    }
+                    for (int i = 0; i < corners; i++) {
+                        String token = parts[i + 1];
+                        int slash = token.indexOf('/');
+                        int index = Integer.parseInt(slash < 0 ? token : token.substring(0, slash));
+                        face[i] = index < 0 ? vertexCount + index : index - 1; // Negative indices count back
+                        if (face[i] < 0 || face[i] >= vertexCount) {
+                            throw new IOException("Face refers to missing vertex: " + line);
+                        }
+                    }
+                    // Polygons are triangulated as fans
+                    for (int i = 1; i + 1 < corners; i++) {
+                        triangles.add(vertices, face[0], face[i], face[i + 1]);
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed OBJ file: " + e.getMessage(), e);
+        }
+        return triangles;
+    }
+
+    private static TriangleList readStl(Path path) throws IOException {
+        long fileSize = Files.size(path);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            byte[] header = in.readNBytes(84);
+            long count = header.length == 84
+                    ? ByteBuffer.wrap(header, 80, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL : -1;
+            if (count >= 0 && 84 + 50 * count == fileSize) {
+                return readBinaryStl(in, count);
+            }
+        }
+        return readAsciiStl(path);
+    }
+
+    private static TriangleList readBinaryStl(InputStream in, long count) throws IOException {
+        TriangleList triangles = new TriangleList();
+        DataInputStream data = new DataInputStream(in);
+        byte[] record = new byte[50];
+        ByteBuffer buffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+        float[] v = new float[9];
+        for (long t = 0; t < count; t++) {
+            data.readFully(record);
+            for (int i = 0; i < 9; i += 3) {
+                zUpToYUp(buffer.getFloat(12 + i * 4), buffer.getFloat(16 + i * 4), buffer.getFloat(20 + i * 4), v, i);
+            }
+            triangles.add(v, 0, 1, 2);
+        }
+        return triangles;
+    }
+
+    private static TriangleList readAsciiStl(Path path) throws IOException {
+        TriangleList triangles = new TriangleList();
+        float[] v = new float[9];
+        int corner = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("vertex")) {
+                    String[] parts = line.split("\\s+");
+                    zUpToYUp(Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3]),
+                            v, corner * 3);
+                    if (++corner == 3) {
+                        triangles.add(v, 0, 1, 2);
+                        corner = 0;
+                    }
+                } else if (line.startsWith("endloop")) {
+                    corner = 0;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed STL file: " + e.getMessage(), e);
+        }
+        return triangles;
+    }
+
+    /**
+     * STL models are conventionally Z-up; rotate them to the world's Y-up.
+     */
+    private static void zUpToYUp(float x, float y, float z, float[] dest, int offset) {
+        dest[offset] = x;
+        dest[offset + 1] = z;
+        dest[offset + 2] = -y;
+    }
+
+    // ---- Voxelization ----
+
+    BrickBatch voxelize(TriangleList triangles) {
+        float[] c = triangles.coords;
+        int n = triangles.size;
+
+        // Scale into grid space: unit cells, one stud wide and one plate tall
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < n * 9; i++) {
+            min[i % 3] = Math.min(min[i % 3], c[i]);
+            max[i % 3] = Math.max(max[i % 3], c[i]);
+        }
+        float extent = Math.max(max[0] - min[0], Math.max(max[1] - min[1], max[2] - min[2]));
+        float scale = extent > 0 ? size / extent : 1;
+        float[] axisScale = {scale, scale / BrickType.PLATE_HEIGHT, scale};
+        for (int i = 0; i < n * 9; i++) {
+            c[i] = (c[i] - min[i % 3]) * axisScale[i % 3];
+        }
+        int sizeX = Math.max(1, (int) Math.ceil((max[0] - min[0]) * axisScale[0]));
+        int sizeY = Math.max(1, (int) Math.ceil((max[1] - min[1]) * axisScale[1]));
+        int sizeZ = Math.max(1, (int) Math.ceil((max[2] - min[2]) * axisScale[2]));
+
+        // Slabs are an even number of courses, so full-height bricks and the brickifier's
+        // alternating orientation both line up across slab boundaries
+        int step = 2 * COURSE_HEIGHT;
+        int slabHeight = Math.max(step, (int) Math.min(sizeY, SLAB_CELLS / ((long) sizeX * sizeZ)) / step * step);
+        int slabs = (sizeY + slabHeight - 1) / slabHeight;
+        int[][] bins = binBySlab(c, n, slabHeight, slabs);
+
+        BrickBatch[] parts = new BrickBatch[slabs];
+        IntStream.range(0, slabs).parallel().forEach(slab -> {
+            int y0 = slab * slabHeight;
+            int height = Math.min(slabHeight, sizeY - y0);
+            BitSet cells = new BitSet(sizeX * height * sizeZ);
+            Slab grid = new Slab(sizeX, height, sizeZ, y0, cells);
+            for (int t : bins[slab]) {
+                grid.markSurface(c, t * 9);
+            }
+            if (solid) {
+                grid.fillInterior(c, bins[slab]);
+            }
+            parts[slab] = grid.isEmpty() ? new BrickBatch(0) : Brickifier.brickify(grid.toVoxels(color));
+        });
+
+        BrickBatch bricks = new BrickBatch(Arrays.stream(parts).mapToInt(BrickBatch::size).sum());
+        for (BrickBatch part : parts) {
+            bricks.addAll(part);
+        }
+        return bricks;
+    }
+
+    /**
+     * List, per slab, the triangles whose vertical extent reaches into it.
+     */
+    private static int[][] binBySlab(float[] c, int n, int slabHeight, int slabs) {
+        int[] counts = new int[slabs];
+        for (int pass = 0; pass < 2; pass++) {
+            int[][] bins = pass == 0 ? null : new int[slabs][];
+            if (bins != null) {
+                for (int s = 0; s < slabs; s++) {
+                    bins[s] = new int[counts[s]];
+                }
+                Arrays.fill(counts, 0);
+            }
+            for (int t = 0; t < n; t++) {
+                int base = t * 9;
+                float lo = Math.min(c[base + 1], Math.min(c[base + 4], c[base + 7]));
+                float hi = Math.max(c[base + 1], Math.max(c[base + 4], c[base + 7]));
+                int first = Math.max(0, (int) Math.floor(lo) / slabHeight);
+                int last = Math.min(slabs - 1, (int) Math.floor(hi) / slabHeight);
+                for (int s = first; s <= last; s++) {
+                    if (bins != null) {
+                        bins[s][counts[s]] = t;
+                    }
+                    counts[s]++;
+                }
+            }
+            if (bins != null) {
+                return bins;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * Cell bits for plate layers [y0, y0 + height) of the grid, index (y * sizeZ + z) * sizeX + x.
+     */
+    private static final class Slab {
+        final int sizeX, height, sizeZ, y0;
+        final BitSet cells;
+
+        Slab(int sizeX, int height, int sizeZ, int y0, BitSet cells) {
+            this.sizeX = sizeX;
+            this.height = height;
+            this.sizeZ = sizeZ;
+            this.y0 = y0;
+            this.cells = cells;
+        }
+
+        boolean isEmpty() {
+            return cells.isEmpty();
+        }
+
+        /**
+         * Mark every cell of the slab that the triangle at base overlaps.
+         */
+        void markSurface(float[] c, int base) {
+            int x0 = clamp((int) Math.floor(min3(c[base], c[base + 3], c[base + 6])), sizeX);
+            int x1 = clamp((int) Math.floor(max3(c[base], c[base + 3], c[base + 6])), sizeX);
+            int ya = clamp((int) Math.floor(min3(c[base + 1], c[base + 4], c[base + 7])) - y0, height);
+            int yb = clamp((int) Math.floor(max3(c[base + 1], c[base + 4], c[base + 7])) - y0, height);
+            int z0 = clamp((int) Math.floor(min3(c[base + 2], c[base + 5], c[base + 8])), sizeZ);
+            int z1 = clamp((int) Math.floor(max3(c[base + 2], c[base + 5], c[base + 8])), sizeZ);
+            for (int y = ya; y <= yb; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    for (int x = x0; x <= x1; x++) {
+                        if (overlapsCell(c, base, x, y + y0, z)) {
+                            cells.set((y * sizeZ + z) * sizeX + x);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fill each X scanline through cell centers between alternate crossings of the surface.
+         */
+        void fillInterior(float[] c, int[] triangles) {
+            float[][] crossings = new float[height * sizeZ][];
+            int[] counts = new int[height * sizeZ];
+            for (int t : triangles) {
+                int base = t * 9;
+                float ay = c[base + 1], az = c[base + 2], by = c[base + 4], bz = c[base + 5];
+                float cy = c[base + 7], cz = c[base + 8];
+                float area = (by - ay) * (cz - az) - (bz - az) * (cy - ay);
+                if (area == 0) {
+                    continue; // Edge-on to the scanlines
+                }
+                int ya = Math.max(0, (int) Math.ceil(min3(ay, by, cy) - 0.5f) - y0);
+                int yb = Math.min(height - 1, (int) Math.floor(max3(ay, by, cy) - 0.5f) - y0);
+                int za = Math.max(0, (int) Math.ceil(min3(az, bz, cz) - 0.5f));
+                int zb = Math.min(sizeZ - 1, (int) Math.floor(max3(az, bz, cz) - 0.5f));
+                for (int y = ya; y <= yb; y++) {
+                    float py = y + y0 + 0.5f + SAMPLE_OFFSET;
+                    for (int z = za; z <= zb; z++) {
+                        float pz = z + 0.5f + SAMPLE_OFFSET * 0.7f;
+                        // Barycentric coordinates of the sample in the triangle's YZ projection
+                        float u = ((by - py) * (cz - pz) - (bz - pz) * (cy - py)) / area;
+                        float v = ((cy - py) * (az - pz) - (cz - pz) * (ay - py)) / area;
+                        float w = 1 - u - v;
+                        if (u < 0 || v < 0 || w < 0) {
+                            continue;
+                        }
+                        int row = y * sizeZ + z;
+                        if (crossings[row] == null) {
+                            crossings[row] = new float[4];
+                        } else if (counts[row] == crossings[row].length) {
+                            crossings[row] = Arrays.copyOf(crossings[row], counts[row] * 2);
+                        }
+                        crossings[row][counts[row]++] = u * c[base] + v * c[base + 3] + w * c[base + 6];
+                    }
+                }
+            }
+
+            for (int row = 0; row < crossings.length; row++) {
+                if (counts[row] < 2) {
+                    continue;
+                }
+                float[] xs = crossings[row];
+                Arrays.sort(xs, 0, counts[row]);
+                for (int i = 0; i + 1 < counts[row]; i += 2) {
+                    int from = Math.max(0, (int) Math.ceil(xs[i] - 0.5f));
+                    int to = Math.min(sizeX - 1, (int) Math.floor(xs[i + 1] - 0.5f));
+                    if (from <= to) {
+                        cells.set(row * sizeX + from, row * sizeX + to + 1);
+                    }
+                }
+            }
+        }
+
+        VoxelGrid toVoxels(BrickColor color) {
+            VoxelGrid grid = new VoxelGrid(0, y0, 0, sizeX, height, sizeZ);
+            for (int start = cells.nextSetBit(0); start >= 0; ) {
+                int row = start / sizeX;
+                int end = Math.min(cells.nextClearBit(start), (row + 1) * sizeX);
+                int y = row / sizeZ, z = row % sizeZ;
+                grid.fill(start - row * sizeX, y, z, end - row * sizeX, y + 1, z + 1, color);
+                start = cells.nextSetBit(end);
+            }
+            return grid;
+        }
+
+        private static int clamp(int value, int size) {
+            return Math.max(0, Math.min(size - 1, value));
+        }
+    }
+
+    /**
+     * Separating-axis test of the triangle at base against the unit cell at (x, y, z)
+     * (Akenine-Möller): the nine edge cross products, the cell's faces and the triangle's plane.
+     */
+    static boolean overlapsCell(float[] c, int base, int x, int y, int z) {
+        final float h = 0.5f;
+        float cx = x + h, cy = y + h, cz = z + h;
+        float v0x = c[base] - cx, v0y = c[base + 1] - cy, v0z = c[base + 2] - cz;
+        float v1x = c[base + 3] - cx, v1y = c[base + 4] - cy, v1z = c[base + 5] - cz;
+        float v2x = c[base + 6] - cx, v2y = c[base + 7] - cy, v2z = c[base + 8] - cz;
+        float[][] edges = {
+                {v1x - v0x, v1y - v0y, v1z - v0z},
+                {v2x - v1x, v2y - v1y, v2z - v1z},
+                {v0x - v2x, v0y - v2y, v0z - v2z}};
+
+        for (float[] e : edges) {
+            // Axes x, y and z crossed with the edge
+            if (separates(0, -e[2], e[1], v0x, v0y, v0z, v1x, v1y, v1z, v2x, v2y, v2z, h)
+                    || separates(e[2], 0, -e[0], v0x, v0y, v0z, v1x, v1y, v1z, v2x, v2y, v2z, h)
+                    || separates(-e[1], e[0], 0, v0x, v0y, v0z, v1x, v1y, v1z, v2x, v2y, v2z, h)) {
+                return false;
+            }
+        }
+        if (min3(v0x, v1x, v2x) > h || max3(v0x, v1x, v2x) < -h
+                || min3(v0y, v1y, v2y) > h || max3(v0y, v1y, v2y) < -h
+                || min3(v0z, v1z, v2z) > h || max3(v0z, v1z, v2z) < -h) {
+            return false;
+        }
+        float[] e0 = edges[0], e1 = edges[1];
+        float nx = e0[1] * e1[2] - e0[2] * e1[1];
+        float ny = e0[2] * e1[0] - e0[0] * e1[2];
+        float nz = e0[0] * e1[1] - e0[1] * e1[0];
+        float distance = nx * v0x + ny * v0y + nz * v0z;
+        return Math.abs(distance) <= h * (Math.abs(nx) + Math.abs(ny) + Math.abs(nz));
+    }
+
+    private static boolean separates(float ax, float ay, float az,
+                                     float v0x, float v0y, float v0z, float v1x, float v1y, float v1z,
+                                     float v2x, float v2y, float v2z, float h) {
+        float p0 = ax * v0x + ay * v0y + az * v0z;
+        float p1 = ax * v1x + ay * v1y + az * v1z;
+        float p2 = ax * v2x + ay * v2y + az * v2z;
+        float r = h * (Math.abs(ax) + Math.abs(ay) + Math.abs(az));
+        return min3(p0, p1, p2) > r || max3(p0, p1, p2) < -r;
+    }
+
+    private static float min3(float a, float b, float c) {
+        return Math.min(a, Math.min(b, c));
+    }
+
+    private static float max3(float a, float b, float c) {
+        return Math.max(a, Math.max(b, c));
+    }
+}
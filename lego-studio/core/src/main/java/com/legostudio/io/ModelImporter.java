@@ -0,0 +1,17 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BrickBatch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads a model file of some format into bricks.
+ */
+public interface ModelImporter {
+    /**
+     * Read the model. Bricks are returned with the minimum corner of the model
+     * at the origin, so the model rests on the baseplate.
+     */
+    BrickBatch read(Path path) throws IOException;
+}
@@ -0,0 +1,204 @@
+package com.legostudio.io;
+
+import com.legostudio.brickify.LayerTiler;
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickType;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a studs-up mosaic of plates from a PNG or JPEG image.
+ *
+ * The image is scaled so its longest side spans a given number of studs. It
+ * is decoded in a single pass with the decoder subsampling rows and columns,
+ * so at most {@value #SAMPLES_PER_STUD}x{@value #SAMPLES_PER_STUD} source
+ * pixels per stud are ever held, however large the file. The strip of source
+ * rows under each row of studs is then box-averaged on the fork-join pool.
+ * Quantizing to the brick palette is parallel per row too; with Floyd-Steinberg
+ * dithering the error carried from row to row makes it a single pass instead.
+ *
+ * The result is a byte per stud, tiled into plates with a {@link LayerTiler}
+ * (or left as 1x1 plates) straight into a {@link BrickBatch}. Image rows run
+ * along Z; pixels that are mostly transparent are left empty.
+ */
+public final class MosaicImporter implements ModelImporter {
+    public static final int DEFAULT_SIZE = 64;
+
+    private static final int SAMPLES_PER_STUD = 4;
+    private static final BrickColor[] COLORS = BrickColor.values();
+    private static final LayerTiler PLATES = new LayerTiler(1);
+
+    private final int size;
+    private final boolean dither;
+    private final boolean merge;
+
+    /**
+     * @param size   Length of the mosaic's longest side in studs
+     * @param dither Diffuse quantization error to neighboring studs
+     * @param merge  Merge same-colored studs into larger plates instead of using 1x1 plates
+     */
+    public MosaicImporter(int size, boolean dither, boolean merge) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        this.size = size;
+        this.dither = dither;
+        this.merge = merge;
+    }
+
+    public MosaicImporter() {
+        this(DEFAULT_SIZE, true, true);
+    }
+
+    @Override
+    public BrickBatch read(Path path) throws IOException {
+        BufferedImage image;
+        int width, height;
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unreadable image: " + path.getFileName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int sourceWidth = reader.getWidth(0), sourceHeight = reader.getHeight(0);
+                float scale = (float) size / Math.max(sourceWidth, sourceHeight);
+                width = Math.max(1, Math.round(sourceWidth * scale));
+                height = Math.max(1, Math.round(sourceHeight * scale));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(Math.max(1, sourceWidth / (width * SAMPLES_PER_STUD)),
+                        Math.max(1, sourceHeight / (height * SAMPLES_PER_STUD)), 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        float[] rgb = downsample(image, width, height);
+        byte[] codes = dither ? ditherQuantize(rgb, width, height) : quantize(rgb, width, height);
+
+        BrickBatch bricks = new BrickBatch(merge ? width * height / 4 + 16 : width * height);
+        if (merge) {
+            PLATES.tile(codes, width, height, 0, (type, color, x, z, rotation) ->
+                    bricks.add(type, color, x, 0, z, rotation));
+        } else {
+            for (int i = 0; i < codes.length; i++) {
+                if (codes[i] != 0) {
+                    bricks.add(BrickType.PLATE_1X1, COLORS[codes[i] - 1], i % width, 0, i / width, 0);
+                }
+            }
+        }
+        return bricks;
+    }
+
+    /**
+     * Average the source pixels under each stud, one strip of source rows per row of studs.
+     * Returns r, g, b per stud in 0..255, with a NaN red for studs that are mostly transparent.
+     */
+    private static float[] downsample(BufferedImage image, int width, int height) {
+        int sourceWidth = image.getWidth(), sourceHeight = image.getHeight();
+        float[] rgb = new float[width * height * 3];
+        IntStream.range(0, height).parallel().forEach(z -> {
+            int sy0 = z * sourceHeight / height;
+            int sy1 = Math.max(sy0 + 1, (z + 1) * sourceHeight / height);
+            int[] strip = image.getRGB(0, sy0, sourceWidth, sy1 - sy0, null, 0, sourceWidth);
+            for (int x = 0; x < width; x++) {
+                int sx0 = x * sourceWidth / width;
+                int sx1 = Math.max(sx0 + 1, (x + 1) * sourceWidth / width);
+                long r = 0, g = 0, b = 0, alpha = 0;
+                for (int row = 0; row < sy1 - sy0; row++) {
+                    for (int sx = sx0; sx < sx1; sx++) {
+                        int argb = strip[row * sourceWidth + sx];
+                        int a = argb >>> 24;
+                        r += ((argb >> 16) & 0xFF) * a;
+                        g += ((argb >> 8) & 0xFF) * a;
+                        b += (argb & 0xFF) * a;
+                        alpha += a;
+                    }
+                }
+                int i = (z * width + x) * 3;
+                int count = (sy1 - sy0) * (sx1 - sx0);
+                if (alpha * 2 < 255L * count) {
+                    rgb[i] = Float.NaN;
+                } else {
+                    rgb[i] = (float) r / alpha;
+                    rgb[i + 1] = (float) g / alpha;
+                    rgb[i + 2] = (float) b / alpha;
+                }
+            }
+        });
+        return rgb;
+    }
+
+    private static byte[] quantize(float[] rgb, int width, int height) {
+        byte[] codes = new byte[width * height];
+        IntStream.range(0, height).parallel().forEach(z -> {
+            for (int i = z * width; i < (z + 1) * width; i++) {
+                if (!Float.isNaN(rgb[i * 3])) {
+                    codes[i] = code(nearest(rgb[i * 3], rgb[i * 3 + 1], rgb[i * 3 + 2]));
+                }
+            }
+        });
+        return codes;
+    }
+
+    /**
+     * Quantize with Floyd-Steinberg error diffusion, carrying each stud's error right and down.
+     */
+    private static byte[] ditherQuantize(float[] rgb, int width, int height) {
+        byte[] codes = new byte[width * height];
+        for (int z = 0; z < height; z++) {
+            for (int x = 0; x < width; x++) {
+                int i = z * width + x;
+                if (Float.isNaN(rgb[i * 3])) {
+                    continue;
+                }
+                float r = clamp(rgb[i * 3]), g = clamp(rgb[i * 3 + 1]), b = clamp(rgb[i * 3 + 2]);
+                BrickColor color = nearest(r, g, b);
+                codes[i] = code(color);
+                float er = r - color.getR() * 255, eg = g - color.getG() * 255, eb = b - color.getB() * 255;
+                diffuse(rgb, width, height, x + 1, z, er, eg, eb, 7 / 16f);
+                diffuse(rgb, width, height, x - 1, z + 1, er, eg, eb, 3 / 16f);
+                diffuse(rgb, width, height, x, z + 1, er, eg, eb, 5 / 16f);
+                diffuse(rgb, width, height, x + 1, z + 1, er, eg, eb, 1 / 16f);
+            }
+        }
+        return codes;
+    }
+
+    private static void diffuse(float[] rgb, int width, int height, int x, int z,
+                                float er, float eg, float eb, float weight) {
+        if (x < 0 || x >= width || z >= height) {
+            return;
+        }
+        int i = (z * width + x) * 3;
+        if (!Float.isNaN(rgb[i])) {
+            rgb[i] += er * weight;
+            rgb[i + 1] += eg * weight;
+            rgb[i + 2] += eb * weight;
+        }
+    }
+
+    private static BrickColor nearest(float r, float g, float b) {
+        return BrickColor.nearest(Math.round(r), Math.round(g), Math.round(b));
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static byte code(BrickColor color) {
+        return (byte) (color.ordinal() + 1);
+    }
+}
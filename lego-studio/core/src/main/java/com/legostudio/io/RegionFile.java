@@ -0,0 +1,396 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickStore;
+import com.legostudio.model.BrickType;
+import com.legostudio.model.BrickVisitor;
+import com.legostudio.model.WorldSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.legostudio.io.WorldFile.CHUNK_SHIFT;
+
+/**
+ * Region world format for very large builds: a directory of region files,
+ * each covering {@value #REGION_COLUMNS}x{@value #REGION_COLUMNS} columns of
+ * chunks at any height, named {@code r.<rx>.<rz>.lsr}.
+ *
+ * Region file layout, little-endian:
+ * <pre>
+ *   Header   magic "LSR\x1A", u16 version, u16 flags, i32 rx, i32 rz, i32 chunk count, i32 brick count,
+ *            u8 type count, u8 color count, u16 reserved
+ *   Palette  as in {@link WorldFile}
+ *   Table    per chunk: i32 cx, i32 cy, i32 cz, i32 brick count, i64 offset, i32 compressed length
+ *   Blobs    per chunk: deflated 4-byte {@link WorldFile} records
+ * </pre>
+ * The table is sorted by column, then by height, so one column's chunks are
+ * adjacent. Every chunk is compressed on its own, which lets saving compress
+ * all chunks in parallel and lets {@link RegionStreamer} decode any column
+ * without touching the rest of the file.
+ */
+public final class RegionFile implements AutoCloseable {
+    public static final String EXTENSION = "lsr";
+
+    static final int REGION_SHIFT = 3;
+    static final int REGION_COLUMNS = 1 << REGION_SHIFT;
+
+    private static final int MAGIC = 'L' | 'S' << 8 | 'R' << 16 | 0x1A << 24;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 28;
+    private static final int ENTRY_BYTES = 28;
+    private static final Pattern FILE_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\." + EXTENSION);
+
+    private final FileChannel channel;
+    private final BrickType[] types;
+    private final BrickColor[] colors;
+    private final int[] cx, cy, cz, counts, lengths;
+    private final long[] offsets;
+    private final int[] columnStart; // Table entries of local column c are columnStart[c] up to columnStart[c + 1]
+
+    private RegionFile(FileChannel channel, ByteBuffer in) throws IOException {
+        this.channel = channel;
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a Lego Studio region file");
+        }
+        int version = in.getShort() & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported region file version " + version);
+        }
+        in.getShort(); // Flags
+        in.getInt(); // rx and rz, implied by the file name
+        in.getInt();
+        int chunkCount = in.getInt();
+        in.getInt(); // Brick count
+        int typeCount = in.get() & 0xFF;
+        int colorCount = in.get() & 0xFF;
+        in.getShort();
+        if (chunkCount < 0) {
+            throw new IOException("Corrupt region file header");
+        }
+        types = WorldFile.readTypes(in, typeCount);
+        colors = WorldFile.readColors(in, colorCount);
+
+        cx = new int[chunkCount];
+        cy = new int[chunkCount];
+        cz = new int[chunkCount];
+        counts = new int[chunkCount];
+        offsets = new long[chunkCount];
+        lengths = new int[chunkCount];
+        columnStart = new int[REGION_COLUMNS * REGION_COLUMNS + 1];
+        long size = channel.size();
+        for (int i = 0; i < chunkCount; i++) {
+            cx[i] = in.getInt();
+            cy[i] = in.getInt();
+            cz[i] = in.getInt();
+            counts[i] = in.getInt();
+            offsets[i] = in.getLong();
+            lengths[i] = in.getInt();
+            // Every brick fills at least one cell of its chunk
+            if (counts[i] < 0 || counts[i] > 1 << 3 * CHUNK_SHIFT
+                    || lengths[i] < 0 || offsets[i] < 0 || offsets[i] > size - lengths[i]) {
+                throw new IOException("Corrupt region file table entry " + i);
+            }
+            columnStart[column(cx[i], cz[i]) + 1]++;
+        }
+        for (int c = 0; c < REGION_COLUMNS * REGION_COLUMNS; c++) {
+            columnStart[c + 1] += columnStart[c];
+        }
+    }
+
+    /**
+     * Open a region file and read its table; chunk contents stay on disk until asked for.
+     */
+    static RegionFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(channel, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a Lego Studio region file: " + file.getFileName());
+            }
+            int chunkCount = header.getInt(16);
+            int names = (header.get(24) & 0xFF) + (header.get(25) & 0xFF);
+            ByteBuffer palette = read(channel, HEADER_BYTES,
+                    (int) Math.min(names * 256L, channel.size() - HEADER_BYTES));
+            int paletteBytes = 0;
+            for (int i = 0; i < names; i++) {
+                paletteBytes += 1 + (palette.get(paletteBytes) & 0xFF);
+            }
+            if (chunkCount < 0 || chunkCount > (channel.size() - HEADER_BYTES - paletteBytes) / ENTRY_BYTES) {
+                throw new IOException("Corrupt region file header: " + file.getFileName());
+            }
+            ByteBuffer in = read(channel, 0, HEADER_BYTES + paletteBytes + chunkCount * ENTRY_BYTES);
+            return new RegionFile(channel, in);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (e instanceof BufferUnderflowException || e instanceof IndexOutOfBoundsException) {
+                throw new IOException("Truncated region file " + file.getFileName(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Decode every chunk of the column holding chunk coordinates (cx, cz) into the batch.
+     * Safe to call from several threads at once.
+     */
+    void readColumn(int columnX, int columnZ, BrickBatch bricks) throws IOException {
+        int column = column(columnX, columnZ);
+        for (int i = columnStart[column]; i < columnStart[column + 1]; i++) {
+            ByteBuffer compressed = read(channel, offsets[i], lengths[i]);
+            byte[] data = new byte[counts[i] * Integer.BYTES];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                if (inflater.inflate(data) != data.length) {
+                    throw new IOException("Region chunk holds fewer bricks than its table entry says");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt region chunk", e);
+            } finally {
+                inflater.end();
+            }
+            ByteBuffer records = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            int x0 = cx[i] << CHUNK_SHIFT, y0 = cy[i] << CHUNK_SHIFT, z0 = cz[i] << CHUNK_SHIFT;
+            for (int r = 0; r < counts[i]; r++) {
+                int attributes = records.getShort() & 0xFFFF;
+                int position = records.getShort() & 0xFFFF;
+                WorldFile.addRecord(bricks, attributes << 16 | position, x0, y0, z0, types, colors);
+            }
+        }
+    }
+
+    /**
+     * Number of bricks stored in a column of this region.
+     */
+    int getColumnBrickCount(int columnX, int columnZ) {
+        int column = column(columnX, columnZ), sum = 0;
+        for (int i = columnStart[column]; i < columnStart[column + 1]; i++) {
+            sum += counts[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Visit the chunk coordinates (cx, cz) of every non-empty column.
+     */
+    void forEachColumn(ColumnVisitor visitor) {
+        for (int c = 0; c < REGION_COLUMNS * REGION_COLUMNS; c++) {
+            if (columnStart[c + 1] > columnStart[c]) {
+                int i = columnStart[c];
+                visitor.visit(cx[i], cz[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface ColumnVisitor {
+        void visit(int columnX, int columnZ);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Write every brick of the store as a region world, replacing any region files already in the directory.
+     */
+    public static void save(BrickStore store, Path directory) throws IOException {
+        save(store.size(), store::forEach, directory);
+    }
+
+    /**
+     * Write every brick of a snapshot as a region world. Safe to call from any thread.
+     */
+    public static void save(WorldSnapshot snapshot, Path directory) throws IOException {
+        save(snapshot.getBrickCount(), snapshot::forEachBrick, directory);
+    }
+
+    private static void save(int n, Consumer<BrickVisitor> bricks, Path directory) throws IOException {
+        WorldFile.ChunkRecords grouped = WorldFile.ChunkRecords.group(n, bricks);
+        WorldFile.ChunkIndex index = grouped.index;
+        int chunks = index.size;
+
+        // Order chunks by region, then column, then height
+        Integer[] order = IntStream.range(0, chunks).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.<Integer>comparingInt(c -> index.cx[c] >> REGION_SHIFT)
+                .thenComparingInt(c -> index.cz[c] >> REGION_SHIFT)
+                .thenComparingInt(c -> column(index.cx[c], index.cz[c]))
+                .thenComparingInt(c -> index.cy[c]));
+
+        byte[][] blobs = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> compress(grouped.records, grouped.start[c], grouped.start[c + 1]))
+                .toArray(byte[][]::new);
+
+        // One contiguous run of the sorted order per region
+        int[] runStarts = IntStream.rangeClosed(0, chunks)
+                .filter(i -> i == 0 || i == chunks
+                        || index.cx[order[i]] >> REGION_SHIFT != index.cx[order[i - 1]] >> REGION_SHIFT
+                        || index.cz[order[i]] >> REGION_SHIFT != index.cz[order[i - 1]] >> REGION_SHIFT)
+                .toArray();
+        Files.createDirectories(directory);
+        Set<Path> written = new HashSet<>();
+        try {
+            IntStream.range(0, runStarts.length - 1).parallel().forEach(r -> {
+                int from = runStarts[r], to = runStarts[r + 1];
+                int first = order[from];
+                Path file = file(directory, index.cx[first] >> REGION_SHIFT, index.cz[first] >> REGION_SHIFT);
+                try {
+                    writeRegion(file, Arrays.copyOfRange(order, from, to), grouped, blobs);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                synchronized (written) {
+                    written.add(file.getFileName());
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // Regions that are now empty
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (FILE_NAME.matcher(file.getFileName().toString()).matches() && !written.contains(file.getFileName())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static void writeRegion(Path file, Integer[] chunks, WorldFile.ChunkRecords grouped, byte[][] blobs)
+            throws IOException {
+        WorldFile.ChunkIndex index = grouped.index;
+        ByteBuffer palette = ByteBuffer.allocate(2 * 256 * 256);
+        WorldFile.putPalette(palette);
+        palette.flip();
+
+        int brickCount = 0;
+        for (int c : chunks) {
+            brickCount += grouped.start[c + 1] - grouped.start[c];
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + palette.remaining() + chunks.length * ENTRY_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                .putInt(index.cx[chunks[0]] >> REGION_SHIFT).putInt(index.cz[chunks[0]] >> REGION_SHIFT)
+                .putInt(chunks.length).putInt(brickCount)
+                .put((byte) BrickType.values().length).put((byte) BrickColor.values().length).putShort((short) 0)
+                .put(palette);
+        long offset = header.capacity();
+        for (int c : chunks) {
+            header.putInt(index.cx[c]).putInt(index.cy[c]).putInt(index.cz[c])
+                    .putInt(grouped.start[c + 1] - grouped.start[c])
+                    .putLong(offset).putInt(blobs[c].length);
+            offset += blobs[c].length;
+        }
+        header.flip();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, header);
+            for (int c : chunks) {
+                write(channel, ByteBuffer.wrap(blobs[c]));
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] compress(int[] records, int from, int to) {
+        ByteBuffer raw = ByteBuffer.allocate((to - from) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = from; i < to; i++) {
+            raw.putShort((short) (records[i] >>> 16)).putShort((short) records[i]);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.array());
+            deflater.finish();
+            byte[] out = new byte[raw.capacity() + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * True if the path is a directory holding at least one region file.
+     */
+    public static boolean isRegionWorld(Path path) {
+        if (!Files.isDirectory(path)) {
+            return false;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "r.*." + EXTENSION)) {
+            return files.iterator().hasNext();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Region coordinates (rx, rz) of every region file in the directory.
+     */
+    static int[][] listRegions(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            return StreamSupport.stream(files.spliterator(), false)
+                    .map(file -> FILE_NAME.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(m -> new int[]{Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))})
+                    .toArray(int[][]::new);
+        }
+    }
+
+    static Path file(Path directory, int rx, int rz) {
+        return directory.resolve("r." + rx + "." + rz + "." + EXTENSION);
+    }
+
+    private static int column(int columnX, int columnZ) {
+        return (columnZ & (REGION_COLUMNS - 1)) << REGION_SHIFT | (columnX & (REGION_COLUMNS - 1));
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of region file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
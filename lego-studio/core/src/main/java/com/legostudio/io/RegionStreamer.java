@@ -0,0 +1,245 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BatchResult;
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickWorld;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.legostudio.io.RegionFile.REGION_SHIFT;
+import static com.legostudio.io.WorldFile.CHUNK_SHIFT;
+
+/**
+ * Streams a region world into a {@link BrickWorld} around a moving point of interest.
+ *
+ * Chunks load a whole column (every height) at a time. Opening decodes only
+ * the columns within {@value #EAGER_RADIUS} columns of the point, so the time
+ * to the first frame does not depend on the size of the world. Afterwards
+ * {@link #update} queues the columns within {@value #STREAM_RADIUS} of the
+ * point, nearest first, for decoding on a fork-join pool and hands finished
+ * ones to the world, a bounded number of bricks per call. Region files are
+ * only opened once a column in them is needed.
+ *
+ * Loaded bricks are not journaled. A brick that no longer fits because the
+ * user built in its place before it arrived is dropped and counted in
+ * {@link #getRejectedCount()}.
+ */
+public final class RegionStreamer implements AutoCloseable {
+    public static final int EAGER_RADIUS = 4;
+    public static final int STREAM_RADIUS = 12;
+    private static final int APPLY_BUDGET = 50_000; // Bricks handed to the world per update
+    private static final long CLOSE_TIMEOUT_SECONDS = 10; // Longest close() waits for running loads
+
+    private final BrickWorld world;
+    private final Path directory;
+    private final ForkJoinPool pool;
+    private final Map<Long, Optional<RegionFile>> regions = new ConcurrentHashMap<>();
+    private final Set<Long> requested = new HashSet<>(); // Columns submitted or loaded
+    private final BlockingQueue<BrickBatch> completed = new LinkedBlockingQueue<>();
+    private int pending; // Submitted columns whose bricks have not been handed to the world
+    private int centerX = Integer.MIN_VALUE, centerZ = Integer.MIN_VALUE; // Column the last update was around
+    private int loadedCount;
+    private int rejectedCount;
+
+    private RegionStreamer(BrickWorld world, Path directory) {
+        this.world = world;
+        this.directory = directory;
+        this.pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Start streaming a region world into the world, decoding the columns
+     * around (x, z) before returning. Coordinates are in studs.
+     */
+    public static RegionStreamer open(BrickWorld world, Path directory, float x, float z) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new IOException("Not a region world: " + directory);
+        }
+        RegionStreamer streamer = new RegionStreamer(world, directory);
+        streamer.request(column(x), column(z), EAGER_RADIUS);
+        streamer.awaitIdle();
+        return streamer;
+    }
+
+    /**
+     * Hand decoded columns to the world and queue the columns around (x, z)
+     * that are not loaded yet. Coordinates are in studs. Must be called on the
+     * thread that owns the world.
+     */
+    public void update(float x, float z) {
+        int budget = APPLY_BUDGET;
+        BrickBatch bricks;
+        while (budget > 0 && (bricks = completed.poll()) != null) {
+            apply(bricks);
+            budget -= bricks.size();
+        }
+
+        int cx = column(x), cz = column(z);
+        if (cx != centerX || cz != centerZ) {
+            request(cx, cz, STREAM_RADIUS);
+        }
+    }
+
+    /**
+     * True while columns are being decoded or waiting to be handed to the world.
+     */
+    public boolean isBusy() {
+        return pending > 0;
+    }
+
+    /**
+     * Load every remaining column, e.g. before saving the whole world.
+     * Must be called on the thread that owns the world.
+     */
+    public void loadAll() throws IOException {
+        for (int[] region : RegionFile.listRegions(directory)) {
+            RegionFile file = region(region[0], region[1]);
+            if (file != null) {
+                file.forEachColumn(this::submit);
+            }
+        }
+        awaitIdle();
+    }
+
+    /**
+     * Number of bricks loaded into the world so far.
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * Number of stored bricks dropped because something else was built in their place first.
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Stop decoding, wait for loads already running to finish, and close the
+     * region files. Bricks already loaded stay in the world; decoded columns
+     * not yet handed to it are discarded.
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        // A load still running could otherwise open a region or post a column after the files are closed
+        try {
+            if (!pool.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Region loads still running after " + CLOSE_TIMEOUT_SECONDS + " s; closing anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        completed.clear();
+        for (var file : regions.values()) {
+            try {
+                if (file.isPresent()) {
+                    file.get().close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Submit the columns within radius of (cx, cz), nearest ring first.
+     */
+    private void request(int cx, int cz, int radius) {
+        centerX = cx;
+        centerZ = cz;
+        for (int ring = 0; ring <= radius; ring++) {
+            for (int dz = -ring; dz <= ring; dz++) {
+                int step = Math.abs(dz) == ring ? 1 : 2 * ring;
+                for (int dx = -ring; dx <= ring; dx += step) {
+                    submit(cx + dx, cz + dz);
+                }
+            }
+        }
+    }
+
+    private void submit(int cx, int cz) {
+        if (!requested.add(key(cx, cz))) {
+            return;
+        }
+        pending++;
+        // Every submitted column must post a batch, even on failure, or awaitIdle() never returns
+        pool.execute(() -> {
+            BrickBatch bricks = new BrickBatch(0);
+            try {
+                RegionFile file = region(cx >> REGION_SHIFT, cz >> REGION_SHIFT);
+                if (file != null) {
+                    BrickBatch column = new BrickBatch(file.getColumnBrickCount(cx, cz));
+                    file.readColumn(cx, cz, column);
+                    bricks = column;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not load column " + cx + "," + cz + ": " + e.getMessage());
+            } finally {
+                completed.add(bricks);
+            }
+        });
+    }
+
+    private void awaitIdle() throws IOException {
+        try {
+            while (pending > 0) {
+                apply(completed.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + directory, e);
+        }
+    }
+
+    private void apply(BrickBatch bricks) {
+        pending--;
+        if (bricks.isEmpty()) {
+            return;
+        }
+        BatchResult result = world.loadBricks(bricks);
+        loadedCount += result.getAcceptedCount();
+        rejectedCount += bricks.size() - result.getAcceptedCount();
+    }
+
+    /**
+     * Open a region file on first use; null if the region has no file.
+     */
+    private RegionFile region(int rx, int rz) throws IOException {
+        try {
+            return regions.computeIfAbsent(key(rx, rz), k -> {
+                Path file = RegionFile.file(directory, rx, rz);
+                if (!Files.exists(file)) {
+                    return Optional.empty();
+                }
+                try {
+                    return Optional.of(RegionFile.open(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).orElse(null);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int column(float studs) {
+        return (int) Math.floor(studs) >> CHUNK_SHIFT;
+    }
+
+    private static long key(int a, int b) {
+        return (long) a << 32 | (b & 0xFFFFFFFFL);
+    }
+}
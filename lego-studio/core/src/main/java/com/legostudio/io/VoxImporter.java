@@ -0,0 +1,388 @@
+package com.legostudio.io;
+
+import com.legostudio.brickify.LayerTiler;
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickColor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Imports MagicaVoxel .vox files, turning each voxel into one stud by one brick height.
+ *
+ * The file is decoded as a stream of chunks. Voxels go straight into one
+ * byte array of palette indices per model layer, allocated only for layers
+ * that hold voxels; no per-voxel objects are created. The palette usually
+ * follows the models, so colors are resolved afterwards: each palette entry is
+ * mapped once with {@link BrickColor#nearest}. Each layer is then tiled into
+ * bricks independently on the fork-join pool, with the {@link LayerTiler}
+ * merging same-colored runs.
+ *
+ * Multi-model scenes are placed by the translations of their scene graph;
+ * rotations in the scene graph are ignored. MagicaVoxel's Z axis points up and
+ * becomes the world's Y axis.
+ */
+public final class VoxImporter implements ModelImporter {
+    private static final int PLATES_PER_VOXEL = 3;
+    private static final int[] DEFAULT_PALETTE = defaultPalette();
+    private static final LayerTiler TILER = new LayerTiler(PLATES_PER_VOXEL);
+
+    private static final int VOX = id("VOX ");
+    private static final int SIZE = id("SIZE");
+    private static final int XYZI = id("XYZI");
+    private static final int RGBA = id("RGBA");
+    private static final int TRANSFORM = id("nTRN");
+    private static final int GROUP = id("nGRP");
+    private static final int SHAPE = id("nSHP");
+
+    /**
+     * One model's voxels as palette indices, row-major per layer (index y * sizeX + x).
+     */
+    private static final class Model {
+        final int sizeX, sizeY, sizeZ;
+        final byte[][] layers; // Per Z; null for empty layers
+
+        Model(int sizeX, int sizeY, int sizeZ) {
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.sizeZ = sizeZ;
+            this.layers = new byte[sizeZ][];
+        }
+    }
+
+    /**
+     * A model instance at a position in the scene, minimum corner in voxel coordinates.
+     */
+    private static final class Placement {
+        final Model model;
+        final int x, y, z;
+
+        Placement(Model model, int x, int y, int z) {
+            this.model = model;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    // Scene graph as read from the file
+    private final List<Model> models = new ArrayList<>();
+    private final Map<Integer, int[]> transforms = new HashMap<>(); // Node -> {child, tx, ty, tz}
+    private final Map<Integer, int[]> groups = new HashMap<>();     // Node -> children
+    private final Map<Integer, int[]> shapes = new HashMap<>();     // Node -> model indices
+    private int[] palette = DEFAULT_PALETTE;
+
+    @Override
+    public BrickBatch read(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    public BrickBatch read(InputStream in) throws IOException {
+        models.clear();
+        transforms.clear();
+        groups.clear();
+        shapes.clear();
+        palette = DEFAULT_PALETTE;
+        decode(new LittleEndianReader(in));
+        return convert(place());
+    }
+
+    private void decode(LittleEndianReader in) throws IOException {
+        if (in.readInt() != VOX) {
+            throw new IOException("Not a MagicaVoxel file");
+        }
+        in.readInt(); // Version
+        int[] size = null;
+        while (!in.atEnd()) {
+            int id = in.readInt();
+            long contentBytes = in.readInt() & 0xFFFFFFFFL;
+            in.readInt(); // Children are read as the chunks that follow
+            long end = in.position() + contentBytes;
+
+            if (id == SIZE) {
+                size = new int[] {in.readInt(), in.readInt(), in.readInt()};
+            } else if (id == XYZI) {
+                if (size == null) {
+                    throw new IOException("XYZI chunk without SIZE");
+                }
+                models.add(readVoxels(in, size));
+            } else if (id == RGBA) {
+                palette = new int[256];
+                for (int i = 0; i < 255; i++) {
+                    palette[i + 1] = in.readInt();
+                }
+            } else if (id == TRANSFORM) {
+                int node = in.readInt();
+                readDictionary(in);
+                int child = in.readInt();
+                in.readInt(); // Reserved
+                in.readInt(); // Layer
+                int[] translation = {0, 0, 0};
+                int frames = in.readInt();
+                for (int f = 0; f < frames; f++) {
+                    String t = readDictionary(in).get("_t");
+                    if (f == 0 && t != null) {
+                        String[] parts = t.trim().split("\\s+");
+                        for (int axis = 0; axis < 3 && axis < parts.length; axis++) {
+                            translation[axis] = Integer.parseInt(parts[axis]);
+                        }
+                    }
+                }
+                transforms.put(node, new int[] {child, translation[0], translation[1], translation[2]});
+            } else if (id == GROUP) {
+                int node = in.readInt();
+                readDictionary(in);
+                int[] children = new int[in.readInt()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = in.readInt();
+                }
+                groups.put(node, children);
+            } else if (id == SHAPE) {
+                int node = in.readInt();
+                readDictionary(in);
+                int[] modelIds = new int[in.readInt()];
+                for (int i = 0; i < modelIds.length; i++) {
+                    modelIds[i] = in.readInt();
+                    readDictionary(in);
+                }
+                shapes.put(node, modelIds);
+            }
+            in.skip(end - in.position());
+        }
+    }
+
+    private static Model readVoxels(LittleEndianReader in, int[] size) throws IOException {
+        for (int axis = 0; axis < 3; axis++) {
+            if (size[axis] <= 0 || size[axis] > 256) {
+                throw new IOException("Bad model size " + size[0] + "x" + size[1] + "x" + size[2]);
+            }
+        }
+        Model model = new Model(size[0], size[1], size[2]);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int x = in.readUnsignedByte(), y = in.readUnsignedByte(), z = in.readUnsignedByte();
+            int color = in.readUnsignedByte();
+            if (x >= model.sizeX || y >= model.sizeY || z >= model.sizeZ || color == 0) {
+                continue;
+            }
+            byte[] layer = model.layers[z];
+            if (layer == null) {
+                layer = model.layers[z] = new byte[model.sizeX * model.sizeY];
+            }
+            layer[y * model.sizeX + x] = (byte) color;
+        }
+        return model;
+    }
+
+    private static Map<String, String> readDictionary(LittleEndianReader in) throws IOException {
+        int pairs = in.readInt();
+        Map<String, String> dictionary = new HashMap<>();
+        for (int i = 0; i < pairs; i++) {
+            dictionary.put(in.readString(), in.readString());
+        }
+        return dictionary;
+    }
+
+    /**
+     * Resolve model positions from the scene graph, or place every model at the origin without one.
+     */
+    private List<Placement> place() {
+        List<Placement> placements = new ArrayList<>();
+        if (transforms.containsKey(0)) {
+            place(0, 0, 0, 0, placements, 0);
+        } else {
+            for (Model model : models) {
+                placements.add(new Placement(model, 0, 0, 0));
+            }
+        }
+        return placements;
+    }
+
+    private void place(int node, int tx, int ty, int tz, List<Placement> placements, int depth) {
+        if (depth > 64) {
+            return; // Malformed cyclic graph
+        }
+        int[] transform = transforms.get(node);
+        if (transform != null) {
+            place(transform[0], tx + transform[1], ty + transform[2], tz + transform[3], placements, depth + 1);
+        }
+        for (int child : groups.getOrDefault(node, new int[0])) {
+            place(child, tx, ty, tz, placements, depth + 1);
+        }
+        for (int index : shapes.getOrDefault(node, new int[0])) {
+            if (index >= 0 && index < models.size()) {
+                // Translations locate the model's center
+                Model model = models.get(index);
+                placements.add(new Placement(model, tx - model.sizeX / 2, ty - model.sizeY / 2, tz - model.sizeZ / 2));
+            }
+        }
+    }
+
+    /**
+     * Tile every model layer into bricks in parallel, mapping voxel (x, y, z) to world (x, z, -y).
+     */
+    private BrickBatch convert(List<Placement> placements) {
+        byte[] colorCodes = new byte[256]; // Palette index -> BrickColor ordinal + 1
+        for (int i = 1; i < 256; i++) {
+            int rgba = palette[i];
+            colorCodes[i] = (byte) (BrickColor.nearest(rgba & 0xFF, (rgba >>> 8) & 0xFF, (rgba >>> 16) & 0xFF)
+                    .ordinal() + 1);
+        }
+
+        // Voxel-space scene bounds that become the world's minimum corner
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (Placement placement : placements) {
+            minX = Math.min(minX, placement.x);
+            minZ = Math.min(minZ, placement.z);
+            maxY = Math.max(maxY, placement.y + placement.model.sizeY - 1);
+        }
+
+        BrickBatch bricks = new BrickBatch();
+        for (Placement placement : placements) {
+            Model model = placement.model;
+            int baseX = placement.x - minX;
+            int baseY = (placement.z - minZ) * PLATES_PER_VOXEL;
+            int baseZ = maxY - placement.y;
+            BrickBatch[] layers = new BrickBatch[model.sizeZ];
+            IntStream.range(0, model.sizeZ).parallel().forEach(z -> {
+                byte[] source = model.layers[z];
+                if (source == null) {
+                    return;
+                }
+                byte[] layer = new byte[source.length];
+                for (int i = 0; i < source.length; i++) {
+                    layer[i] = colorCodes[source[i] & 0xFF];
+                }
+                int worldY = baseY + z * PLATES_PER_VOXEL;
+                BrickBatch out = layers[z] = new BrickBatch(source.length / 8 + 16);
+                TILER.tile(layer, model.sizeX, model.sizeY, placement.z + z, (type, color, x, y, rotation) ->
+                        out.add(type, color, baseX + x, worldY, baseZ - (y + type.getActualLength(rotation) - 1),
+                                rotation));
+            });
+            for (BrickBatch layer : layers) {
+                if (layer != null) {
+                    bricks.addAll(layer);
+                }
+            }
+        }
+        return bricks;
+    }
+
+    private static int id(String tag) {
+        byte[] bytes = tag.getBytes(StandardCharsets.US_ASCII);
+        return (bytes[0] & 0xFF) | (bytes[1] & 0xFF) << 8 | (bytes[2] & 0xFF) << 16 | (bytes[3] & 0xFF) << 24;
+    }
+
+    /**
+     * MagicaVoxel's built-in palette (0xAABBGGRR): a 6x6x6 color cube without
+     * black, then ten-step red, green, blue and gray ramps.
+     */
+    private static int[] defaultPalette() {
+        int[] palette = new int[256];
+        int[] cube = {0xFF, 0xCC, 0x99, 0x66, 0x33, 0x00};
+        int[] ramp = {0xEE, 0xDD, 0xBB, 0xAA, 0x88, 0x77, 0x55, 0x44, 0x22, 0x11};
+        int i = 1;
+        for (int r : cube) {
+            for (int g : cube) {
+                for (int b : cube) {
+                    if ((r | g | b) != 0) {
+                        palette[i++] = 0xFF000000 | b << 16 | g << 8 | r;
+                    }
+                }
+            }
+        }
+        for (int shift = 0; shift <= 16; shift += 8) {
+            for (int value : ramp) {
+                palette[i++] = 0xFF000000 | value << shift;
+            }
+        }
+        for (int value : ramp) {
+            palette[i++] = 0xFF000000 | value * 0x010101;
+        }
+        return palette;
+    }
+
+    /**
+     * Buffered little-endian reader that tracks its position, for chunk bookkeeping.
+     */
+    private static final class LittleEndianReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int pos, limit;
+        private long consumed; // Bytes before buffer[0]
+
+        LittleEndianReader(InputStream in) {
+            this.in = in;
+        }
+
+        long position() {
+            return consumed + pos;
+        }
+
+        boolean atEnd() throws IOException {
+            return pos == limit && !fill();
+        }
+
+        int readUnsignedByte() throws IOException {
+            if (pos == limit && !fill()) {
+                throw new EOFException();
+            }
+            return buffer[pos++] & 0xFF;
+        }
+
+        int readInt() throws IOException {
+            if (limit - pos >= 4) {
+                int value = (buffer[pos] & 0xFF) | (buffer[pos + 1] & 0xFF) << 8
+                        | (buffer[pos + 2] & 0xFF) << 16 | (buffer[pos + 3] & 0xFF) << 24;
+                pos += 4;
+                return value;
+            }
+            return readUnsignedByte() | readUnsignedByte() << 8 | readUnsignedByte() << 16 | readUnsignedByte() << 24;
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0 || length > 1 << 20) {
+                throw new IOException("Bad string length " + length);
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) readUnsignedByte();
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void skip(long count) throws IOException {
+            if (count < 0) {
+                throw new IOException("Chunk overran its declared size");
+            }
+            while (count > 0) {
+                if (pos == limit && !fill()) {
+                    throw new EOFException();
+                }
+                int step = (int) Math.min(count, limit - pos);
+                pos += step;
+                count -= step;
+            }
+        }
+
+        private boolean fill() throws IOException {
+            consumed += limit;
+            pos = limit = 0;
+            int read = in.readNBytes(buffer, 0, buffer.length);
+            limit = read;
+            return read > 0;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.legostudio.io;
+
+import com.legostudio.model.BrickBatch;
+import com.legostudio.model.BrickColor;
+import com.legostudio.model.BrickStore;
+import com.legostudio.model.BrickType;
+import com.legostudio.model.BrickVisitor;
+import com.legostudio.model.WorldSnapshot;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The native .lsb world format: a compact binary dump of every brick.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   Header   magic "LSB\x1A", u16 version, u16 flags, i32 brick count, i32 chunk count,
+ *            u8 type count, u8 color count, u16 reserved, i32 reserved
+ *   Palette  the brick type names, then the brick color names, each as u8 length + ASCII
+ *   Chunks   i32 cx, i32 cy, i32 cz, i32 brick count, then 4-byte records:
+ *            u16 type index &lt;&lt; 10 | color index &lt;&lt; 2 | quarter turns
+ *            u16 origin relative to the chunk, x &lt;&lt; 8 | y &lt;&lt; 4 | z
+ * </pre>
+ * Bricks are grouped by the {@value #CHUNK_SIZE}<sup>3</sup> chunk holding
+ * their origin, so coordinates fit in four bits per axis. The palette names
+ * the enum constants, so files survive reordering them.
+ *
+ * Saving encodes the records in visiting order, groups them by chunk with a
+ * counting sort over primitive arrays and writes through one direct buffer;
+ * loading maps the file and decodes records straight into a
+ * {@link BrickBatch}. Neither allocates per brick.
+ */
+public final class WorldFile {
+    public static final String EXTENSION = "lsb";
+
+    private static final int MAGIC = 'L' | 'S' << 8 | 'B' << 16 | 0x1A << 24;
+    private static final int VERSION = 1;
+    static final int CHUNK_SHIFT = 4;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final BrickColor[] COLORS = BrickColor.values();
+
+    private WorldFile() {
+    }
+
+    public static boolean isWorldFile(Path path) {
+        return Importers.extension(path).equals(EXTENSION);
+    }
+
+    /**
+     * Write every brick of the store. The file is written beside the target and
+     * moved over it, so a failed save leaves the old file intact.
+     */
+    public static void save(BrickStore store, Path path) throws IOException {
+        save(store.size(), store::forEach, path);
+    }
+
+    /**
+     * Write every brick of a snapshot. Safe to call from any thread.
+     */
+    public static void save(WorldSnapshot snapshot, Path path) throws IOException {
+        save(snapshot.getBrickCount(), snapshot::forEachBrick, path);
+    }
+
+    private static void save(int n, Consumer<BrickVisitor> bricks, Path path) throws IOException {
+        ChunkRecords grouped = ChunkRecords.group(n, bricks);
+        ChunkIndex index = grouped.index;
+        int chunks = index.size;
+        int[] start = grouped.start;
+        int[] records = grouped.records;
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+                    .putInt(n).putInt(chunks)
+                    .put((byte) TYPES.length).put((byte) COLORS.length).putShort((short) 0).putInt(0);
+            putPalette(buffer);
+
+            for (int c = 0; c < chunks; c++) {
+                if (buffer.remaining() < 16) {
+                    drain(buffer, channel);
+                }
+                buffer.putInt(index.cx[c]).putInt(index.cy[c]).putInt(index.cz[c]).putInt(start[c + 1] - start[c]);
+                for (int i = start[c]; i < start[c + 1]; i++) {
+                    if (buffer.remaining() < 4) {
+                        drain(buffer, channel);
+                    }
+                    buffer.putShort((short) (records[i] >>> 16)).putShort((short) records[i]);
+                }
+            }
+            drain(buffer, channel);
+            channel.force(false);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read every brick of a world file, at its saved position.
+     */
+    public static BrickBatch load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer in = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                return decode(in);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IOException("Truncated world file " + path.getFileName(), e);
+            }
+        }
+    }
+
+    private static BrickBatch decode(ByteBuffer in) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a Lego Studio world file");
+        }
+        int version = in.getShort() & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported world file version " + version);
+        }
+        in.getShort(); // Flags
+        int brickCount = in.getInt();
+        int chunkCount = in.getInt();
+        int typeCount = in.get() & 0xFF;
+        int colorCount = in.get() & 0xFF;
+        in.getShort();
+        in.getInt();
+        if (brickCount < 0 || chunkCount < 0) {
+            throw new IOException("Corrupt world file header");
+        }
+
+        BrickType[] types = readTypes(in, typeCount);
+        BrickColor[] colors = readColors(in, colorCount);
+
+        BrickBatch bricks = new BrickBatch(brickCount);
+        for (int c = 0; c < chunkCount; c++) {
+            int x0 = in.getInt() << CHUNK_SHIFT, y0 = in.getInt() << CHUNK_SHIFT, z0 = in.getInt() << CHUNK_SHIFT;
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                int attributes = in.getShort() & 0xFFFF;
+                int position = in.getShort() & 0xFFFF;
+                addRecord(bricks, attributes << 16 | position, x0, y0, z0, types, colors);
+            }
+        }
+        if (bricks.size() != brickCount) {
+            throw new IOException("World file holds " + bricks.size() + " bricks, header says " + brickCount);
+        }
+        return bricks;
+    }
+
+    /**
+     * Pack a brick into a 4-byte record: attributes in the high half, the origin within its chunk in the low half.
+     */
+    static int encodeRecord(BrickType type, BrickColor color, int x, int y, int z, int rotation) {
+        return (type.ordinal() << 10 | color.ordinal() << 2 | rotation / 90) << 16
+                | (x & CHUNK_MASK) << 8 | (y & CHUNK_MASK) << 4 | (z & CHUNK_MASK);
+    }
+
+    /**
+     * Unpack a record of the chunk whose lowest cell is (x0, y0, z0), resolving indexes through the file's palette.
+     */
+    static void addRecord(BrickBatch bricks, int record, int x0, int y0, int z0,
+                          BrickType[] types, BrickColor[] colors) throws IOException {
+        int type = record >>> 26, color = (record >>> 18) & 0xFF;
+        if (type >= types.length || color >= colors.length) {
+            throw new IOException("Brick record refers to a missing palette entry");
+        }
+        bricks.add(types[type], colors[color], x0 + (record >>> 8 & CHUNK_MASK),
+                y0 + (record >>> 4 & CHUNK_MASK), z0 + (record & CHUNK_MASK), (record >>> 16 & 3) * 90);
+    }
+
+    /**
+     * Write the brick type names, then the brick color names.
+     */
+    static void putPalette(ByteBuffer buffer) {
+        for (BrickType type : TYPES) {
+            putName(buffer, type.name());
+        }
+        for (BrickColor color : COLORS) {
+            putName(buffer, color.name());
+        }
+    }
+
+    static BrickType[] readTypes(ByteBuffer in, int count) throws IOException {
+        BrickType[] types = new BrickType[count];
+        for (int i = 0; i < count; i++) {
+            types[i] = lookup(BrickType.class, getName(in));
+        }
+        return types;
+    }
+
+    static BrickColor[] readColors(ByteBuffer in, int count) throws IOException {
+        BrickColor[] colors = new BrickColor[count];
+        for (int i = 0; i < count; i++) {
+            colors[i] = lookup(BrickColor.class, getName(in));
+        }
+        return colors;
+    }
+
+    private static <E extends Enum<E>> E lookup(Class<E> type, String name) throws IOException {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown " + type.getSimpleName() + " " + name + " in world file");
+        }
+    }
+
+    private static void putName(ByteBuffer buffer, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        buffer.put((byte) bytes.length).put(bytes);
+    }
+
+    private static String getName(ByteBuffer in) {
+        byte[] bytes = new byte[in.get() & 0xFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Encoded records grouped by chunk: chunk c holds records[start[c]] up to records[start[c + 1]].
+     */
+    static final class ChunkRecords {
+        final ChunkIndex index;
+        final int[] start;
+        final int[] records;
+
+        private ChunkRecords(ChunkIndex index, int[] start, int[] records) {
+            this.index = index;
+            this.start = start;
+            this.records = records;
+        }
+
+        /**
+         * Counting sort of the encoded records by chunk, reading the bricks in visiting order.
+         */
+        static ChunkRecords group(int n, Consumer<BrickVisitor> bricks) {
+            ChunkIndex index = new ChunkIndex();
+            int[] chunkOf = new int[n];
+            int[] encoded = new int[n];
+            int[] count = {0};
+            bricks.accept((id, type, color, x, y, z, rotation) -> {
+                int i = count[0]++;
+                chunkOf[i] = index.bucket(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT, z >> CHUNK_SHIFT);
+                encoded[i] = encodeRecord(type, color, x, y, z, rotation);
+            });
+            int chunks = index.size;
+            int[] start = new int[chunks + 1];
+            for (int chunk : chunkOf) {
+                start[chunk + 1]++;
+            }
+            for (int c = 0; c < chunks; c++) {
+                start[c + 1] += start[c];
+            }
+            int[] records = new int[n];
+            int[] next = Arrays.copyOf(start, chunks);
+            for (int i = 0; i < n; i++) {
+                records[next[chunkOf[i]]++] = encoded[i];
+            }
+            return new ChunkRecords(index, start, records);
+        }
+    }
+
+    /**
+     * Open-addressing map from chunk coordinates to dense bucket numbers, in order of first use.
+     */
+    static final class ChunkIndex {
+        int[] cx = new int[64], cy = new int[64], cz = new int[64];
+        int size;
+        private long[] keys = new long[128];
+        private int[] buckets = new int[128];
+
+        int bucket(int x, int y, int z) {
+            long key = ((long) x & 0x1FFFFF) << 42 | ((long) y & 0x1FFFFF) << 21 | ((long) z & 0x1FFFFF);
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            for (; buckets[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return buckets[i] - 1;
+                }
+            }
+            if (size == cx.length) {
+                cx = Arrays.copyOf(cx, size * 2);
+                cy = Arrays.copyOf(cy, size * 2);
+                cz = Arrays.copyOf(cz, size * 2);
+            }
+            cx[size] = x;
+            cy[size] = y;
+            cz[size] = z;
+            keys[i] = key;
+            buckets[i] = ++size; // Stored plus one so zero marks an empty slot
+            if (size * 2 > keys.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        private static int hash(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldBuckets = buckets;
+            keys = new long[oldKeys.length * 2];
+            buckets = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldBuckets[j] != 0) {
+                    long key = oldKeys[j];
+                    int i = hash(key) & mask;
+                    while (buckets[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = key;
+                    buckets[i] = oldBuckets[j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of a bulk {@link BrickWorld#addBricks} or {@link BrickWorld#removeBricks} call.
+ * Reports, per input index, the resulting brick ID or why the brick was rejected.
+ */
+public final class BatchResult {
+    public enum Rejection {
+        /** Placed below the baseplate or outside a bounded world. */
+        OUT_OF_BOUNDS,
+        /** Overlaps a brick already in the world. */
+        COLLIDES_WITH_WORLD,
+        /** Overlaps an accepted brick that comes earlier in the same batch. */
+        COLLIDES_WITH_BATCH,
+        /** No brick with the given ID exists (or it was listed twice). */
+        NOT_FOUND
+    }
+
+    private final int[] ids;
+    private final Rejection[] rejections;
+    private final int rejectedCount;
+    private final boolean committed;
+
+    BatchResult(int[] ids, Rejection[] rejections, boolean committed) {
+        this.ids = ids;
+        this.rejections = rejections;
+        this.committed = committed;
+        int count = 0;
+        for (Rejection rejection : rejections) {
+            if (rejection != null) {
+                count++;
+            }
+        }
+        this.rejectedCount = count;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * True if the accepted bricks were applied to the world.
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public int getAcceptedCount() {
+        return committed ? ids.length - rejectedCount : 0;
+    }
+
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * ID of the brick for the given input index, or {@link BrickStore#NO_BRICK} if it was rejected
+     * or the batch was not committed. For removals this is the ID that was removed.
+     */
+    public int getId(int index) {
+        return committed && rejections[index] == null ? ids[index] : BrickStore.NO_BRICK;
+    }
+
+    /**
+     * Why the brick at the given input index was rejected, or null if it was accepted.
+     */
+    public Rejection getRejection(int index) {
+        return rejections[index];
+    }
+
+    /**
+     * Input indices of all rejected bricks, in ascending order.
+     */
+    public int[] getRejectedIndices() {
+        int[] indices = new int[rejectedCount];
+        int n = 0;
+        for (int i = 0; i < rejections.length && n < rejectedCount; i++) {
+            if (rejections[i] != null) {
+                indices[n++] = i;
+            }
+        }
+        return indices;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchResult[%d accepted, %d rejected%s]",
+                getAcceptedCount(), rejectedCount, committed ? "" : ", not committed")
+                + (rejectedCount > 0 && rejectedCount <= 8
+                ? " " + Arrays.toString(getRejectedIndices()) : "");
+    }
+}
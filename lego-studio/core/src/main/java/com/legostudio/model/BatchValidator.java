@@ -0,0 +1,258 @@
+package com.legostudio.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static com.legostudio.model.Chunk.MASK;
+import static com.legostudio.model.Chunk.SHIFT;
+
+/**
+ * Validates a batch of candidate bricks against a world and against each other.
+ *
+ * Candidates are grouped by the chunk holding their origin. Candidates whose
+ * footprint stays inside that chunk can only conflict with each other, so each
+ * group is checked independently on the fork-join pool using a private
+ * occupancy mask. Candidates that straddle a chunk boundary are few and are
+ * checked afterwards in input order against all groups they touch.
+ *
+ * The outcome is the same as checking every candidate in input order: when two
+ * overlap, the earlier one is kept. A straddling candidate that overlaps only
+ * later interior candidates takes its cells, and the groups it displaced are
+ * re-checked from its position on.
+ */
+final class BatchValidator {
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private static final class Group {
+        final int cx, cy, cz;
+        final long[] bits = new long[Chunk.MASK_WORDS]; // Cells claimed by accepted candidates
+        int[] members = new int[8]; // Interior candidates, in input order
+        int size;
+        int[] straddlers = new int[0]; // Accepted straddling candidates with cells here
+        int straddlerCount;
+        boolean displaced; // Scratch: a straddler took cells of later members
+
+        Group(int cx, int cy, int cz) {
+            this.cx = cx;
+            this.cy = cy;
+            this.cz = cz;
+        }
+
+        void add(int index) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size++] = index;
+        }
+
+        void addStraddler(int index) {
+            if (straddlerCount == straddlers.length) {
+                straddlers = Arrays.copyOf(straddlers, Math.max(4, straddlerCount * 2));
+            }
+            straddlers[straddlerCount++] = index;
+        }
+    }
+
+    private BatchValidator() {
+    }
+
+    /**
+     * @return One entry per candidate: null if it can be placed, otherwise the reason it cannot
+     */
+    static BatchResult.Rejection[] validate(BrickWorld world, BrickBatch batch) {
+        int n = batch.size();
+        BatchResult.Rejection[] rejections = new BatchResult.Rejection[n];
+        ChunkMap<Group> groupMap = new ChunkMap<>();
+        List<Group> groups = new ArrayList<>();
+        int[] border = new int[16];
+        int borderCount = 0;
+
+        for (int i = 0; i < n; i++) {
+            BrickType type = batch.getType(i);
+            int x = batch.getX(i), y = batch.getY(i), z = batch.getZ(i), rotation = batch.getRotation(i);
+            if (!world.isInBounds(type, x, y, z, rotation)) {
+                rejections[i] = BatchResult.Rejection.OUT_OF_BOUNDS;
+                continue;
+            }
+            int x1 = x + type.getActualWidth(rotation) - 1;
+            int y1 = y + type.getHeight() - 1;
+            int z1 = z + type.getActualLength(rotation) - 1;
+            if ((x >> SHIFT) == (x1 >> SHIFT) && (y >> SHIFT) == (y1 >> SHIFT) && (z >> SHIFT) == (z1 >> SHIFT)) {
+                Group group = groupMap.get(x >> SHIFT, y >> SHIFT, z >> SHIFT);
+                if (group == null) {
+                    group = groupMap.getOrCreate(x >> SHIFT, y >> SHIFT, z >> SHIFT, Group::new);
+                    groups.add(group);
+                }
+                group.add(i);
+            } else {
+                if (borderCount == border.length) {
+                    border = Arrays.copyOf(border, borderCount * 2);
+                }
+                border[borderCount++] = i;
+            }
+        }
+
+        // Interior candidates: groups are independent, check them in parallel
+        IntStream range = IntStream.range(0, groups.size());
+        if (n >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(g -> validateGroup(world, batch, groups.get(g), rejections));
+
+        // Boundary-straddling candidates: check in input order against every group they touch
+        List<Group> touched = new ArrayList<>();
+        for (int b = 0; b < borderCount; b++) {
+            int i = border[b];
+            if (!fitsWorld(world, batch, i)) {
+                rejections[i] = BatchResult.Rejection.COLLIDES_WITH_WORLD;
+                continue;
+            }
+            touched.clear();
+            forEachGroup(groupMap, batch, i, true, touched::add);
+            if (isBlocked(batch, touched, i, rejections)) {
+                rejections[i] = BatchResult.Rejection.COLLIDES_WITH_BATCH;
+                continue;
+            }
+            for (Group group : touched) {
+                cells(group, batch, i, true);
+                group.addStraddler(i);
+                if (group.displaced) {
+                    group.displaced = false;
+                    revalidateGroup(batch, group, i, rejections);
+                }
+            }
+        }
+        return rejections;
+    }
+
+    private static void validateGroup(BrickWorld world, BrickBatch batch, Group group,
+                                      BatchResult.Rejection[] rejections) {
+        for (int m = 0; m < group.size; m++) {
+            int i = group.members[m];
+            if (!fitsWorld(world, batch, i)) {
+                rejections[i] = BatchResult.Rejection.COLLIDES_WITH_WORLD;
+            } else if (!cells(group, batch, i, false)) {
+                rejections[i] = BatchResult.Rejection.COLLIDES_WITH_BATCH;
+            } else {
+                cells(group, batch, i, true);
+            }
+        }
+    }
+
+    /**
+     * True if an earlier accepted candidate overlaps straddler i. Groups where it
+     * overlaps only later members are flagged as displaced.
+     */
+    private static boolean isBlocked(BrickBatch batch, List<Group> touched, int i,
+                                     BatchResult.Rejection[] rejections) {
+        for (Group group : touched) {
+            group.displaced = false;
+        }
+        for (Group group : touched) {
+            if (cells(group, batch, i, false)) {
+                continue;
+            }
+            for (int s = 0; s < group.straddlerCount; s++) {
+                if (overlaps(batch, group.straddlers[s], i)) {
+                    return true; // Straddlers are accepted in input order, so this one came first
+                }
+            }
+            for (int m = 0; m < group.size && group.members[m] < i; m++) {
+                if (rejections[group.members[m]] == null && overlaps(batch, group.members[m], i)) {
+                    return true;
+                }
+            }
+            group.displaced = true;
+        }
+        return false;
+    }
+
+    /**
+     * Re-check the members after straddler i, which has just taken cells from some of them.
+     * Everything up to i is settled: earlier members and every accepted straddler keep their cells.
+     */
+    private static void revalidateGroup(BrickBatch batch, Group group, int i, BatchResult.Rejection[] rejections) {
+        Arrays.fill(group.bits, 0);
+        int m = 0;
+        for (; m < group.size && group.members[m] < i; m++) {
+            if (rejections[group.members[m]] == null) {
+                cells(group, batch, group.members[m], true);
+            }
+        }
+        for (int s = 0; s < group.straddlerCount; s++) {
+            cells(group, batch, group.straddlers[s], true);
+        }
+        for (; m < group.size; m++) {
+            int member = group.members[m];
+            if (rejections[member] == BatchResult.Rejection.COLLIDES_WITH_WORLD) {
+                continue;
+            }
+            if (cells(group, batch, member, false)) {
+                cells(group, batch, member, true);
+                rejections[member] = null;
+            } else {
+                rejections[member] = BatchResult.Rejection.COLLIDES_WITH_BATCH;
+            }
+        }
+    }
+
+    private static boolean fitsWorld(BrickWorld world, BrickBatch batch, int i) {
+        BrickType type = batch.getType(i);
+        int rotation = batch.getRotation(i);
+        return world.isRegionFree(batch.getX(i), batch.getY(i), batch.getZ(i),
+                type.getActualWidth(rotation), type.getHeight(), type.getActualLength(rotation), true);
+    }
+
+    /**
+     * Pass every group a candidate's footprint touches to the consumer, creating missing ones if asked.
+     */
+    private static void forEachGroup(ChunkMap<Group> groupMap, BrickBatch batch, int i, boolean create,
+                                     Consumer<Group> consumer) {
+        BrickType type = batch.getType(i);
+        int rotation = batch.getRotation(i);
+        int x = batch.getX(i), y = batch.getY(i), z = batch.getZ(i);
+        int x1 = x + type.getActualWidth(rotation), y1 = y + type.getHeight(), z1 = z + type.getActualLength(rotation);
+        for (int cy = y >> SHIFT; cy <= (y1 - 1) >> SHIFT; cy++) {
+            for (int cz = z >> SHIFT; cz <= (z1 - 1) >> SHIFT; cz++) {
+                for (int cx = x >> SHIFT; cx <= (x1 - 1) >> SHIFT; cx++) {
+                    Group group = create ? groupMap.getOrCreate(cx, cy, cz, Group::new) : groupMap.get(cx, cy, cz);
+                    if (group != null) {
+                        consumer.accept(group);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test (mark == false) or mark (mark == true) the part of a candidate's cells inside the group's chunk.
+     */
+    private static boolean cells(Group group, BrickBatch batch, int i, boolean mark) {
+        BrickType type = batch.getType(i);
+        int rotation = batch.getRotation(i);
+        int x = batch.getX(i) - (group.cx << SHIFT);
+        int y = batch.getY(i) - (group.cy << SHIFT);
+        int z = batch.getZ(i) - (group.cz << SHIFT);
+        int x0 = Math.max(x, 0), x1 = Math.min(x + type.getActualWidth(rotation), MASK + 1);
+        int y0 = Math.max(y, 0), y1 = Math.min(y + type.getHeight(), MASK + 1);
+        int z0 = Math.max(z, 0), z1 = Math.min(z + type.getActualLength(rotation), MASK + 1);
+        if (mark) {
+            Chunk.setBits(group.bits, x0, y0, z0, x1, y1, z1, true);
+            return true;
+        }
+        return Chunk.isFree(group.bits, x0, y0, z0, x1, y1, z1);
+    }
+
+    private static boolean overlaps(BrickBatch batch, int a, int b) {
+        BrickType ta = batch.getType(a), tb = batch.getType(b);
+        int ra = batch.getRotation(a), rb = batch.getRotation(b);
+        int ax = batch.getX(a), ay = batch.getY(a), az = batch.getZ(a);
+        int bx = batch.getX(b), by = batch.getY(b), bz = batch.getZ(b);
+        return ax < bx + tb.getActualWidth(rb) && bx < ax + ta.getActualWidth(ra)
+                && ay < by + tb.getHeight() && by < ay + ta.getHeight()
+                && az < bz + tb.getActualLength(rb) && bz < az + ta.getActualLength(ra);
+    }
+}
@@ -5,6 +5,9 @@ import org.joml.Vector3i;
 /**
  * Represents a single Lego brick placed in the world.
  * Position is in grid coordinates (studs for X/Z, plates for Y).
+ *
+ * BrickWorld keeps its bricks in a primitive {@link BrickStore}; the Brick
+ * instances it hands out are detached views of a stored brick.
  */
 public final class Brick {
     private final BrickType type;
@@ -40,11 +43,11 @@ public final class Brick {
      * Get actual dimensions considering rotation.
      */
     public int getActualWidth() {
-        return (rotation == 90 || rotation == 270) ? type.getLength() : type.getWidth();
+        return type.getActualWidth(rotation);
     }
 
     public int getActualLength() {
-        return (rotation == 90 || rotation == 270) ? type.getWidth() : type.getLength();
+        return type.getActualLength(rotation);
     }
 
     /**
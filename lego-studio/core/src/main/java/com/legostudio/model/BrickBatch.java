@@ -0,0 +1,147 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of brick records in primitive arrays.
+ *
+ * Used both to describe bricks to insert in bulk and to report the bricks
+ * touched by a change. Records carry the brick's ID when it has one, or
+ * {@link BrickStore#NO_BRICK} for bricks that are not stored in a world.
+ */
+public final class BrickBatch {
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final BrickColor[] COLORS = BrickColor.values();
+
+    private int[] ids;
+    private byte[] types;
+    private byte[] colors;
+    private byte[] rotations; // Quarter turns
+    private int[] xs, ys, zs;
+    private int size;
+
+    public BrickBatch() {
+        this(16);
+    }
+
+    public BrickBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ids = new int[capacity];
+        types = new byte[capacity];
+        colors = new byte[capacity];
+        rotations = new byte[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        zs = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getId(int index) { return ids[index]; }
+    public BrickType getType(int index) { return TYPES[types[index]]; }
+    public BrickColor getColor(int index) { return COLORS[colors[index]]; }
+    public int getX(int index) { return xs[index]; }
+    public int getY(int index) { return ys[index]; }
+    public int getZ(int index) { return zs[index]; }
+    public int getRotation(int index) { return rotations[index] * 90; }
+
+    /**
+     * Append a brick that is not stored in a world.
+     */
+    public void add(BrickType type, BrickColor color, int x, int y, int z, int rotation) {
+        add(BrickStore.NO_BRICK, type, color, x, y, z, rotation);
+    }
+
+    public void add(Brick brick) {
+        var pos = brick.getPosition();
+        add(brick.getType(), brick.getColor(), pos.x, pos.y, pos.z, brick.getRotation());
+    }
+
+    public void add(int id, BrickType type, BrickColor color, int x, int y, int z, int rotation) {
+        if (size == ids.length) {
+            grow(size * 2);
+        }
+        ids[size] = id;
+        types[size] = (byte) type.ordinal();
+        colors[size] = (byte) color.ordinal();
+        rotations[size] = (byte) (Math.floorMod(rotation, 360) / 90);
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        size++;
+    }
+
+    /**
+     * Append all records of another batch.
+     */
+    public void addAll(BrickBatch other) {
+        if (size + other.size > ids.length) {
+            grow(Math.max(size + other.size, ids.length * 2));
+        }
+        System.arraycopy(other.ids, 0, ids, size, other.size);
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.colors, 0, colors, size, other.size);
+        System.arraycopy(other.rotations, 0, rotations, size, other.size);
+        System.arraycopy(other.xs, 0, xs, size, other.size);
+        System.arraycopy(other.ys, 0, ys, size, other.size);
+        System.arraycopy(other.zs, 0, zs, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Remove the record at index by moving the last record into its place.
+     */
+    void swapRemove(int index) {
+        int last = --size;
+        ids[index] = ids[last];
+        types[index] = types[last];
+        colors[index] = colors[last];
+        rotations[index] = rotations[last];
+        xs[index] = xs[last];
+        ys[index] = ys[last];
+        zs[index] = zs[last];
+    }
+
+    /**
+     * Shift every record by the given offset.
+     */
+    public void translate(int dx, int dy, int dz) {
+        for (int i = 0; i < size; i++) {
+            xs[i] += dx;
+            ys[i] += dy;
+            zs[i] += dz;
+        }
+    }
+
+    public Brick toBrick(int index) {
+        Brick brick = new Brick(getType(index), getColor(index), xs[index], ys[index], zs[index]);
+        brick.setRotation(getRotation(index));
+        return brick;
+    }
+
+    public void forEach(BrickVisitor visitor) {
+        for (int i = 0; i < size; i++) {
+            visitor.visit(ids[i], TYPES[types[i]], COLORS[colors[i]], xs[i], ys[i], zs[i], rotations[i] * 90);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        types = Arrays.copyOf(types, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        rotations = Arrays.copyOf(rotations, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+    }
+}
@@ -20,6 +20,8 @@ public enum BrickColor {
     AZURE(0.3f, 0.7f, 0.9f),
     DARK_BLUE(0.0f, 0.15f, 0.4f);
 
+    private static final BrickColor[] VALUES = values();
+
     private final float r, g, b;
 
     BrickColor(float r, float g, float b) {
@@ -35,4 +37,24 @@ public enum BrickColor {
     public float[] toArray() {
         return new float[] { r, g, b };
     }
+
+    /**
+     * Find the color closest to an 8-bit sRGB color, using the weighted
+     * "redmean" distance, which tracks perceived difference better than plain RGB.
+     */
+    public static BrickColor nearest(int red, int green, int blue) {
+        BrickColor best = null;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        for (BrickColor color : VALUES) {
+            float cr = color.r * 255, cg = color.g * 255, cb = color.b * 255;
+            float mean = (red + cr) / 2;
+            float dr = red - cr, dg = green - cg, db = blue - cb;
+            float distance = (2 + mean / 256) * dr * dr + 4 * dg * dg + (2 + (255 - mean) / 256) * db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = color;
+            }
+        }
+        return best;
+    }
 }
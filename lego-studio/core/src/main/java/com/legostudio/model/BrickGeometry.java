@@ -0,0 +1,139 @@
+package com.legostudio.model;
+
+import static com.legostudio.model.BrickType.PLATE_HEIGHT;
+import static com.legostudio.model.BrickType.STUD_HEIGHT;
+import static com.legostudio.model.BrickType.STUD_RADIUS;
+
+/**
+ * Triangle geometry of bricks: a box for the body and a capped cylinder for
+ * each stud, in world units (one unit per stud, {@link BrickType#PLATE_HEIGHT}
+ * per plate).
+ *
+ * Shared by the renderer's per-type meshes and the geometry exporter.
+ * Triangles wind counter-clockwise seen from outside. Vertex normals are
+ * indexes into the fixed {@link #NORMALS} table, so writers can refer to a
+ * normal instead of repeating it.
+ */
+public final class BrickGeometry {
+    public static final int CYLINDER_SEGMENTS = 12;
+
+    // Box faces, each doubling as the index of its normal
+    public static final int RIGHT = 0, LEFT = 1, TOP = 2, BOTTOM = 3, FRONT = 4, BACK = 5;
+    public static final int ALL_FACES = 0x3F;
+
+    /** Vertices and triangles of one stud. */
+    public static final int STUD_VERTICES = 1 + 3 * (CYLINDER_SEGMENTS + 1);
+    public static final int STUD_TRIANGLES = 3 * CYLINDER_SEGMENTS;
+
+    /** Unit normals: the six box faces, then the stud sides around the circle. */
+    public static final float[][] NORMALS = new float[6 + CYLINDER_SEGMENTS][];
+
+    static {
+        NORMALS[RIGHT] = new float[] {1, 0, 0};
+        NORMALS[LEFT] = new float[] {-1, 0, 0};
+        NORMALS[TOP] = new float[] {0, 1, 0};
+        NORMALS[BOTTOM] = new float[] {0, -1, 0};
+        NORMALS[FRONT] = new float[] {0, 0, 1};
+        NORMALS[BACK] = new float[] {0, 0, -1};
+        for (int i = 0; i < CYLINDER_SEGMENTS; i++) {
+            double angle = 2 * Math.PI * i / CYLINDER_SEGMENTS;
+            NORMALS[6 + i] = new float[] {(float) Math.cos(angle), 0, (float) Math.sin(angle)};
+        }
+    }
+
+    /**
+     * Receives generated geometry.
+     */
+    public interface MeshBuilder {
+        /**
+         * Add a vertex and return its index.
+         *
+         * @param normal Index into {@link #NORMALS}
+         */
+        int vertex(float x, float y, float z, int normal);
+
+        void triangle(int a, int b, int c);
+    }
+
+    private BrickGeometry() {
+    }
+
+    /**
+     * Generate an unrotated brick with its minimum corner at the origin.
+     */
+    public static void brick(MeshBuilder out, int width, int length, int height) {
+        float top = height * PLATE_HEIGHT;
+        box(out, 0, 0, 0, width, top, length, ALL_FACES);
+        for (int sx = 0; sx < width; sx++) {
+            for (int sz = 0; sz < length; sz++) {
+                stud(out, sx + 0.5f, top, sz + 0.5f);
+            }
+        }
+    }
+
+    /**
+     * Generate the faces of an axis-aligned box selected by the bit mask (1 << face).
+     */
+    public static void box(MeshBuilder out, float x0, float y0, float z0, float x1, float y1, float z1, int faces) {
+        if ((faces & 1 << FRONT) != 0) {
+            quad(out, FRONT, x0, y0, z1, x1, y0, z1, x1, y1, z1, x0, y1, z1);
+        }
+        if ((faces & 1 << BACK) != 0) {
+            quad(out, BACK, x1, y0, z0, x0, y0, z0, x0, y1, z0, x1, y1, z0);
+        }
+        if ((faces & 1 << RIGHT) != 0) {
+            quad(out, RIGHT, x1, y0, z1, x1, y0, z0, x1, y1, z0, x1, y1, z1);
+        }
+        if ((faces & 1 << LEFT) != 0) {
+            quad(out, LEFT, x0, y0, z0, x0, y0, z1, x0, y1, z1, x0, y1, z0);
+        }
+        if ((faces & 1 << TOP) != 0) {
+            quad(out, TOP, x0, y1, z1, x1, y1, z1, x1, y1, z0, x0, y1, z0);
+        }
+        if ((faces & 1 << BOTTOM) != 0) {
+            quad(out, BOTTOM, x0, y0, z0, x1, y0, z0, x1, y0, z1, x0, y0, z1);
+        }
+    }
+
+    /**
+     * Generate a stud standing on baseY, centered on (cx, cz).
+     */
+    public static void stud(MeshBuilder out, float cx, float baseY, float cz) {
+        float topY = baseY + STUD_HEIGHT;
+        int center = out.vertex(cx, topY, cz, TOP);
+        int first = -1;
+        for (int i = 0; i <= CYLINDER_SEGMENTS; i++) {
+            int normal = 6 + i % CYLINDER_SEGMENTS;
+            float x = cx + STUD_RADIUS * NORMALS[normal][0];
+            float z = cz + STUD_RADIUS * NORMALS[normal][2];
+            int cap = out.vertex(x, topY, z, TOP);
+            out.vertex(x, topY, z, normal);
+            out.vertex(x, baseY, z, normal);
+            if (first < 0) {
+                first = cap;
+            }
+        }
+
+        // Top cap, then the side as two triangles per segment
+        for (int i = 0; i < CYLINDER_SEGMENTS; i++) {
+            int curr = first + i * 3;
+            int next = curr + 3;
+            out.triangle(center, next, curr);
+            out.triangle(curr + 1, next + 1, next + 2);
+            out.triangle(curr + 1, next + 2, curr + 2);
+        }
+    }
+
+    private static void quad(MeshBuilder out, int normal,
+                             float x1, float y1, float z1,
+                             float x2, float y2, float z2,
+                             float x3, float y3, float z3,
+                             float x4, float y4, float z4) {
+        int a = out.vertex(x1, y1, z1, normal);
+        int b = out.vertex(x2, y2, z2, normal);
+        int c = out.vertex(x3, y3, z3, normal);
+        int d = out.vertex(x4, y4, z4, normal);
+        out.triangle(a, b, c);
+        out.triangle(a, c, d);
+    }
+}
@@ -0,0 +1,165 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage for placed bricks.
+ *
+ * Brick attributes live in parallel primitive arrays packed densely by slot,
+ * so iteration is a linear walk with no per-brick objects. Each brick also
+ * gets a stable integer ID that survives other removals; IDs are recycled
+ * through a free-list and removal is an O(1) swap with the last slot.
+ */
+public final class BrickStore {
+    public static final int NO_BRICK = -1;
+
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final BrickColor[] COLORS = BrickColor.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Per-slot attributes, valid for slots [0, size)
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private byte[] colors = new byte[INITIAL_CAPACITY];
+    private byte[] rotations = new byte[INITIAL_CAPACITY]; // Quarter turns
+    private int[] xs = new int[INITIAL_CAPACITY];
+    private int[] ys = new int[INITIAL_CAPACITY];
+    private int[] zs = new int[INITIAL_CAPACITY];
+    private int[] slotIds = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // ID -> slot mapping; NO_BRICK for free IDs
+    private int[] idSlots = new int[INITIAL_CAPACITY];
+    private int idLimit; // IDs in [0, idLimit) have been handed out at least once
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeCount;
+
+    BrickStore() {
+    }
+
+    /**
+     * Number of stored bricks.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Upper bound (exclusive) of IDs handed out so far; useful for sizing per-ID side tables.
+     */
+    public int getIdLimit() {
+        return idLimit;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < idLimit && idSlots[id] != NO_BRICK;
+    }
+
+    /**
+     * Get the ID stored in the given dense slot, for slot-order iteration.
+     */
+    public int getIdAt(int slot) {
+        return slotIds[slot];
+    }
+
+    public BrickType getType(int id) { return TYPES[types[idSlots[id]]]; }
+    public BrickColor getColor(int id) { return COLORS[colors[idSlots[id]]]; }
+    public int getX(int id) { return xs[idSlots[id]]; }
+    public int getY(int id) { return ys[idSlots[id]]; }
+    public int getZ(int id) { return zs[idSlots[id]]; }
+    public int getRotation(int id) { return rotations[idSlots[id]] * 90; }
+
+    public int getActualWidth(int id) {
+        return getType(id).getActualWidth(getRotation(id));
+    }
+
+    public int getActualLength(int id) {
+        return getType(id).getActualLength(getRotation(id));
+    }
+
+    /**
+     * Materialize a detached {@link Brick} view of a stored brick.
+     */
+    public Brick toBrick(int id) {
+        int slot = idSlots[id];
+        Brick brick = new Brick(TYPES[types[slot]], COLORS[colors[slot]], xs[slot], ys[slot], zs[slot]);
+        brick.setRotation(rotations[slot] * 90);
+        return brick;
+    }
+
+    /**
+     * Visit every stored brick in slot order.
+     */
+    public void forEach(BrickVisitor visitor) {
+        for (int slot = 0; slot < size; slot++) {
+            visitor.visit(slotIds[slot], TYPES[types[slot]], COLORS[colors[slot]],
+                    xs[slot], ys[slot], zs[slot], rotations[slot] * 90);
+        }
+    }
+
+    int add(BrickType type, BrickColor color, int x, int y, int z, int rotation) {
+        if (size == slotIds.length) {
+            growSlots(size * 2);
+        }
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (idLimit == idSlots.length) {
+                idSlots = Arrays.copyOf(idSlots, idLimit * 2);
+            }
+            id = idLimit++;
+        }
+        int slot = size++;
+        types[slot] = (byte) type.ordinal();
+        colors[slot] = (byte) color.ordinal();
+        rotations[slot] = (byte) (Math.floorMod(rotation, 360) / 90);
+        xs[slot] = x;
+        ys[slot] = y;
+        zs[slot] = z;
+        slotIds[slot] = id;
+        idSlots[id] = slot;
+        return id;
+    }
+
+    void setColor(int id, BrickColor color) {
+        colors[idSlots[id]] = (byte) color.ordinal();
+    }
+
+    void remove(int id) {
+        int slot = idSlots[id];
+        int last = --size;
+        if (slot != last) {
+            // Move the last slot into the hole so slots stay dense
+            types[slot] = types[last];
+            colors[slot] = colors[last];
+            rotations[slot] = rotations[last];
+            xs[slot] = xs[last];
+            ys[slot] = ys[last];
+            zs[slot] = zs[last];
+            int movedId = slotIds[last];
+            slotIds[slot] = movedId;
+            idSlots[movedId] = slot;
+        }
+        idSlots[id] = NO_BRICK;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    void clear() {
+        size = 0;
+        idLimit = 0;
+        freeCount = 0;
+    }
+
+    private void growSlots(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        rotations = Arrays.copyOf(rotations, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        slotIds = Arrays.copyOf(slotIds, capacity);
+    }
+}
@@ -31,6 +31,20 @@ public enum BrickType {
     public int getLength() { return length; }
     public int getHeight() { return height; }
 
+    /**
+     * Get X footprint in studs for the given rotation in degrees.
+     */
+    public int getActualWidth(int rotation) {
+        return (rotation == 90 || rotation == 270) ? length : width;
+    }
+
+    /**
+     * Get Z footprint in studs for the given rotation in degrees.
+     */
+    public int getActualLength(int rotation) {
+        return (rotation == 90 || rotation == 270) ? width : length;
+    }
+
     // Real-world scale factors for rendering
     public static final float STUD_SIZE = 1.0f;       // 1 unit per stud
     public static final float PLATE_HEIGHT = 0.4f;    // Height of one plate
@@ -0,0 +1,13 @@
+package com.legostudio.model;
+
+/**
+ * Callback for walking stored bricks without materializing {@link Brick} objects.
+ */
+@FunctionalInterface
+public interface BrickVisitor {
+    /**
+     * @param id Stable brick ID
+     * @param rotation Rotation in degrees (0, 90, 180, 270)
+     */
+    void visit(int id, BrickType type, BrickColor color, int x, int y, int z, int rotation);
+}
@@ -0,0 +1,1182 @@
+package com.legostudio.model;
+
+import org.joml.Vector3f;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import static com.legostudio.model.BrickStore.NO_BRICK;
+import static com.legostudio.model.Chunk.MASK;
+import static com.legostudio.model.Chunk.SHIFT;
+
+/**
+ * Manages all bricks in the world.
+ * Brick data lives in a struct-of-arrays {@link BrickStore} addressed by stable IDs.
+ * Occupancy is kept in sparse 16x16x16 chunks that are allocated on demand
+ * and released when empty, so memory scales with occupied volume while
+ * placement checks cost O(footprint) and point lookups O(1). A column
+ * heightmap of top surfaces is maintained alongside for auto-stacking,
+ * connected components of the stud-to-tube graph for assembly queries, and
+ * per-color and per-type membership for bulk edits. Groups of bricks are
+ * captured as {@link Selection}s to move, rotate or copy as a unit.
+ *
+ * Every mutation bumps a monotonically increasing version and is reported
+ * to registered {@link WorldChangeListener}s; mutations inside
+ * {@link #beginBatch()}/{@link #endBatch()} are coalesced into one event.
+ * Mutations are also journaled for {@link #undo()}/{@link #redo()}; a batch
+ * undoes as one step.
+ *
+ * The world itself must only be used from one thread. Other threads read
+ * immutable {@link #snapshot()}s instead.
+ */
+public class BrickWorld {
+    /** Grid size for a world with no X/Z bounds. */
+    public static final int UNBOUNDED = 0;
+    /** Default memory budget of the undo history: about two million edits. */
+    public static final long DEFAULT_HISTORY_BUDGET = 32L << 20;
+
+    private final BrickStore store = new BrickStore();
+    private final int gridSize; // Size of the building area in studs, or UNBOUNDED
+    private final ChunkMap<Chunk> chunks = new ChunkMap<>();
+    private final HeightMap heightMap = new HeightMap();
+    private int topBound; // No brick reaches above this plate height (may overestimate after removals)
+    private final ChangeRecorder changes = new ChangeRecorder();
+    private final ConnectivityGraph connectivity = new ConnectivityGraph(chunks, store);
+    private final EditJournal journal = new EditJournal(DEFAULT_HISTORY_BUDGET);
+    private SnapshotIndex snapshots; // Built on the first snapshot() call
+    private final MemberIndex byColor = new MemberIndex(BrickColor.values().length);
+    private final MemberIndex byType = new MemberIndex(BrickType.values().length);
+    private ChunkPager pager; // Null unless a resident budget is set
+
+    public BrickWorld(int gridSize) {
+        this.gridSize = gridSize;
+    }
+
+    public BrickWorld() {
+        this(UNBOUNDED);
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public boolean isBounded() {
+        return gridSize > 0;
+    }
+
+    /**
+     * Get the world version, which increases with every mutation.
+     */
+    public long getVersion() {
+        return changes.getVersion();
+    }
+
+    public void addChangeListener(WorldChangeListener listener) {
+        changes.addListener(listener);
+    }
+
+    public void removeChangeListener(WorldChangeListener listener) {
+        changes.removeListener(listener);
+    }
+
+    /**
+     * Start coalescing change notifications. Batches nest; listeners are
+     * notified once when the outermost batch ends, and the whole batch is
+     * one step in the undo history.
+     */
+    public void beginBatch() {
+        changes.begin();
+        journal.begin();
+    }
+
+    public void endBatch() {
+        try {
+            journal.end();
+        } finally {
+            changes.end();
+        }
+    }
+
+    /**
+     * Run the given mutations as one batch with a single change notification.
+     */
+    public void batch(Runnable mutations) {
+        beginBatch();
+        try {
+            mutations.run();
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Get an immutable snapshot of the current state that any thread may read.
+     *
+     * The first call indexes the world in O(n); after that the index is
+     * maintained with every edit, and publishing costs O(1). An edit made after
+     * a snapshot copies only O(log n) of the shared structure. Returns the same
+     * instance until the world changes.
+     */
+    public WorldSnapshot snapshot() {
+        if (snapshots == null) {
+            snapshots = new SnapshotIndex(store);
+        }
+        return snapshots.publish(getVersion());
+    }
+
+    /**
+     * Read-only access to the primitive brick storage.
+     */
+    public BrickStore getBrickStore() {
+        return store;
+    }
+
+    /**
+     * Get a list view of all bricks. Each element is materialized on access;
+     * prefer {@link #forEachBrick} for bulk iteration.
+     */
+    public List<Brick> getBricks() {
+        return new AbstractList<>() {
+            @Override
+            public Brick get(int index) {
+                return store.toBrick(store.getIdAt(index));
+            }
+
+            @Override
+            public int size() {
+                return store.size();
+            }
+        };
+    }
+
+    /**
+     * Visit every brick without allocating per-brick objects.
+     */
+    public void forEachBrick(BrickVisitor visitor) {
+        store.forEach(visitor);
+    }
+
+    /**
+     * Get a detached view of the brick with the given ID, or null if there is none.
+     */
+    public Brick getBrick(int id) {
+        return store.contains(id) ? store.toBrick(id) : null;
+    }
+
+    /**
+     * Attempt to add a brick to the world.
+     * Returns true if successful, false if placement is invalid.
+     */
+    public boolean addBrick(Brick brick) {
+        var pos = brick.getPosition();
+        return addBrick(brick.getType(), brick.getColor(), pos.x, pos.y, pos.z, brick.getRotation()) != NO_BRICK;
+    }
+
+    /**
+     * Attempt to add a brick to the world.
+     * Returns the new brick's ID, or {@link BrickStore#NO_BRICK} if placement is invalid.
+     */
+    public int addBrick(BrickType type, BrickColor color, int x, int y, int z, int rotation) {
+        if (!isValidPlacement(type, x, y, z, rotation)) {
+            return NO_BRICK;
+        }
+        return insert(type, color, x, y, z, rotation);
+    }
+
+    /**
+     * Add many bricks at once, e.g. from an importer, paste or generator.
+     * Equivalent to {@link #addBricks(BrickBatch, boolean) addBricks(bricks, false)}.
+     */
+    public BatchResult addBricks(BrickBatch bricks) {
+        return addBricks(bricks, false);
+    }
+
+    public BatchResult addBricks(Collection<Brick> bricks) {
+        BrickBatch batch = new BrickBatch(bricks.size());
+        bricks.forEach(batch::add);
+        return addBricks(batch);
+    }
+
+    /**
+     * Add many bricks at once. The whole batch is validated first, with
+     * independent spatial regions checked in parallel; the accepted bricks are
+     * then inserted together and reported in a single change notification.
+     * When two bricks of the batch overlap, the earlier one is kept.
+     *
+     * @param allOrNothing If true, nothing is inserted unless every brick is valid
+     */
+    public BatchResult addBricks(BrickBatch bricks, boolean allOrNothing) {
+        BatchResult.Rejection[] rejections = BatchValidator.validate(this, bricks);
+        int[] ids = new int[bricks.size()];
+        Arrays.fill(ids, NO_BRICK);
+
+        boolean commit = !allOrNothing || Arrays.stream(rejections).allMatch(Objects::isNull);
+        if (commit) {
+            beginBatch();
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    if (rejections[i] == null) {
+                        ids[i] = insert(bricks.getType(i), bricks.getColor(i),
+                                bricks.getX(i), bricks.getY(i), bricks.getZ(i), bricks.getRotation(i));
+                    }
+                }
+            } finally {
+                endBatch();
+            }
+        }
+        return new BatchResult(ids, rejections, commit);
+    }
+
+    /**
+     * Add bricks that already belong to the world but were not in memory yet,
+     * such as chunks streamed in from disk. Validated and reported like
+     * {@link #addBricks(BrickBatch)}, but not journaled: loading is not an
+     * edit, so undo never takes the bricks away again.
+     */
+    public BatchResult loadBricks(BrickBatch bricks) {
+        if (journal.isInTransaction()) {
+            throw new IllegalStateException("Cannot load bricks inside a batch");
+        }
+        journal.setPaused(true);
+        try {
+            return addBricks(bricks, false);
+        } finally {
+            journal.setPaused(false);
+        }
+    }
+
+    /**
+     * Store a brick whose placement has already been validated.
+     */
+    private int insert(BrickType type, BrickColor color, int x, int y, int z, int rotation) {
+        int id = store.add(type, color, x, y, z, rotation);
+        mark(id, id);
+        raiseColumns(id);
+        connectivity.onAdd(id);
+        byColor.add(color.ordinal(), id);
+        byType.add(type.ordinal(), id);
+        journal.recordAdd(store, id);
+        if (snapshots != null) {
+            snapshots.add(store, id);
+        }
+        changes.recordAdd(store, id);
+        return id;
+    }
+
+    /**
+     * Remove a brick from the world.
+     * Matches the stored brick with the same type, origin and rotation.
+     */
+    public boolean removeBrick(Brick brick) {
+        var pos = brick.getPosition();
+        int id = getBrickIdAt(pos.x, pos.y, pos.z);
+        if (id == NO_BRICK || store.getType(id) != brick.getType()
+                || store.getX(id) != pos.x || store.getY(id) != pos.y || store.getZ(id) != pos.z
+                || store.getRotation(id) != brick.getRotation()) {
+            return false;
+        }
+        return removeBrickById(id);
+    }
+
+    /**
+     * Remove the brick with the given ID.
+     */
+    public boolean removeBrickById(int id) {
+        if (!store.contains(id)) {
+            return false;
+        }
+        connectivity.beforeRemove(id);
+        mark(id, NO_BRICK);
+        lowerColumns(id);
+        connectivity.onRemove(id);
+        byColor.remove(store.getColor(id).ordinal(), id);
+        byType.remove(store.getType(id).ordinal(), id);
+        journal.recordRemove(store, id);
+        if (snapshots != null) {
+            snapshots.remove(store, id); // Before notifying, so listeners can take a current snapshot
+        }
+        changes.recordRemove(store, id);
+        store.remove(id);
+        return true;
+    }
+
+    /**
+     * Change the color of the brick with the given ID, keeping its ID.
+     * Reported to listeners as a removal and an addition of the same ID.
+     */
+    public boolean recolorBrick(int id, BrickColor color) {
+        Objects.requireNonNull(color, "color");
+        if (!store.contains(id)) {
+            return false;
+        }
+        if (store.getColor(id) == color) {
+            return true;
+        }
+        changes.begin();
+        try {
+            changes.recordRemove(store, id);
+            journal.recordRecolor(store, id, color);
+            if (snapshots != null) {
+                snapshots.remove(store, id);
+            }
+            byColor.remove(store.getColor(id).ordinal(), id);
+            byColor.add(color.ordinal(), id);
+            store.setColor(id, color);
+            if (snapshots != null) {
+                snapshots.add(store, id);
+            }
+            changes.recordAdd(store, id);
+        } finally {
+            changes.end();
+        }
+        return true;
+    }
+
+    /**
+     * Recolor every brick of one color as a single batch. Touches only the matching bricks.
+     *
+     * @return The number of bricks recolored
+     */
+    public int recolorAll(BrickColor from, BrickColor to) {
+        Objects.requireNonNull(to, "to");
+        if (from == to) {
+            return 0;
+        }
+        int[] ids = byColor.toArray(from.ordinal());
+        beginBatch();
+        try {
+            for (int id : ids) {
+                recolorBrick(id, to);
+            }
+        } finally {
+            endBatch();
+        }
+        return ids.length;
+    }
+
+    /**
+     * Replace every brick of one type with another type at the same origin,
+     * rotation and color, wherever the new footprint fits, as a single batch.
+     * Only the cells the new type adds to the old footprint are checked.
+     * Bricks are replaced one after another, so a replacement can block a later one.
+     *
+     * @return Per matching brick: the ID of its replacement, or why it was kept
+     */
+    public BatchResult replaceAll(BrickType from, BrickType to) {
+        Objects.requireNonNull(to, "to");
+        int[] ids = byType.toArray(from.ordinal());
+        BatchResult.Rejection[] rejections = new BatchResult.Rejection[ids.length];
+        if (from == to) {
+            return new BatchResult(ids, rejections, true);
+        }
+        int[] replaced = new int[ids.length];
+        beginBatch();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                int id = ids[i];
+                BrickColor color = store.getColor(id);
+                int x = store.getX(id), y = store.getY(id), z = store.getZ(id), rotation = store.getRotation(id);
+                if (!isInBounds(to, x, y, z, rotation)) {
+                    rejections[i] = BatchResult.Rejection.OUT_OF_BOUNDS;
+                } else if (!isGrowthFree(x, y, z,
+                        store.getActualWidth(id), from.getHeight(), store.getActualLength(id),
+                        to.getActualWidth(rotation), to.getHeight(), to.getActualLength(rotation))) {
+                    rejections[i] = BatchResult.Rejection.COLLIDES_WITH_WORLD;
+                } else {
+                    removeBrickById(id);
+                    replaced[i] = insert(to, color, x, y, z, rotation);
+                }
+            }
+        } finally {
+            endBatch();
+        }
+        return new BatchResult(replaced, rejections, true);
+    }
+
+    /**
+     * Get the number of bricks of the given color.
+     */
+    public int getBrickCount(BrickColor color) {
+        return byColor.count(color.ordinal());
+    }
+
+    /**
+     * Get the number of bricks of the given type.
+     */
+    public int getBrickCount(BrickType type) {
+        return byType.count(type.ordinal());
+    }
+
+    /**
+     * Get the IDs of all bricks of the given color, in no particular order.
+     */
+    public int[] getBrickIds(BrickColor color) {
+        return byColor.toArray(color.ordinal());
+    }
+
+    /**
+     * Get the IDs of all bricks of the given type, in no particular order.
+     */
+    public int[] getBrickIds(BrickType type) {
+        return byType.toArray(type.ordinal());
+    }
+
+    /**
+     * Select every brick with a cell inside the box spanned by two corner cells, given in any order.
+     */
+    public Selection selectBox(int x0, int y0, int z0, int x1, int y1, int z1) {
+        int minX = Math.min(x0, x1), minY = Math.max(Math.min(y0, y1), 0), minZ = Math.min(z0, z1);
+        int maxX = Math.max(x0, x1) + 1, maxY = Math.max(y0, y1) + 1, maxZ = Math.max(z0, z1) + 1;
+        BitSet found = new BitSet(store.getIdLimit());
+        chunks.forEach(chunk -> {
+            int lx0 = localMin(minX, chunk.cx), ly0 = localMin(minY, chunk.cy), lz0 = localMin(minZ, chunk.cz);
+            int lx1 = localMax(maxX, chunk.cx), ly1 = localMax(maxY, chunk.cy), lz1 = localMax(maxZ, chunk.cz);
+            if (lx0 >= lx1 || ly0 >= ly1 || lz0 >= lz1 || chunk.isEmpty(lx0, ly0, lz0, lx1, ly1, lz1)) {
+                return;
+            }
+            for (int ly = ly0; ly < ly1; ly++) {
+                for (int lz = lz0; lz < lz1; lz++) {
+                    for (int lx = lx0; lx < lx1; lx++) {
+                        int id = chunk.get(lx, ly, lz);
+                        if (id != NO_BRICK) {
+                            found.set(id);
+                        }
+                    }
+                }
+            }
+        });
+        return Selection.capture(store, found.stream().toArray());
+    }
+
+    /**
+     * Select the whole assembly the brick with the given ID belongs to, or nothing if there is no such brick.
+     */
+    public Selection selectAssembly(int id) {
+        return Selection.capture(store, getAssembly(id));
+    }
+
+    /**
+     * Select the given bricks. Unknown and repeated IDs are skipped.
+     */
+    public Selection select(int... ids) {
+        return Selection.capture(store, Arrays.stream(ids).filter(store::contains).distinct().toArray());
+    }
+
+    /**
+     * Check that every source brick of a selection is still in the world as it was captured.
+     */
+    public boolean isCurrent(Selection selection) {
+        BrickBatch sources = selection.getSources();
+        for (int i = 0; i < sources.size(); i++) {
+            if (!isSourceCurrent(sources, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a copy of a selection with its minimum corner at (x, y, z), as a single batch.
+     * Nothing is added unless every brick fits.
+     */
+    public BatchResult pasteSelection(Selection selection, int x, int y, int z) {
+        return addBricks(selection.placedAt(x, y, z), true);
+    }
+
+    /**
+     * Move the source bricks of a selection so its minimum corner lands at (x, y, z),
+     * applying the selection's rotation, as a single batch. The bricks may land on
+     * cells they leave. Nothing moves unless every brick fits and every source brick
+     * is still current; stale sources are rejected with {@link BatchResult.Rejection#NOT_FOUND}.
+     *
+     * @return Per selected brick: its new ID, or why the move was refused
+     */
+    public BatchResult moveSelection(Selection selection, int x, int y, int z) {
+        BrickBatch sources = selection.getSources();
+        BrickBatch placed = selection.placedAt(x, y, z);
+        BatchResult.Rejection[] rejections = new BatchResult.Rejection[placed.size()];
+        boolean valid = true;
+        for (int i = 0; i < placed.size(); i++) {
+            BrickType type = placed.getType(i);
+            int px = placed.getX(i), py = placed.getY(i), pz = placed.getZ(i), rotation = placed.getRotation(i);
+            if (!isSourceCurrent(sources, i)) {
+                rejections[i] = BatchResult.Rejection.NOT_FOUND;
+            } else if (!isInBounds(type, px, py, pz, rotation)) {
+                rejections[i] = BatchResult.Rejection.OUT_OF_BOUNDS;
+            } else if (!isRegionFreeExcept(selection, px, py, pz,
+                    type.getActualWidth(rotation), type.getHeight(), type.getActualLength(rotation))) {
+                rejections[i] = BatchResult.Rejection.COLLIDES_WITH_WORLD;
+            }
+            valid &= rejections[i] == null;
+        }
+
+        int[] ids = new int[placed.size()];
+        Arrays.fill(ids, NO_BRICK);
+        if (valid) {
+            beginBatch();
+            try {
+                for (int i = 0; i < sources.size(); i++) {
+                    removeBrickById(sources.getId(i));
+                }
+                for (int i = 0; i < placed.size(); i++) {
+                    ids[i] = insert(placed.getType(i), placed.getColor(i),
+                            placed.getX(i), placed.getY(i), placed.getZ(i), placed.getRotation(i));
+                }
+            } finally {
+                endBatch();
+            }
+        }
+        return new BatchResult(ids, rejections, valid);
+    }
+
+    /**
+     * Remove many bricks by ID with a single change notification.
+     * Unknown or repeated IDs are rejected with {@link BatchResult.Rejection#NOT_FOUND}.
+     *
+     * @param allOrNothing If true, nothing is removed unless every ID is valid
+     */
+    public BatchResult removeBricks(int[] ids, boolean allOrNothing) {
+        BatchResult.Rejection[] rejections = new BatchResult.Rejection[ids.length];
+        BitSet seen = new BitSet(store.getIdLimit());
+        boolean allFound = true;
+        for (int i = 0; i < ids.length; i++) {
+            if (!store.contains(ids[i]) || seen.get(ids[i])) {
+                rejections[i] = BatchResult.Rejection.NOT_FOUND;
+                allFound = false;
+            } else {
+                seen.set(ids[i]);
+            }
+        }
+
+        boolean commit = allFound || !allOrNothing;
+        if (commit) {
+            beginBatch();
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    if (rejections[i] == null) {
+                        removeBrickById(ids[i]);
+                    }
+                }
+            } finally {
+                endBatch();
+            }
+        }
+        return new BatchResult(ids.clone(), rejections, commit);
+    }
+
+    public BatchResult removeBricks(int... ids) {
+        return removeBricks(ids, false);
+    }
+
+    /**
+     * Remove the brick at the specified position.
+     */
+    public Brick removeBrickAt(int x, int y, int z) {
+        int id = getBrickIdAt(x, y, z);
+        if (id == NO_BRICK) {
+            return null;
+        }
+        Brick found = store.toBrick(id);
+        removeBrickById(id);
+        return found;
+    }
+
+    /**
+     * Get the brick at the specified grid position.
+     */
+    public Brick getBrickAt(int x, int y, int z) {
+        int id = getBrickIdAt(x, y, z);
+        return id == NO_BRICK ? null : store.toBrick(id);
+    }
+
+    /**
+     * Get the ID of the brick at the specified grid position, or {@link BrickStore#NO_BRICK}.
+     */
+    public int getBrickIdAt(int x, int y, int z) {
+        Chunk chunk = chunks.get(x >> SHIFT, y >> SHIFT, z >> SHIFT);
+        return chunk == null ? NO_BRICK : chunk.get(x & MASK, y & MASK, z & MASK);
+    }
+
+    /**
+     * Get the top surface height of the column at (x, z) in plates; 0 is the baseplate.
+     */
+    public int getSurfaceHeight(int x, int z) {
+        return heightMap.get(x, z);
+    }
+
+    /**
+     * Get the height in plates at which a brick would rest when dropped onto the
+     * columns under its footprint, i.e. the highest surface it covers.
+     */
+    public int getStackHeight(BrickType type, int x, int z, int rotation) {
+        int w = type.getActualWidth(rotation);
+        int l = type.getActualLength(rotation);
+        int top = 0;
+        for (int cz = z; cz < z + l; cz++) {
+            for (int cx = x; cx < x + w; cx++) {
+                top = Math.max(top, heightMap.get(cx, cz));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Cast a ray through the world and return the first brick it hits.
+     * Walks grid cells with a 3D DDA (Amanatides-Woo), so the cost depends on
+     * the number of cells crossed, not on the number of bricks.
+     *
+     * @param origin Ray origin in world units
+     * @param direction Ray direction in world units (need not be normalized)
+     * @param maxDistance Maximum distance along the ray, in world units; must be
+     *        finite, since it is the only bound on a horizontal ray in an
+     *        unbounded world
+     * @return The hit, or null if the ray reaches the baseplate, leaves the
+     *         occupied height range or exceeds maxDistance without hitting a brick
+     * @throws IllegalArgumentException if maxDistance is infinite or NaN
+     */
+    public RaycastHit raycast(Vector3f origin, Vector3f direction, float maxDistance) {
+        if (!Float.isFinite(maxDistance)) {
+            throw new IllegalArgumentException("Ray distance must be finite: " + maxDistance);
+        }
+        float length = direction.length();
+        if (length == 0 || store.size() == 0) {
+            return null;
+        }
+
+        // Work in grid space: one unit per stud in X/Z, one unit per plate in Y.
+        // Scaling the components keeps t measured in world units along the ray.
+        float ox = origin.x, oy = origin.y / BrickType.PLATE_HEIGHT, oz = origin.z;
+        float dx = direction.x / length, dy = direction.y / length / BrickType.PLATE_HEIGHT, dz = direction.z / length;
+
+        // Skip straight to the top of the occupied range when starting above it
+        float t = 0;
+        if (oy > topBound) {
+            if (dy >= 0) {
+                return null;
+            }
+            t = (topBound - oy) / dy;
+        }
+
+        int ix = (int) Math.floor(ox + t * dx);
+        int iy = Math.min((int) Math.floor(oy + t * dy), topBound - 1);
+        int iz = (int) Math.floor(oz + t * dz);
+        int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1, stepZ = dz > 0 ? 1 : -1;
+        float deltaX = dx != 0 ? Math.abs(1 / dx) : Float.POSITIVE_INFINITY;
+        float deltaY = dy != 0 ? Math.abs(1 / dy) : Float.POSITIVE_INFINITY;
+        float deltaZ = dz != 0 ? Math.abs(1 / dz) : Float.POSITIVE_INFINITY;
+        float maxX = nextBoundary(ix, ox, dx);
+        float maxY = nextBoundary(iy, oy, dy);
+        float maxZ = nextBoundary(iz, oz, dz);
+
+        int normalX = 0, normalY = t > 0 ? 1 : 0, normalZ = 0;
+        while (t <= maxDistance && iy >= 0 && iy < topBound) {
+            Chunk chunk = chunks.get(ix >> SHIFT, iy >> SHIFT, iz >> SHIFT);
+            if (chunk == null) {
+                // Nothing to hit in this chunk: jump straight to the face where the ray leaves it
+                int bx = ix & ~MASK, by = iy & ~MASK, bz = iz & ~MASK;
+                float exitX = nextBoundary(dx > 0 ? bx + MASK : bx, ox, dx);
+                float exitY = nextBoundary(dy > 0 ? by + MASK : by, oy, dy);
+                float exitZ = nextBoundary(dz > 0 ? bz + MASK : bz, oz, dz);
+                if (exitX <= exitY && exitX <= exitZ) {
+                    t = exitX;
+                    ix = dx > 0 ? bx + Chunk.SIZE : bx - 1;
+                    iy = clampToChunk((int) Math.floor(oy + t * dy), by);
+                    iz = clampToChunk((int) Math.floor(oz + t * dz), bz);
+                    normalX = -stepX; normalY = 0; normalZ = 0;
+                } else if (exitY <= exitZ) {
+                    t = exitY;
+                    ix = clampToChunk((int) Math.floor(ox + t * dx), bx);
+                    iy = dy > 0 ? by + Chunk.SIZE : by - 1;
+                    iz = clampToChunk((int) Math.floor(oz + t * dz), bz);
+                    normalX = 0; normalY = -stepY; normalZ = 0;
+                } else {
+                    t = exitZ;
+                    ix = clampToChunk((int) Math.floor(ox + t * dx), bx);
+                    iy = clampToChunk((int) Math.floor(oy + t * dy), by);
+                    iz = dz > 0 ? bz + Chunk.SIZE : bz - 1;
+                    normalX = 0; normalY = 0; normalZ = -stepZ;
+                }
+                maxX = nextBoundary(ix, ox, dx);
+                maxY = nextBoundary(iy, oy, dy);
+                maxZ = nextBoundary(iz, oz, dz);
+                continue;
+            }
+            if (chunk.isOccupied(ix & MASK, iy & MASK, iz & MASK)) {
+                int id = chunk.get(ix & MASK, iy & MASK, iz & MASK);
+                return new RaycastHit(id, ix, iy, iz, normalX, normalY, normalZ, t);
+            }
+            if (maxX < maxY && maxX < maxZ) {
+                t = maxX;
+                maxX += deltaX;
+                ix += stepX;
+                normalX = -stepX; normalY = 0; normalZ = 0;
+            } else if (maxY < maxZ) {
+                t = maxY;
+                maxY += deltaY;
+                iy += stepY;
+                normalX = 0; normalY = -stepY; normalZ = 0;
+            } else {
+                t = maxZ;
+                maxZ += deltaZ;
+                iz += stepZ;
+                normalX = 0; normalY = 0; normalZ = -stepZ;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if a brick placement is valid (within bounds and no collisions).
+     */
+    public boolean isValidPlacement(Brick brick) {
+        var pos = brick.getPosition();
+        return isValidPlacement(brick.getType(), pos.x, pos.y, pos.z, brick.getRotation());
+    }
+
+    /**
+     * Check if a brick placement is valid (within bounds and no collisions).
+     */
+    public boolean isValidPlacement(BrickType type, int x, int y, int z, int rotation) {
+        return isInBounds(type, x, y, z, rotation)
+                && isRegionFree(x, y, z, type.getActualWidth(rotation), type.getHeight(),
+                type.getActualLength(rotation), false);
+    }
+
+    boolean isInBounds(BrickType type, int x, int y, int z, int rotation) {
+        if (y < 0) {
+            return false;
+        }
+        return !isBounded() || (x >= 0 && x + type.getActualWidth(rotation) <= gridSize
+                && z >= 0 && z + type.getActualLength(rotation) <= gridSize);
+    }
+
+    /**
+     * Check the box of w x h x l cells at (x, y, z) for collisions.
+     * With concurrent set, lookups bypass the chunk cache so several threads may
+     * call this at once while no thread mutates the world.
+     */
+    boolean isRegionFree(int x, int y, int z, int w, int h, int l, boolean concurrent) {
+        for (int cy = y >> SHIFT; cy <= (y + h - 1) >> SHIFT; cy++) {
+            for (int cz = z >> SHIFT; cz <= (z + l - 1) >> SHIFT; cz++) {
+                for (int cx = x >> SHIFT; cx <= (x + w - 1) >> SHIFT; cx++) {
+                    Chunk chunk = concurrent ? chunks.find(cx, cy, cz) : chunks.get(cx, cy, cz);
+                    if (chunk != null && !chunk.isEmpty(
+                            localMin(x, cx), localMin(y, cy), localMin(z, cz),
+                            localMax(x + w, cx), localMax(y + h, cy), localMax(z + l, cz))) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check a box for collisions with bricks outside the selection. Falls back to
+     * per-cell lookups only where the occupancy bits report a collision.
+     */
+    private boolean isRegionFreeExcept(Selection selection, int x, int y, int z, int w, int h, int l) {
+        if (isRegionFree(x, y, z, w, h, l, false)) {
+            return true;
+        }
+        for (int cy = y; cy < y + h; cy++) {
+            for (int cz = z; cz < z + l; cz++) {
+                for (int cx = x; cx < x + w; cx++) {
+                    int id = getBrickIdAt(cx, cy, cz);
+                    if (id != NO_BRICK && !selection.contains(id)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isSourceCurrent(BrickBatch sources, int index) {
+        int id = sources.getId(index);
+        return store.contains(id) && store.getType(id) == sources.getType(index)
+                && store.getColor(id) == sources.getColor(index)
+                && store.getX(id) == sources.getX(index) && store.getY(id) == sources.getY(index)
+                && store.getZ(id) == sources.getZ(index) && store.getRotation(id) == sources.getRotation(index);
+    }
+
+    /**
+     * Check that the cells a box gains when resized from (w0, h0, l0) to (w1, h1, l1)
+     * around the same origin are free. The gained region splits into at most three boxes.
+     */
+    private boolean isGrowthFree(int x, int y, int z, int w0, int h0, int l0, int w1, int h1, int l1) {
+        int w = Math.min(w0, w1), l = Math.min(l0, l1);
+        return (w1 <= w0 || isRegionFree(x + w0, y, z, w1 - w0, h1, l1, false))
+                && (l1 <= l0 || isRegionFree(x, y, z + l0, w, h1, l1 - l0, false))
+                && (h1 <= h0 || isRegionFree(x, y + h0, z, w, h1 - h0, l, false));
+    }
+
+    /**
+     * Clear all bricks from the world.
+     */
+    public void clear() {
+        if (store.size() == 0) {
+            return;
+        }
+        int[] bounds = occupiedChunkBounds();
+        journal.recordClear(store);
+        clearStorage();
+        changes.recordClear(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+    }
+
+    /**
+     * Drop all bricks and indexes without journaling or notifying.
+     */
+    private void clearStorage() {
+        store.clear();
+        chunks.clear();
+        if (pager != null) {
+            pager.clear();
+        }
+        heightMap.clear();
+        connectivity.clear();
+        byColor.clear();
+        byType.clear();
+        if (snapshots != null) {
+            snapshots.clear();
+        }
+        topBound = 0;
+    }
+
+    /**
+     * Revert the most recent edit or batch. Runs as one batch of its own.
+     *
+     * @return False if there is nothing to undo
+     */
+    public boolean undo() {
+        return replay(true);
+    }
+
+    /**
+     * Reapply the most recently undone edit or batch. Any new edit discards the redo history.
+     *
+     * @return False if there is nothing to redo
+     */
+    public boolean redo() {
+        return replay(false);
+    }
+
+    public boolean canUndo() {
+        return journal.canUndo();
+    }
+
+    public boolean canRedo() {
+        return journal.canRedo();
+    }
+
+    /**
+     * Set the memory budget of the undo history in bytes. Each brick edit takes
+     * {@value EditJournal#RECORD_BYTES} bytes; the oldest steps are dropped when
+     * the budget is exceeded. Memory is taken as edits are recorded, up to the
+     * budget. Discards the current history.
+     */
+    public void setHistoryBudget(long bytes) {
+        if (journal.isInTransaction()) {
+            throw new IllegalStateException("Cannot resize the history inside a batch");
+        }
+        journal.setBudget(bytes);
+    }
+
+    public long getHistoryBudget() {
+        return journal.getBudget();
+    }
+
+    /**
+     * Get the bytes currently used by undo and redo steps.
+     */
+    public long getHistoryUsage() {
+        return journal.getUsedBytes();
+    }
+
+    /**
+     * Forget all undo and redo steps.
+     */
+    public void clearHistory() {
+        journal.clear();
+    }
+
+    private boolean replay(boolean undo) {
+        if (journal.isInTransaction()) {
+            throw new IllegalStateException("Cannot undo or redo inside a batch");
+        }
+        journal.setPaused(true);
+        changes.begin();
+        try {
+            return undo ? journal.undo(this::revertRecord) : journal.redo(this::applyRecord);
+        } finally {
+            journal.setPaused(false);
+            changes.end();
+        }
+    }
+
+    private void applyRecord(int op, BrickType type, BrickColor oldColor, BrickColor newColor,
+                             int x, int y, int z, int rotation) {
+        switch (op) {
+            case EditJournal.ADD -> insert(type, newColor, x, y, z, rotation);
+            case EditJournal.REMOVE -> removeBrickById(getBrickIdAt(x, y, z));
+            case EditJournal.RECOLOR -> recolorBrick(getBrickIdAt(x, y, z), newColor);
+            case EditJournal.CLEAR -> clear();
+            default -> throw new IllegalStateException("Corrupt journal record: " + op);
+        }
+    }
+
+    private void revertRecord(int op, BrickType type, BrickColor oldColor, BrickColor newColor,
+                              int x, int y, int z, int rotation) {
+        switch (op) {
+            case EditJournal.ADD -> removeBrickById(getBrickIdAt(x, y, z));
+            case EditJournal.REMOVE -> insert(type, oldColor, x, y, z, rotation);
+            case EditJournal.RECOLOR -> recolorBrick(getBrickIdAt(x, y, z), oldColor);
+            case EditJournal.CLEAR -> {
+                // The bricks come back through the REMOVE records that follow it
+            }
+            default -> throw new IllegalStateException("Corrupt journal record: " + op);
+        }
+    }
+
+    /**
+     * Check whether a brick is connected, directly or through other bricks, to one
+     * resting on the baseplate. Runs in constant time.
+     */
+    public boolean isGrounded(int id) {
+        return store.contains(id) && connectivity.isGrounded(id);
+    }
+
+    /**
+     * Check whether two bricks belong to the same assembly. Runs in constant time.
+     */
+    public boolean isConnected(int a, int b) {
+        return store.contains(a) && store.contains(b) && connectivity.areConnected(a, b);
+    }
+
+    /**
+     * Get the IDs of all bricks connected to the given one, including itself.
+     * The brick's own ID comes first; returns an empty array for an unknown ID.
+     */
+    public int[] getAssembly(int id) {
+        return store.contains(id) ? connectivity.getComponent(id) : new int[0];
+    }
+
+    /**
+     * Get the number of bricks in the given brick's assembly, or 0 for an unknown ID.
+     */
+    public int getAssemblySize(int id) {
+        return store.contains(id) ? connectivity.getComponentSize(id) : 0;
+    }
+
+    /**
+     * Get the IDs of the bricks directly attached above or below the given brick.
+     */
+    public int[] getConnectedBricks(int id) {
+        return store.contains(id) ? connectivity.getNeighbours(id) : new int[0];
+    }
+
+    /**
+     * Count the studs joining two bricks: the overlap of their footprints if one
+     * sits directly on the other, otherwise 0.
+     */
+    public int getStudContacts(int a, int b) {
+        if (!store.contains(a) || !store.contains(b)) {
+            return 0;
+        }
+        if (store.getY(a) + store.getType(a).getHeight() != store.getY(b)
+                && store.getY(b) + store.getType(b).getHeight() != store.getY(a)) {
+            return 0;
+        }
+        int overlapX = Math.min(store.getX(a) + store.getActualWidth(a), store.getX(b) + store.getActualWidth(b))
+                - Math.max(store.getX(a), store.getX(b));
+        int overlapZ = Math.min(store.getZ(a) + store.getActualLength(a), store.getZ(b) + store.getActualLength(b))
+                - Math.max(store.getZ(a), store.getZ(b));
+        return overlapX > 0 && overlapZ > 0 ? overlapX * overlapZ : 0;
+    }
+
+    /**
+     * Get the number of separate assemblies in the world.
+     */
+    public int getAssemblyCount() {
+        return connectivity.getComponentCount();
+    }
+
+    /**
+     * Get total brick count.
+     */
+    public int getBrickCount() {
+        return store.size();
+    }
+
+    /**
+     * Get the number of allocated storage chunks.
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Limit the memory used by chunk brick IDs to about the given number of
+     * bytes, or 0 to keep every chunk in memory. Chunks over the budget that
+     * were not used recently and are not near the {@link #setPagingFocus focus}
+     * spill their IDs to a temporary file and are read back on the next lookup.
+     * Occupancy bits, brick records and the other indexes stay in memory, so
+     * placement checks never touch the disk.
+     */
+    public void setResidentBudget(long bytes) {
+        ChunkPager old = pager;
+        pager = bytes > 0 ? new ChunkPager(bytes) : null;
+        if (pager != null && old != null) {
+            pager.setFocus(old.getFocusX(), old.getFocusZ());
+        }
+        chunks.forEach(chunk -> chunk.setPager(pager));
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * Get the resident budget in bytes, or 0 if paging is off.
+     */
+    public long getResidentBudget() {
+        return pager == null ? 0 : pager.getBudgetBytes();
+    }
+
+    /**
+     * Keep the chunks around (x, z), in studs, in memory; usually the camera target.
+     */
+    public void setPagingFocus(int x, int z) {
+        if (pager != null) {
+            pager.setFocus(x, z);
+        }
+    }
+
+    /**
+     * Get the pager counters, or null if paging is off.
+     */
+    public PagingStats getPagingStats() {
+        return pager == null ? null : pager.getStats(chunks.size());
+    }
+
+    /**
+     * Write value into every cell covered by the stored brick, allocating and releasing chunks as needed.
+     */
+    private void mark(int id, int value) {
+        int x = store.getX(id);
+        int y = store.getY(id);
+        int z = store.getZ(id);
+        int w = store.getActualWidth(id);
+        int l = store.getActualLength(id);
+        int h = store.getType(id).getHeight();
+
+        for (int cy = y >> SHIFT; cy <= (y + h - 1) >> SHIFT; cy++) {
+            for (int cz = z >> SHIFT; cz <= (z + l - 1) >> SHIFT; cz++) {
+                for (int cx = x >> SHIFT; cx <= (x + w - 1) >> SHIFT; cx++) {
+                    Chunk chunk = value != NO_BRICK ? chunks.getOrCreate(cx, cy, cz, this::newChunk) : chunks.get(cx, cy, cz);
+                    if (chunk == null) {
+                        continue;
+                    }
+                    chunk.fill(localMin(x, cx), localMin(y, cy), localMin(z, cz),
+                            localMax(x + w, cx), localMax(y + h, cy), localMax(z + l, cz), value);
+                    if (chunk.isEmpty()) {
+                        chunks.remove(cx, cy, cz);
+                        if (pager != null) {
+                            pager.release(chunk);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Chunk newChunk(int cx, int cy, int cz) {
+        return new Chunk(cx, cy, cz, pager);
+    }
+
+    /**
+     * Get inclusive cell bounds {minX, minY, minZ, maxX, maxY, maxZ} of all allocated chunks.
+     */
+    private int[] occupiedChunkBounds() {
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        chunks.forEach(chunk -> {
+            bounds[0] = Math.min(bounds[0], chunk.cx << SHIFT);
+            bounds[1] = Math.min(bounds[1], chunk.cy << SHIFT);
+            bounds[2] = Math.min(bounds[2], chunk.cz << SHIFT);
+            bounds[3] = Math.max(bounds[3], (chunk.cx << SHIFT) + MASK);
+            bounds[4] = Math.max(bounds[4], (chunk.cy << SHIFT) + MASK);
+            bounds[5] = Math.max(bounds[5], (chunk.cz << SHIFT) + MASK);
+        });
+        return bounds;
+    }
+
+    private void raiseColumns(int id) {
+        int x = store.getX(id);
+        int z = store.getZ(id);
+        int top = store.getY(id) + store.getType(id).getHeight();
+        topBound = Math.max(topBound, top);
+        heightMap.raise(x, z, store.getActualWidth(id), store.getActualLength(id), top);
+    }
+
+    /**
+     * Drop columns whose surface was the removed brick's top to the next occupied cell below.
+     * Must run after the brick's cells have been freed.
+     */
+    private void lowerColumns(int id) {
+        int x = store.getX(id);
+        int y = store.getY(id);
+        int z = store.getZ(id);
+        int top = y + store.getType(id).getHeight();
+        for (int cz = z; cz < z + store.getActualLength(id); cz++) {
+            for (int cx = x; cx < x + store.getActualWidth(id); cx++) {
+                if (heightMap.get(cx, cz) == top) {
+                    heightMap.set(cx, cz, columnTopBelow(cx, y, cz));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the surface height of the column at (x, z) considering only cells below y.
+     */
+    private int columnTopBelow(int x, int y, int z) {
+        for (int cy = (y - 1) >> SHIFT; cy >= 0; cy--) {
+            Chunk chunk = chunks.get(x >> SHIFT, cy, z >> SHIFT);
+            if (chunk == null) {
+                continue;
+            }
+            int fromY = Math.min(y - 1 - (cy << SHIFT), MASK);
+            int ly = chunk.highestOccupied(x & MASK, z & MASK, fromY);
+            if (ly >= 0) {
+                return (cy << SHIFT) + ly + 1;
+            }
+        }
+        return 0;
+    }
+
+    // Ray parameter at which the ray leaves grid cell i along one axis
+    private static float nextBoundary(int i, float origin, float direction) {
+        if (direction > 0) {
+            return (i + 1 - origin) / direction;
+        }
+        return direction < 0 ? (i - origin) / direction : Float.POSITIVE_INFINITY;
+    }
+
+    // Keep a recomputed cell index inside the chunk starting at base despite float rounding
+    private static int clampToChunk(int i, int base) {
+        return Math.max(base, Math.min(base + MASK, i));
+    }
+
+    // Clip a world-space range start/end (exclusive) to chunk-local coordinates
+    private static int localMin(int start, int chunk) {
+        return Math.max(start - (chunk << SHIFT), 0);
+    }
+
+    private static int localMax(int end, int chunk) {
+        return Math.min(end - (chunk << SHIFT), Chunk.SIZE);
+    }
+}
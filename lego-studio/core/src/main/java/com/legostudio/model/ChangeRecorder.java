@@ -0,0 +1,156 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks the world version and accumulates mutations into {@link WorldChangeEvent}s.
+ * Mutations made between {@link #begin()} and the matching {@link #end()} are
+ * coalesced into a single event; outside a batch every mutation fires on its own.
+ */
+final class ChangeRecorder {
+    private final List<WorldChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private long version;
+    private int depth;
+
+    // Pending event state
+    private boolean cleared;
+    private BrickBatch added = new BrickBatch(4);
+    private BrickBatch removed = new BrickBatch(4);
+    private int[] addedIndex = new int[64]; // Brick ID -> index + 1 in added, 0 if absent
+    private int minX, minY, minZ, maxX, maxY, maxZ;
+
+    ChangeRecorder() {
+        resetBounds();
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    void addListener(WorldChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(WorldChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    void begin() {
+        depth++;
+    }
+
+    void end() {
+        if (depth == 0) {
+            throw new IllegalStateException("end() without matching begin()");
+        }
+        if (--depth == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Record a brick that was just stored.
+     */
+    void recordAdd(BrickStore store, int id) {
+        version++;
+        if (!listeners.isEmpty()) {
+            if (id >= addedIndex.length) {
+                addedIndex = Arrays.copyOf(addedIndex, Math.max(id + 1, addedIndex.length * 2));
+            }
+            added.add(id, store.getType(id), store.getColor(id),
+                    store.getX(id), store.getY(id), store.getZ(id), store.getRotation(id));
+            addedIndex[id] = added.size();
+            include(store, id);
+        }
+        flushIfIdle();
+    }
+
+    /**
+     * Record a brick that is about to be removed from the store.
+     */
+    void recordRemove(BrickStore store, int id) {
+        version++;
+        if (!listeners.isEmpty()) {
+            include(store, id);
+            int index = id < addedIndex.length ? addedIndex[id] - 1 : -1;
+            if (index >= 0) {
+                // Added earlier in this batch: the two cancel out
+                added.swapRemove(index);
+                addedIndex[id] = 0;
+                if (index < added.size()) {
+                    addedIndex[added.getId(index)] = index + 1;
+                }
+            } else {
+                removed.add(id, store.getType(id), store.getColor(id),
+                        store.getX(id), store.getY(id), store.getZ(id), store.getRotation(id));
+            }
+        }
+        flushIfIdle();
+    }
+
+    /**
+     * Record that the world was cleared; the bounds cover everything that was stored.
+     */
+    void recordClear(int x0, int y0, int z0, int x1, int y1, int z1) {
+        version++;
+        if (!listeners.isEmpty()) {
+            for (int i = 0; i < added.size(); i++) {
+                addedIndex[added.getId(i)] = 0;
+            }
+            added.clear();
+            removed.clear();
+            cleared = true;
+            include(x0, y0, z0, x1, y1, z1);
+        }
+        flushIfIdle();
+    }
+
+    private void include(BrickStore store, int id) {
+        int x = store.getX(id), y = store.getY(id), z = store.getZ(id);
+        include(x, y, z,
+                x + store.getActualWidth(id) - 1,
+                y + store.getType(id).getHeight() - 1,
+                z + store.getActualLength(id) - 1);
+    }
+
+    private void include(int x0, int y0, int z0, int x1, int y1, int z1) {
+        minX = Math.min(minX, x0);
+        minY = Math.min(minY, y0);
+        minZ = Math.min(minZ, z0);
+        maxX = Math.max(maxX, x1);
+        maxY = Math.max(maxY, y1);
+        maxZ = Math.max(maxZ, z1);
+    }
+
+    private void flushIfIdle() {
+        if (depth == 0) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (!cleared && added.isEmpty() && removed.isEmpty()) {
+            resetBounds();
+            return;
+        }
+        WorldChangeEvent event = new WorldChangeEvent(version, cleared, added, removed,
+                minX, minY, minZ, maxX, maxY, maxZ);
+        for (int i = 0; i < added.size(); i++) {
+            addedIndex[added.getId(i)] = 0;
+        }
+        cleared = false;
+        added = new BrickBatch(4);
+        removed = new BrickBatch(4);
+        resetBounds();
+        for (WorldChangeListener listener : listeners) {
+            listener.onWorldChanged(event);
+        }
+    }
+
+    private void resetBounds() {
+        minX = minY = minZ = Integer.MAX_VALUE;
+        maxX = maxY = maxZ = Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,207 @@
+package com.legostudio.model;
+
+/**
+ * A 16x16x16 block of grid cells holding the ID of the brick that covers each cell.
+ * Chunks are allocated on demand by {@link BrickWorld} and released once empty.
+ *
+ * Alongside the ID array each chunk keeps a bitset occupancy mask: one bit per
+ * cell, a 16-bit row per (y, z), four rows packed into each long. Footprint
+ * tests AND a row mask against each row instead of probing cells one by one.
+ *
+ * Under a {@link ChunkPager} the ID array can be spilled to disk while the
+ * occupancy mask stays in memory, so collision tests never page anything in;
+ * only ID lookups and fills do.
+ */
+final class Chunk {
+    static final int SHIFT = 4;
+    static final int SIZE = 1 << SHIFT;
+    static final int MASK = SIZE - 1;
+    static final int VOLUME = SIZE * SIZE * SIZE;
+    static final int MASK_WORDS = VOLUME / Long.SIZE;
+
+    private static final int ROWS_PER_WORD = Long.SIZE / SIZE;
+    private static final long FULL_ROW = (1L << SIZE) - 1;
+    // REPEAT[n] copies a row mask into the n lowest rows of a word when multiplied
+    private static final long[] REPEAT = {0L, 0x1L, 0x1_0001L, 0x1_0001_0001L, 0x1_0001_0001_0001L};
+
+    final int cx, cy, cz; // Chunk coordinates (cell coordinate >> SHIFT)
+
+    private final long[] rows = new long[MASK_WORDS]; // Occupancy bits, see class comment
+    private int occupied;
+
+    // Paging state, owned by the pager; cells is null while spilled
+    private ChunkPager pager;
+    int[] cells; // Brick ID + 1, or 0 for a free cell
+    int spillSlot = -1; // Slot holding a copy of cells, valid unless dirty
+    boolean dirty;
+    boolean referenced; // Clock reference bit
+    int clockIndex = -1; // Position in the pager's clock while resident
+
+    Chunk(int cx, int cy, int cz) {
+        this(cx, cy, cz, null);
+    }
+
+    /**
+     * @param pager Pager to admit the chunk to, or null to keep it in memory
+     */
+    Chunk(int cx, int cy, int cz, ChunkPager pager) {
+        this.cx = cx;
+        this.cy = cy;
+        this.cz = cz;
+        this.pager = pager;
+        if (pager == null) {
+            cells = new int[VOLUME];
+        } else {
+            pager.admit(this);
+        }
+    }
+
+    static int index(int lx, int ly, int lz) {
+        return (ly << (2 * SHIFT)) | (lz << SHIFT) | lx;
+    }
+
+    /**
+     * Get the ID of the brick covering the local cell, or {@link BrickStore#NO_BRICK}.
+     */
+    int get(int lx, int ly, int lz) {
+        return cells()[index(lx, ly, lz)] - 1;
+    }
+
+    boolean isEmpty() {
+        return occupied == 0;
+    }
+
+    int getOccupiedCount() {
+        return occupied;
+    }
+
+    boolean isOccupied(int lx, int ly, int lz) {
+        int row = (ly << SHIFT) | lz;
+        return (rows[row / ROWS_PER_WORD] & (1L << ((row % ROWS_PER_WORD) * SIZE + lx))) != 0;
+    }
+
+    /**
+     * Find the highest occupied local Y at or below fromY in the given column, or -1.
+     */
+    int highestOccupied(int lx, int lz, int fromY) {
+        for (int ly = fromY; ly >= 0; ly--) {
+            if (isOccupied(lx, ly, lz)) {
+                return ly;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check that every cell in the local box [x0,x1) x [y0,y1) x [z0,z1) is free.
+     */
+    boolean isEmpty(int x0, int y0, int z0, int x1, int y1, int z1) {
+        return isFree(rows, x0, y0, z0, x1, y1, z1);
+    }
+
+    /**
+     * Test a local box against an occupancy mask laid out like a chunk's (see class comment).
+     */
+    static boolean isFree(long[] bits, int x0, int y0, int z0, int x1, int y1, int z1) {
+        long xMask = rowMask(x0, x1);
+        for (int ly = y0; ly < y1; ly++) {
+            // Test all rows of the footprint that share a word with a single AND
+            for (int lz = z0; lz < z1; ) {
+                int row = (ly << SHIFT) | lz;
+                int sub = row % ROWS_PER_WORD;
+                int count = Math.min(z1 - lz, ROWS_PER_WORD - sub);
+                long mask = (xMask * REPEAT[count]) << (sub * SIZE);
+                if ((bits[row / ROWS_PER_WORD] & mask) != 0) {
+                    return false;
+                }
+                lz += count;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test that every cell of a local box is set in an occupancy mask laid out like a chunk's.
+     */
+    static boolean isFull(long[] bits, int x0, int y0, int z0, int x1, int y1, int z1) {
+        long xMask = rowMask(x0, x1);
+        for (int ly = y0; ly < y1; ly++) {
+            for (int lz = z0; lz < z1; lz++) {
+                int row = (ly << SHIFT) | lz;
+                long mask = xMask << ((row % ROWS_PER_WORD) * SIZE);
+                if ((bits[row / ROWS_PER_WORD] & mask) != mask) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Set or clear a local box in an occupancy mask laid out like a chunk's.
+     */
+    static void setBits(long[] bits, int x0, int y0, int z0, int x1, int y1, int z1, boolean occupied) {
+        long xMask = rowMask(x0, x1);
+        for (int ly = y0; ly < y1; ly++) {
+            for (int lz = z0; lz < z1; lz++) {
+                int row = (ly << SHIFT) | lz;
+                long mask = xMask << ((row % ROWS_PER_WORD) * SIZE);
+                if (occupied) {
+                    bits[row / ROWS_PER_WORD] |= mask;
+                } else {
+                    bits[row / ROWS_PER_WORD] &= ~mask;
+                }
+            }
+        }
+    }
+
+    /**
+     * Set every cell in the local box to the given brick ID (or {@link BrickStore#NO_BRICK} to free it).
+     */
+    void fill(int x0, int y0, int z0, int x1, int y1, int z1, int id) {
+        int value = id + 1;
+        int[] cells = cells();
+        dirty = true;
+        setBits(rows, x0, y0, z0, x1, y1, z1, value != 0);
+        for (int ly = y0; ly < y1; ly++) {
+            for (int lz = z0; lz < z1; lz++) {
+                int row = index(0, ly, lz);
+                for (int lx = x0; lx < x1; lx++) {
+                    int previous = cells[row + lx];
+                    if (previous == 0 && value != 0) {
+                        occupied++;
+                    } else if (previous != 0 && value == 0) {
+                        occupied--;
+                    }
+                    cells[row + lx] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the chunk under another pager, or back into memory if pager is null.
+     */
+    void setPager(ChunkPager pager) {
+        if (this.pager != null) {
+            cells = this.pager.detach(this);
+        }
+        this.pager = pager;
+        if (pager != null) {
+            pager.adopt(this);
+        }
+    }
+
+    private int[] cells() {
+        if (pager == null) {
+            return cells;
+        }
+        referenced = true;
+        return cells != null ? cells : pager.pageIn(this);
+    }
+
+    // Bits [x0, x1) of a single row
+    private static long rowMask(int x0, int x1) {
+        return (FULL_ROW >>> (SIZE - (x1 - x0))) << x0;
+    }
+}
@@ -0,0 +1,168 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map from packed chunk coordinates to per-chunk data.
+ * Avoids boxing the long keys on every lookup, which matters because
+ * placement checks and ray casts hit this map once per visited chunk.
+ */
+final class ChunkMap<V> {
+    private static final int COORD_BITS = 21;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    interface Factory<V> {
+        V create(int cx, int cy, int cz);
+    }
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+
+    // Single-entry cache: consecutive lookups usually hit the same chunk
+    private long lastKey;
+    private V lastValue;
+
+    ChunkMap() {
+        allocate(64);
+    }
+
+    static long key(int cx, int cy, int cz) {
+        return ((cx & COORD_MASK) << (2 * COORD_BITS))
+                | ((cy & COORD_MASK) << COORD_BITS)
+                | (cz & COORD_MASK);
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int cx, int cy, int cz) {
+        long key = key(cx, cy, cz);
+        if (lastValue != null && lastKey == key) {
+            return lastValue;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                lastKey = key;
+                lastValue = (V) values[i];
+                return lastValue;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Look up without touching the lookup cache, so concurrent readers can share the map
+     * as long as nobody modifies it.
+     */
+    @SuppressWarnings("unchecked")
+    V find(int cx, int cy, int cz) {
+        long key = key(cx, cy, cz);
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    V getOrCreate(int cx, int cy, int cz, Factory<V> factory) {
+        V value = get(cx, cy, cz);
+        if (value != null) {
+            return value;
+        }
+        if (size >= threshold) {
+            rehash(keys.length * 2);
+        }
+        long key = key(cx, cy, cz);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null) {
+            i = (i + 1) & mask;
+        }
+        value = factory.create(cx, cy, cz);
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        return value;
+    }
+
+    void remove(int cx, int cy, int cz) {
+        long key = key(cx, cy, cz);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null) {
+            return;
+        }
+        if (lastValue == values[i]) {
+            lastValue = null;
+        }
+        // Backward-shift deletion keeps probe sequences intact without tombstones
+        int hole = i;
+        for (int j = (hole + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+        size--;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+        lastValue = null;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
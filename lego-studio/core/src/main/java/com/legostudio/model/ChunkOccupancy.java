@@ -0,0 +1,99 @@
+package com.legostudio.model;
+
+import static com.legostudio.model.BrickStore.NO_BRICK;
+import static com.legostudio.model.Chunk.MASK;
+import static com.legostudio.model.Chunk.SHIFT;
+
+/**
+ * Occupied cells around one chunk of a {@link WorldSnapshot}, from
+ * {@link WorldSnapshot#occupancyAround}.
+ *
+ * Covers the chunk plus a border one cell deep on the low sides and, on the
+ * high sides, as far as a brick starting in the chunk reaches plus one cell:
+ * enough to test every face and stud of the bricks whose origin lies in it.
+ * The border comes from the neighbouring chunks' records. Cells are held as
+ * chunk-layout bit masks, one per neighbouring chunk, so a coverage test is a
+ * few word ANDs instead of a record scan per cell. Cells outside the covered
+ * range fall back to the snapshot.
+ */
+public final class ChunkOccupancy {
+    private final WorldSnapshot snapshot;
+    private final int lowX, lowY, lowZ; // Chunk coordinates of the first neighbour
+    private final int x0, y0, z0, x1, y1, z1; // Covered cells, [x0, x1) x [y0, y1) x [z0, z1)
+    private final long[][] masks = new long[27][]; // Per neighbouring chunk, null while empty
+
+    ChunkOccupancy(WorldSnapshot snapshot, int cx, int cy, int cz, int span, int height) {
+        this.snapshot = snapshot;
+        lowX = cx - 1;
+        lowY = cy - 1;
+        lowZ = cz - 1;
+        x0 = (cx << SHIFT) - 1;
+        y0 = (cy << SHIFT) - 1;
+        z0 = (cz << SHIFT) - 1;
+        x1 = ((cx + 1) << SHIFT) + span;
+        y1 = ((cy + 1) << SHIFT) + height;
+        z1 = ((cz + 1) << SHIFT) + span;
+    }
+
+    /**
+     * Mark the covered part of a brick's cells.
+     */
+    void add(int x, int y, int z, int width, int height, int length) {
+        int ax = Math.max(x, x0), ay = Math.max(y, y0), az = Math.max(z, z0);
+        int bx = Math.min(x + width, x1), by = Math.min(y + height, y1), bz = Math.min(z + length, z1);
+        if (ax < bx && ay < by && az < bz) {
+            visit(ax, ay, az, bx, by, bz, true);
+        }
+    }
+
+    public boolean isOccupied(int x, int y, int z) {
+        return isFull(x, y, z, x + 1, y + 1, z + 1);
+    }
+
+    /**
+     * True if every cell of the box [ax, bx) x [ay, by) x [az, bz) is occupied.
+     */
+    public boolean isFull(int ax, int ay, int az, int bx, int by, int bz) {
+        if (ax >= x0 && ay >= y0 && az >= z0 && bx <= x1 && by <= y1 && bz <= z1) {
+            return visit(ax, ay, az, bx, by, bz, false);
+        }
+        for (int y = ay; y < by; y++) {
+            for (int z = az; z < bz; z++) {
+                for (int x = ax; x < bx; x++) {
+                    if (snapshot.getBrickIdAt(x, y, z) == NO_BRICK) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mark (mark == true) or test for full (mark == false) a covered box, chunk by chunk.
+     */
+    private boolean visit(int ax, int ay, int az, int bx, int by, int bz, boolean mark) {
+        for (int cy = ay >> SHIFT; cy <= (by - 1) >> SHIFT; cy++) {
+            for (int cz = az >> SHIFT; cz <= (bz - 1) >> SHIFT; cz++) {
+                for (int cx = ax >> SHIFT; cx <= (bx - 1) >> SHIFT; cx++) {
+                    int n = ((cy - lowY) * 3 + (cz - lowZ)) * 3 + (cx - lowX);
+                    if (masks[n] == null) {
+                        if (!mark) {
+                            return false;
+                        }
+                        masks[n] = new long[Chunk.MASK_WORDS];
+                    }
+                    int lx0 = Math.max(ax - (cx << SHIFT), 0), lx1 = Math.min(bx - (cx << SHIFT), MASK + 1);
+                    int ly0 = Math.max(ay - (cy << SHIFT), 0), ly1 = Math.min(by - (cy << SHIFT), MASK + 1);
+                    int lz0 = Math.max(az - (cz << SHIFT), 0), lz1 = Math.min(bz - (cz << SHIFT), MASK + 1);
+                    if (mark) {
+                        Chunk.setBits(masks[n], lx0, ly0, lz0, lx1, ly1, lz1, true);
+                    } else if (!Chunk.isFull(masks[n], lx0, ly0, lz0, lx1, ly1, lz1)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
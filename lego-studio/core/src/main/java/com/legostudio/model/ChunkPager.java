@@ -0,0 +1,293 @@
+package com.legostudio.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Keeps the brick ID arrays of at most a budgeted number of {@link Chunk}s in
+ * memory and spills the rest to a temporary file.
+ *
+ * Resident chunks sit on a CLOCK: every ID lookup or fill sets the chunk's
+ * reference bit, and when a chunk has to come in over budget the hand sweeps
+ * the clock, clearing reference bits and evicting the first chunk that was
+ * neither used since the last sweep nor within {@value #FOCUS_RADIUS} chunk
+ * columns of the focus (usually the camera target). Clean chunks whose spill
+ * copy is still valid are dropped without writing. Spill slots are fixed-size
+ * and recycled through a free list.
+ *
+ * Used only from the thread that owns the world.
+ */
+final class ChunkPager implements AutoCloseable {
+    static final int CHUNK_BYTES = Chunk.VOLUME * Integer.BYTES;
+    static final int FOCUS_RADIUS = 8;
+    private static final int MAX_SPARES = 64;
+
+    private final int budget; // Resident chunks
+    private FileChannel spill; // Opened on the first eviction
+    private final ByteBuffer io = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    private Chunk[] clock = new Chunk[64];
+    private int residentCount;
+    private int hand;
+    private int focusX, focusZ; // Chunk column
+    private final int[][] spares = new int[MAX_SPARES][]; // ID arrays of evicted chunks, for reuse
+    private int spareCount;
+
+    // Statistics
+    private long pageIns, pageOuts, pageInNanos, maxPageInNanos;
+
+    /**
+     * @param budgetBytes Memory for resident ID arrays; at least one chunk is always resident
+     */
+    ChunkPager(long budgetBytes) {
+        this.budget = (int) Math.max(1, Math.min(budgetBytes / CHUNK_BYTES, Integer.MAX_VALUE));
+    }
+
+    long getBudgetBytes() {
+        return (long) budget * CHUNK_BYTES;
+    }
+
+    void setFocus(int x, int z) {
+        focusX = x >> Chunk.SHIFT;
+        focusZ = z >> Chunk.SHIFT;
+    }
+
+    int getFocusX() {
+        return focusX << Chunk.SHIFT;
+    }
+
+    int getFocusZ() {
+        return focusZ << Chunk.SHIFT;
+    }
+
+    /**
+     * Give a new chunk a zeroed ID array, evicting another chunk if over budget.
+     */
+    void admit(Chunk chunk) {
+        int[] cells = takeSpare();
+        if (cells == null) {
+            cells = new int[Chunk.VOLUME];
+        } else {
+            Arrays.fill(cells, 0);
+        }
+        makeResident(chunk, cells);
+        chunk.dirty = true;
+    }
+
+    /**
+     * Put a chunk that already has an ID array under this pager.
+     */
+    void adopt(Chunk chunk) {
+        makeResident(chunk, chunk.cells);
+        chunk.dirty = true;
+    }
+
+    /**
+     * Read a spilled chunk's ID array back in. Called by the chunk on first access.
+     */
+    int[] pageIn(Chunk chunk) {
+        long start = System.nanoTime();
+        int[] cells = takeSpare();
+        if (cells == null) {
+            cells = new int[Chunk.VOLUME];
+        }
+        read(chunk, cells);
+        chunk.dirty = false;
+        makeResident(chunk, cells);
+
+        long nanos = System.nanoTime() - start;
+        pageIns++;
+        pageInNanos += nanos;
+        maxPageInNanos = Math.max(maxPageInNanos, nanos);
+        return cells;
+    }
+
+    /**
+     * Take a chunk out from under this pager, returning its ID array.
+     */
+    int[] detach(Chunk chunk) {
+        int[] cells = chunk.cells;
+        if (cells != null) {
+            removeFromClock(chunk);
+            chunk.cells = null;
+        } else {
+            cells = new int[Chunk.VOLUME];
+            read(chunk, cells);
+        }
+        freeSlot(chunk);
+        return cells;
+    }
+
+    /**
+     * Forget a chunk that was released because it became empty.
+     */
+    void release(Chunk chunk) {
+        if (chunk.cells != null) {
+            removeFromClock(chunk);
+            putSpare(chunk.cells);
+            chunk.cells = null;
+        }
+        freeSlot(chunk);
+    }
+
+    /**
+     * Forget every chunk; the world was cleared.
+     */
+    void clear() {
+        Arrays.fill(clock, 0, residentCount, null);
+        residentCount = 0;
+        hand = 0;
+        slotCount = 0;
+        freeCount = 0;
+        try {
+            if (spill != null) {
+                spill.truncate(0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not truncate the spill file", e);
+        }
+    }
+
+    int getResidentCount() {
+        return residentCount;
+    }
+
+    PagingStats getStats(int chunkCount) {
+        return new PagingStats(getBudgetBytes(), chunkCount, residentCount, pageIns, pageOuts,
+                pageInNanos, maxPageInNanos);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void read(Chunk chunk, int[] cells) {
+        try {
+            io.clear();
+            long position = (long) chunk.spillSlot * CHUNK_BYTES;
+            while (io.hasRemaining()) {
+                if (spill.read(io, position + io.position()) < 0) {
+                    throw new IOException("Spill file is shorter than slot " + chunk.spillSlot);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not page in chunk " + chunk.cx + "," + chunk.cy + "," + chunk.cz, e);
+        }
+        io.flip();
+        io.asIntBuffer().get(cells);
+    }
+
+    private void makeResident(Chunk chunk, int[] cells) {
+        chunk.cells = cells;
+        chunk.referenced = true;
+        if (residentCount == clock.length) {
+            clock = Arrays.copyOf(clock, residentCount * 2);
+        }
+        chunk.clockIndex = residentCount;
+        clock[residentCount++] = chunk;
+        if (residentCount > budget) {
+            evict(chunk);
+        }
+    }
+
+    /**
+     * Sweep the clock for a victim other than keep. Gives up after two full
+     * sweeps, when every other chunk is in focus, and stays over budget.
+     */
+    private void evict(Chunk keep) {
+        for (int steps = 0; steps < 2 * residentCount; steps++) {
+            if (hand >= residentCount) {
+                hand = 0;
+            }
+            Chunk chunk = clock[hand];
+            if (chunk == keep || isInFocus(chunk)) {
+                hand++;
+            } else if (chunk.referenced) {
+                chunk.referenced = false;
+                hand++;
+            } else {
+                pageOut(chunk);
+                return; // The last chunk moved into the hand's slot; look at it next time
+            }
+        }
+    }
+
+    private boolean isInFocus(Chunk chunk) {
+        return Math.abs(chunk.cx - focusX) <= FOCUS_RADIUS && Math.abs(chunk.cz - focusZ) <= FOCUS_RADIUS;
+    }
+
+    private void pageOut(Chunk chunk) {
+        if (chunk.dirty || chunk.spillSlot < 0) {
+            if (chunk.spillSlot < 0) {
+                chunk.spillSlot = freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+            }
+            try {
+                if (spill == null) {
+                    Path file = Files.createTempFile("lego-studio-", ".spill");
+                    spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.DELETE_ON_CLOSE);
+                }
+                io.clear();
+                IntBuffer ints = io.asIntBuffer();
+                ints.put(chunk.cells);
+                long position = (long) chunk.spillSlot * CHUNK_BYTES;
+                while (io.hasRemaining()) {
+                    spill.write(io, position + io.position());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not spill chunk " + chunk.cx + "," + chunk.cy + "," + chunk.cz, e);
+            }
+            chunk.dirty = false;
+            pageOuts++;
+        }
+        removeFromClock(chunk);
+        putSpare(chunk.cells);
+        chunk.cells = null;
+    }
+
+    private void removeFromClock(Chunk chunk) {
+        int i = chunk.clockIndex;
+        Chunk last = clock[--residentCount];
+        clock[i] = last;
+        last.clockIndex = i;
+        clock[residentCount] = null;
+        chunk.clockIndex = -1;
+    }
+
+    private void freeSlot(Chunk chunk) {
+        if (chunk.spillSlot >= 0) {
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = chunk.spillSlot;
+            chunk.spillSlot = -1;
+        }
+    }
+
+    private int[] takeSpare() {
+        return spareCount > 0 ? spares[--spareCount] : null;
+    }
+
+    private void putSpare(int[] cells) {
+        if (spareCount < MAX_SPARES) {
+            spares[spareCount++] = cells;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+
+import static com.legostudio.model.Chunk.MASK;
+import static com.legostudio.model.Chunk.SHIFT;
+
+/**
+ * Connected components of the stud-to-tube graph: two bricks are connected when
+ * one sits directly on the other with overlapping footprints.
+ *
+ * Edges are not stored; they are read from the world's occupancy on demand in
+ * O(footprint). Components are kept as a union-find with union by size and
+ * explicit component labels (quick-find), with each component's members
+ * threaded on a circular doubly-linked list. Adding a brick unions it with its
+ * neighbours, relabelling the smaller side, so component queries are O(1).
+ * Removing a brick runs interleaved breadth-first searches from its former
+ * neighbours; searches that meet are merged, and pieces that close off before
+ * the rest are split into new components. Work is bounded by the size of the
+ * pieces that actually break off, not by the whole component.
+ */
+final class ConnectivityGraph {
+    private final ChunkMap<Chunk> chunks;
+    private final BrickStore store;
+
+    // Per brick ID
+    private int[] label = new int[64];
+    private int[] next = new int[64];
+    private int[] prev = new int[64];
+
+    // Per component label
+    private int[] size = new int[16];
+    private int[] grounded = new int[16]; // Members resting on the baseplate
+    private int[] head = new int[16];     // Any member, for walking the list
+    private int[] freeLabels = new int[16];
+    private int freeLabelCount;
+    private int labelLimit;
+    private int componentCount;
+
+    // Search scratch space, stamped per search so it never needs clearing
+    private int[] seenBy = new int[64];
+    private int[] seenEpoch = new int[64];
+    private int epoch;
+    private int[] scratch = new int[32];
+    private int[] removedNeighbours = new int[32];
+    private int removedNeighbourCount;
+
+    ConnectivityGraph(ChunkMap<Chunk> chunks, BrickStore store) {
+        this.chunks = chunks;
+        this.store = store;
+    }
+
+    int getComponentCount() {
+        return componentCount;
+    }
+
+    boolean areConnected(int a, int b) {
+        return label[a] == label[b];
+    }
+
+    boolean isGrounded(int id) {
+        return grounded[label[id]] > 0;
+    }
+
+    int getComponentSize(int id) {
+        return size[label[id]];
+    }
+
+    /**
+     * Get all members of the brick's component, starting with the brick itself.
+     */
+    int[] getComponent(int id) {
+        int[] members = new int[size[label[id]]];
+        int n = 0;
+        int member = id;
+        do {
+            members[n++] = member;
+            member = next[member];
+        } while (member != id);
+        return members;
+    }
+
+    /**
+     * Register a brick that was just stored and marked in the occupancy index.
+     */
+    void onAdd(int id) {
+        ensureIdCapacity(store.getIdLimit());
+        int own = newLabel();
+        label[id] = own;
+        next[id] = id;
+        prev[id] = id;
+        size[own] = 1;
+        grounded[own] = store.getY(id) == 0 ? 1 : 0;
+        head[own] = id;
+
+        int count = collectNeighbours(id);
+        for (int i = 0; i < count; i++) {
+            union(id, scratch[i]);
+        }
+    }
+
+    /**
+     * Remember the neighbours of a brick that is about to be unmarked from the occupancy index.
+     */
+    void beforeRemove(int id) {
+        removedNeighbourCount = collectNeighbours(id);
+        if (removedNeighbourCount > removedNeighbours.length) {
+            removedNeighbours = new int[scratch.length];
+        }
+        System.arraycopy(scratch, 0, removedNeighbours, 0, removedNeighbourCount);
+    }
+
+    /**
+     * Unregister a brick after its cells were freed, splitting its component if it was a bridge.
+     */
+    void onRemove(int id) {
+        int own = label[id];
+        unlink(id, own);
+        if (store.getY(id) == 0) {
+            grounded[own]--;
+        }
+        if (size[own] == 0) {
+            releaseLabel(own);
+            return;
+        }
+        if (removedNeighbourCount > 1) {
+            split(own, removedNeighbours, removedNeighbourCount);
+        }
+    }
+
+    void clear() {
+        freeLabelCount = 0;
+        labelLimit = 0;
+        componentCount = 0;
+    }
+
+    /**
+     * Get the distinct IDs of bricks directly above or below the given brick.
+     */
+    int[] getNeighbours(int id) {
+        return Arrays.copyOf(scratch, collectNeighbours(id));
+    }
+
+    /**
+     * Collect the distinct IDs of bricks directly above or below the given brick into
+     * the scratch buffer; returns how many were found.
+     */
+    private int collectNeighbours(int id) {
+        int x = store.getX(id), y = store.getY(id), z = store.getZ(id);
+        int w = store.getActualWidth(id), l = store.getActualLength(id);
+        int count = collectLayer(0, x, y + store.getType(id).getHeight(), z, w, l);
+        return y > 0 ? collectLayer(count, x, y - 1, z, w, l) : count;
+    }
+
+    /**
+     * Add the bricks occupying a footprint in one layer, skipping empty chunk regions via the occupancy bits.
+     */
+    private int collectLayer(int count, int x, int y, int z, int w, int l) {
+        int cy = y >> SHIFT, ly = y & MASK;
+        for (int cz = z >> SHIFT; cz <= (z + l - 1) >> SHIFT; cz++) {
+            int lz0 = Math.max(z - (cz << SHIFT), 0), lz1 = Math.min(z + l - (cz << SHIFT), MASK + 1);
+            for (int cx = x >> SHIFT; cx <= (x + w - 1) >> SHIFT; cx++) {
+                int lx0 = Math.max(x - (cx << SHIFT), 0), lx1 = Math.min(x + w - (cx << SHIFT), MASK + 1);
+                Chunk chunk = chunks.get(cx, cy, cz);
+                if (chunk == null || chunk.isEmpty(lx0, ly, lz0, lx1, ly + 1, lz1)) {
+                    continue;
+                }
+                for (int lz = lz0; lz < lz1; lz++) {
+                    for (int lx = lx0; lx < lx1; lx++) {
+                        count = addDistinct(count, chunk.get(lx, ly, lz));
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private int addDistinct(int count, int neighbour) {
+        if (neighbour == BrickStore.NO_BRICK || count > 0 && scratch[count - 1] == neighbour) {
+            return count;
+        }
+        for (int i = 0; i < count; i++) {
+            if (scratch[i] == neighbour) {
+                return count;
+            }
+        }
+        if (count == scratch.length) {
+            scratch = Arrays.copyOf(scratch, count * 2);
+        }
+        scratch[count] = neighbour;
+        return count + 1;
+    }
+
+    private void union(int a, int b) {
+        int la = label[a], lb = label[b];
+        if (la == lb) {
+            return;
+        }
+        // Relabel the smaller component into the larger one
+        if (size[la] < size[lb]) {
+            int t = la; la = lb; lb = t;
+        }
+        int start = head[lb];
+        int member = start;
+        do {
+            label[member] = la;
+            member = next[member];
+        } while (member != start);
+
+        // Splice the two circular lists together
+        int headA = head[la], tailA = prev[headA], tailB = prev[start];
+        next[tailA] = start;
+        prev[start] = tailA;
+        next[tailB] = headA;
+        prev[headA] = tailB;
+
+        size[la] += size[lb];
+        grounded[la] += grounded[lb];
+        releaseLabel(lb);
+    }
+
+    /**
+     * Interleaved BFS from the removed brick's neighbours to find the pieces its component fell into.
+     */
+    private void split(int own, int[] starts, int k) {
+        epoch++;
+        ensureIdCapacity(store.getIdLimit());
+        int[][] queues = new int[k][];
+        int[] heads = new int[k];
+        int[] tails = new int[k];
+        int[] group = new int[k]; // Union-find over search indices
+        for (int i = 0; i < k; i++) {
+            queues[i] = new int[8];
+            queues[i][0] = starts[i];
+            tails[i] = 1;
+            group[i] = i;
+            seenBy[starts[i]] = i;
+            seenEpoch[starts[i]] = epoch;
+        }
+
+        int[] buffer = new int[32];
+        while (true) {
+            // Stop once at most one group still has a frontier: everything else has closed off
+            int openGroups = 0;
+            int distinctGroups = 0;
+            for (int i = 0; i < k; i++) {
+                if (findGroup(group, i) == i) {
+                    distinctGroups++;
+                    if (isOpen(group, heads, tails, i, k)) {
+                        openGroups++;
+                    }
+                }
+            }
+            if (distinctGroups <= 1 || openGroups <= 1) {
+                break;
+            }
+
+            for (int i = 0; i < k; i++) {
+                if (heads[i] == tails[i]) {
+                    continue;
+                }
+                int u = queues[i][heads[i]++];
+                int count = collectNeighbours(u);
+                if (count > buffer.length) {
+                    buffer = new int[scratch.length];
+                }
+                System.arraycopy(scratch, 0, buffer, 0, count);
+                for (int n = 0; n < count; n++) {
+                    int v = buffer[n];
+                    if (seenEpoch[v] == epoch) {
+                        int gi = findGroup(group, i), gj = findGroup(group, seenBy[v]);
+                        if (gi != gj) {
+                            group[Math.max(gi, gj)] = Math.min(gi, gj);
+                        }
+                    } else {
+                        seenEpoch[v] = epoch;
+                        seenBy[v] = i;
+                        if (tails[i] == queues[i].length) {
+                            queues[i] = Arrays.copyOf(queues[i], tails[i] * 2);
+                        }
+                        queues[i][tails[i]++] = v;
+                    }
+                }
+            }
+        }
+
+        // Closed groups become new components; if every group closed, the largest keeps the old label
+        int keep = -1;
+        int keepSize = -1;
+        for (int i = 0; i < k; i++) {
+            if (findGroup(group, i) != i) {
+                continue;
+            }
+            int visited = 0;
+            for (int j = 0; j < k; j++) {
+                if (findGroup(group, j) == i) {
+                    visited += tails[j];
+                }
+            }
+            if (isOpen(group, heads, tails, i, k)) {
+                visited = Integer.MAX_VALUE;
+            }
+            if (visited > keepSize) {
+                keep = i;
+                keepSize = visited;
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            if (findGroup(group, i) != i || i == keep) {
+                continue;
+            }
+            int piece = newLabel();
+            size[piece] = 0;
+            grounded[piece] = 0;
+            head[piece] = BrickStore.NO_BRICK;
+            for (int j = 0; j < k; j++) {
+                if (findGroup(group, j) != i) {
+                    continue;
+                }
+                for (int q = 0; q < tails[j]; q++) {
+                    move(queues[j][q], own, piece);
+                }
+            }
+        }
+    }
+
+    private static int findGroup(int[] group, int i) {
+        while (group[i] != i) {
+            group[i] = group[group[i]];
+            i = group[i];
+        }
+        return i;
+    }
+
+    private static boolean isOpen(int[] group, int[] heads, int[] tails, int root, int k) {
+        for (int j = 0; j < k; j++) {
+            if (heads[j] != tails[j] && findGroup(group, j) == root) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move a brick from one component's list to another's.
+     */
+    private void move(int id, int from, int to) {
+        unlink(id, from);
+        if (store.getY(id) == 0) {
+            grounded[from]--;
+            grounded[to]++;
+        }
+        label[id] = to;
+        if (head[to] == BrickStore.NO_BRICK) {
+            head[to] = id;
+            next[id] = id;
+            prev[id] = id;
+        } else {
+            int h = head[to], tail = prev[h];
+            next[tail] = id;
+            prev[id] = tail;
+            next[id] = h;
+            prev[h] = id;
+        }
+        size[to]++;
+    }
+
+    private void unlink(int id, int own) {
+        if (head[own] == id) {
+            head[own] = next[id] != id ? next[id] : BrickStore.NO_BRICK;
+        }
+        next[prev[id]] = next[id];
+        prev[next[id]] = prev[id];
+        size[own]--;
+    }
+
+    private int newLabel() {
+        componentCount++;
+        if (freeLabelCount > 0) {
+            return freeLabels[--freeLabelCount];
+        }
+        if (labelLimit == size.length) {
+            size = Arrays.copyOf(size, labelLimit * 2);
+            grounded = Arrays.copyOf(grounded, labelLimit * 2);
+            head = Arrays.copyOf(head, labelLimit * 2);
+        }
+        return labelLimit++;
+    }
+
+    private void releaseLabel(int l) {
+        componentCount--;
+        if (freeLabelCount == freeLabels.length) {
+            freeLabels = Arrays.copyOf(freeLabels, freeLabelCount * 2);
+        }
+        freeLabels[freeLabelCount++] = l;
+    }
+
+    private void ensureIdCapacity(int limit) {
+        if (limit > label.length) {
+            int capacity = Math.max(limit, label.length * 2);
+            label = Arrays.copyOf(label, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            seenBy = Arrays.copyOf(seenBy, capacity);
+            seenEpoch = Arrays.copyOf(seenEpoch, capacity);
+        }
+    }
+}
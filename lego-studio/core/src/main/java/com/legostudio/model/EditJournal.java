@@ -0,0 +1,272 @@
+package com.legostudio.model;
+
+/**
+ * Undo/redo history of a {@link BrickWorld} as a ring buffer of fixed-size
+ * primitive records.
+ *
+ * Each record is four ints: a header packing the operation, type, colors and
+ * rotation, then the brick origin. Bricks are addressed by origin rather than
+ * ID because IDs are recycled and change when an undo re-adds a brick.
+ * Records up to a COMMIT marker form one transaction, which undoes and redoes
+ * as a single step. A clear is journaled as a CLEAR marker followed by a
+ * REMOVE for every brick: undo re-adds them, redo clears in one go. When the
+ * buffer is full the oldest transactions are dropped; a transaction larger
+ * than the whole buffer cannot be undone.
+ */
+final class EditJournal {
+    static final int RECORD_BYTES = 16;
+
+    static final int ADD = 1;
+    static final int REMOVE = 2;
+    static final int RECOLOR = 3;
+    static final int COMMIT = 4;
+    static final int CLEAR = 5;
+
+    private static final int INTS = RECORD_BYTES / Integer.BYTES;
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final BrickColor[] COLORS = BrickColor.values();
+    private static final int INITIAL_SLOTS = 1024;
+
+    private int[] ring;
+    private int slots;    // Records the ring holds now; doubles on demand up to capacity
+    private int capacity; // In records
+
+    // Monotonic record positions: [head, top) can be undone, [top, end) redone
+    private long head, top, end;
+    private long transactionStart;
+    private int depth;
+    private boolean overflowed; // The open transaction no longer fits and will be discarded
+    private boolean paused;     // Replaying history; mutations are not recorded
+
+    EditJournal(long budgetBytes) {
+        setBudget(budgetBytes);
+    }
+
+    /**
+     * Set the most the buffer may grow to, discarding all history. Memory is
+     * taken as history accumulates, not up front.
+     */
+    void setBudget(long budgetBytes) {
+        if (budgetBytes < 2L * RECORD_BYTES || budgetBytes / RECORD_BYTES > Integer.MAX_VALUE / INTS) {
+            throw new IllegalArgumentException("Journal budget out of range: " + budgetBytes);
+        }
+        capacity = (int) (budgetBytes / RECORD_BYTES);
+        slots = Math.min(capacity, INITIAL_SLOTS);
+        ring = new int[slots * INTS];
+        clear();
+    }
+
+    long getBudget() {
+        return (long) capacity * RECORD_BYTES;
+    }
+
+    /**
+     * Bytes held by undoable and redoable records.
+     */
+    long getUsedBytes() {
+        return (end - head) * RECORD_BYTES;
+    }
+
+    boolean canUndo() {
+        return top > head;
+    }
+
+    boolean canRedo() {
+        return end > top;
+    }
+
+    boolean isInTransaction() {
+        return depth > 0;
+    }
+
+    void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    void clear() {
+        head = top = end = transactionStart = 0;
+        overflowed = false;
+    }
+
+    void begin() {
+        if (depth++ == 0) {
+            transactionStart = top;
+            overflowed = false;
+        }
+    }
+
+    void end() {
+        if (depth == 0) {
+            throw new IllegalStateException("end() without matching begin()");
+        }
+        if (--depth == 0) {
+            commit();
+        }
+    }
+
+    void recordAdd(BrickStore store, int id) {
+        append(header(ADD, store.getType(id), store.getColor(id), store.getColor(id), store.getRotation(id)),
+                store.getX(id), store.getY(id), store.getZ(id));
+    }
+
+    void recordRemove(BrickStore store, int id) {
+        append(header(REMOVE, store.getType(id), store.getColor(id), store.getColor(id), store.getRotation(id)),
+                store.getX(id), store.getY(id), store.getZ(id));
+    }
+
+    void recordRecolor(BrickStore store, int id, BrickColor newColor) {
+        append(header(RECOLOR, store.getType(id), store.getColor(id), newColor, store.getRotation(id)),
+                store.getX(id), store.getY(id), store.getZ(id));
+    }
+
+    /**
+     * Record that every brick in the store is about to be cleared.
+     */
+    void recordClear(BrickStore store) {
+        if (paused) {
+            return;
+        }
+        begin();
+        append(CLEAR, 0, 0, 0);
+        store.forEach((id, type, color, x, y, z, rotation) -> recordRemove(store, id));
+        end();
+    }
+
+    /**
+     * Step back over the latest transaction, feeding its records newest first to the visitor.
+     */
+    boolean undo(RecordVisitor visitor) {
+        if (!canUndo()) {
+            return false;
+        }
+        long start = top - 1; // The transaction's COMMIT marker
+        while (start > head && op(start - 1) != COMMIT) {
+            start--;
+        }
+        for (long p = top - 2; p >= start; p--) {
+            visit(p, visitor);
+        }
+        top = start;
+        return true;
+    }
+
+    /**
+     * Step forward over the next undone transaction, feeding its records oldest first to the visitor.
+     */
+    boolean redo(RecordVisitor visitor) {
+        if (!canRedo()) {
+            return false;
+        }
+        long p = top;
+        while (op(p) != COMMIT) {
+            int op = op(p);
+            visit(p++, visitor);
+            if (op == CLEAR) {
+                // The clear's own REMOVE records are covered by the marker
+                while (op(p) == REMOVE) {
+                    p++;
+                }
+            }
+        }
+        top = p + 1;
+        return true;
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(int op, BrickType type, BrickColor oldColor, BrickColor newColor,
+                   int x, int y, int z, int rotation);
+    }
+
+    private void commit() {
+        if (!overflowed && top > transactionStart) {
+            append(COMMIT, 0, 0, 0);
+        }
+        if (overflowed) {
+            // Too large to keep; the earlier history was already evicted to make room
+            head = top = end = transactionStart;
+            overflowed = false;
+        }
+    }
+
+    private void commitIfIdle() {
+        if (depth == 0) {
+            commit();
+            transactionStart = top;
+        }
+    }
+
+    private void append(int header, int x, int y, int z) {
+        if (overflowed || paused) {
+            return;
+        }
+        if (depth == 0 && (header & 7) != COMMIT) {
+            transactionStart = top;
+        }
+        end = top; // A new edit invalidates the redo history
+        if (top - head == slots) {
+            if (slots < capacity) {
+                grow();
+            } else {
+                evictOldest();
+                if (overflowed) {
+                    return;
+                }
+            }
+        }
+        int base = slot(top) * INTS;
+        ring[base] = header;
+        ring[base + 1] = x;
+        ring[base + 2] = y;
+        ring[base + 3] = z;
+        end = ++top;
+        if ((header & 7) != COMMIT) {
+            commitIfIdle();
+        }
+    }
+
+    private void grow() {
+        int grownSlots = (int) Math.min(capacity, 2L * slots);
+        int[] grown = new int[grownSlots * INTS];
+        for (long p = head; p < end; p++) {
+            System.arraycopy(ring, slot(p) * INTS, grown, (int) (p % grownSlots) * INTS, INTS);
+        }
+        ring = grown;
+        slots = grownSlots;
+    }
+
+    private void evictOldest() {
+        long p = head;
+        while (p < transactionStart && op(p) != COMMIT) {
+            p++;
+        }
+        if (p >= transactionStart) {
+            // Only the open transaction is left and it fills the buffer
+            overflowed = true;
+            head = top = end = transactionStart;
+            return;
+        }
+        head = p + 1;
+    }
+
+    private void visit(long p, RecordVisitor visitor) {
+        int base = slot(p) * INTS;
+        int header = ring[base];
+        visitor.visit(header & 7, TYPES[(header >>> 3) & 0xFF],
+                COLORS[(header >>> 11) & 0xFF], COLORS[(header >>> 19) & 0xFF],
+                ring[base + 1], ring[base + 2], ring[base + 3], ((header >>> 27) & 3) * 90);
+    }
+
+    private int op(long p) {
+        return ring[slot(p) * INTS] & 7;
+    }
+
+    private int slot(long p) {
+        return (int) (p % slots);
+    }
+
+    private static int header(int op, BrickType type, BrickColor oldColor, BrickColor newColor, int rotation) {
+        return op | type.ordinal() << 3 | oldColor.ordinal() << 11 | newColor.ordinal() << 19
+                | (rotation / 90) << 27;
+    }
+}
@@ -0,0 +1,70 @@
+package com.legostudio.model;
+
+import static com.legostudio.model.Chunk.MASK;
+import static com.legostudio.model.Chunk.SHIFT;
+import static com.legostudio.model.Chunk.SIZE;
+
+/**
+ * Per-column top-surface heights in plates, stored in sparse 16x16 tiles.
+ * A column with no bricks has height 0 (the baseplate). Tiles are allocated
+ * when a column first rises and released when all their columns drop back to 0.
+ */
+final class HeightMap {
+    private static final class Tile {
+        final int[] heights = new int[SIZE * SIZE];
+        int raisedColumns;
+    }
+
+    private final ChunkMap<Tile> tiles = new ChunkMap<>();
+
+    int get(int x, int z) {
+        Tile tile = tiles.get(x >> SHIFT, 0, z >> SHIFT);
+        return tile == null ? 0 : tile.heights[((z & MASK) << SHIFT) | (x & MASK)];
+    }
+
+    void set(int x, int z, int height) {
+        Tile tile = height > 0
+                ? tiles.getOrCreate(x >> SHIFT, 0, z >> SHIFT, (tx, ty, tz) -> new Tile())
+                : tiles.get(x >> SHIFT, 0, z >> SHIFT);
+        if (tile == null) {
+            return;
+        }
+        int index = ((z & MASK) << SHIFT) | (x & MASK);
+        int previous = tile.heights[index];
+        tile.heights[index] = height;
+        if (previous == 0 && height > 0) {
+            tile.raisedColumns++;
+        } else if (previous > 0 && height == 0 && --tile.raisedColumns == 0) {
+            tiles.remove(x >> SHIFT, 0, z >> SHIFT);
+        }
+    }
+
+    /**
+     * Lift every column of the footprint that is lower than the given height, one tile at a time.
+     */
+    void raise(int x, int z, int w, int l, int height) {
+        for (int tz = z >> SHIFT; tz <= (z + l - 1) >> SHIFT; tz++) {
+            int z0 = Math.max(z, tz << SHIFT), z1 = Math.min(z + l, (tz + 1) << SHIFT);
+            for (int tx = x >> SHIFT; tx <= (x + w - 1) >> SHIFT; tx++) {
+                int x0 = Math.max(x, tx << SHIFT), x1 = Math.min(x + w, (tx + 1) << SHIFT);
+                Tile tile = tiles.getOrCreate(tx, 0, tz, (cx, cy, cz) -> new Tile());
+                for (int cz = z0; cz < z1; cz++) {
+                    int row = (cz & MASK) << SHIFT;
+                    for (int cx = x0; cx < x1; cx++) {
+                        int index = row | (cx & MASK);
+                        if (tile.heights[index] < height) {
+                            if (tile.heights[index] == 0) {
+                                tile.raisedColumns++;
+                            }
+                            tile.heights[index] = height;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    void clear() {
+        tiles.clear();
+    }
+}
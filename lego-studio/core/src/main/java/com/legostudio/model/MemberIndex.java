@@ -0,0 +1,54 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+
+/**
+ * Partitions brick IDs by a small integer key such as a color or type ordinal.
+ * Each key holds a dense ID list, and every ID remembers its position in its
+ * list, so add, remove and count are O(1) and listing a key costs only its members.
+ */
+final class MemberIndex {
+    private final int[][] members;
+    private final int[] counts;
+    private int[] positions = new int[64]; // Brick ID -> index within its key's list
+
+    MemberIndex(int keys) {
+        members = new int[keys][];
+        counts = new int[keys];
+        for (int key = 0; key < keys; key++) {
+            members[key] = new int[8];
+        }
+    }
+
+    void add(int key, int id) {
+        if (id >= positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(id + 1, positions.length * 2));
+        }
+        int[] list = members[key];
+        if (counts[key] == list.length) {
+            list = members[key] = Arrays.copyOf(list, list.length * 2);
+        }
+        positions[id] = counts[key];
+        list[counts[key]++] = id;
+    }
+
+    void remove(int key, int id) {
+        int[] list = members[key];
+        int index = positions[id];
+        int last = list[--counts[key]];
+        list[index] = last;
+        positions[last] = index;
+    }
+
+    int count(int key) {
+        return counts[key];
+    }
+
+    int[] toArray(int key) {
+        return Arrays.copyOf(members[key], counts[key]);
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+    }
+}
@@ -0,0 +1,66 @@
+package com.legostudio.model;
+
+/**
+ * Counters of the chunk pager, see {@link BrickWorld#setResidentBudget}.
+ */
+public final class PagingStats {
+    private final long budgetBytes;
+    private final int chunkCount;
+    private final int residentCount;
+    private final long pageIns;
+    private final long pageOuts;
+    private final long pageInNanos;
+    private final long maxPageInNanos;
+
+    PagingStats(long budgetBytes, int chunkCount, int residentCount, long pageIns, long pageOuts,
+                long pageInNanos, long maxPageInNanos) {
+        this.budgetBytes = budgetBytes;
+        this.chunkCount = chunkCount;
+        this.residentCount = residentCount;
+        this.pageIns = pageIns;
+        this.pageOuts = pageOuts;
+        this.pageInNanos = pageInNanos;
+        this.maxPageInNanos = maxPageInNanos;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Number of chunks whose brick IDs are in memory.
+     */
+    public int getResidentCount() {
+        return residentCount;
+    }
+
+    public long getPageIns() {
+        return pageIns;
+    }
+
+    /**
+     * Number of chunks written to the spill file. Clean chunks are dropped without writing.
+     */
+    public long getPageOuts() {
+        return pageOuts;
+    }
+
+    public double getAveragePageInMillis() {
+        return pageIns == 0 ? 0 : pageInNanos / 1e6 / pageIns;
+    }
+
+    public double getMaxPageInMillis() {
+        return maxPageInNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PagingStats[%d/%d chunks resident (%d MB budget), %d page-ins (avg %.3f ms, max %.3f ms), %d page-outs]",
+                residentCount, chunkCount, budgetBytes >> 20, pageIns, getAveragePageInMillis(),
+                getMaxPageInMillis(), pageOuts);
+    }
+}
@@ -0,0 +1,203 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static com.legostudio.model.BrickStore.NO_BRICK;
+
+/**
+ * Validates a {@link Selection} against the world at a moving cursor position,
+ * for drawing a paste or move ghost every frame.
+ *
+ * The preview keeps the number of occupied world cells under the selection at
+ * its current position. When the position steps by one cell along an axis,
+ * only the selection's cells on the leading face gain coverage and only those
+ * on the trailing face lose it, so the count is updated by looking up those
+ * boundary cells in the world's occupancy chunks rather than every cell of
+ * every brick. A larger jump is walked as unit steps while that stays cheaper
+ * than a full recount; a change to the world forces a recount.
+ *
+ * When previewing a move, cells held by the selection's own source bricks
+ * count as free, since those bricks leave before the selection lands.
+ */
+public final class PastePreview {
+    private final BrickWorld world;
+    private final Selection selection;
+    private final boolean moving;
+
+    // Cells of the selection as (x, y, z) triples relative to its minimum corner
+    private final int[] cells;
+    // Per axis: cells whose neighbour in the + direction (front) or - direction (back) is outside the selection
+    private final int[][] front = new int[3][];
+    private final int[][] back = new int[3][];
+
+    private int x, y, z;
+    private boolean positioned;
+    private long version;
+    private int conflicts;
+
+    public PastePreview(BrickWorld world, Selection selection, boolean moving) {
+        this.world = world;
+        this.selection = selection;
+        this.moving = moving;
+
+        int sizeX = selection.getSizeX(), sizeY = selection.getSizeY(), sizeZ = selection.getSizeZ();
+        BitSet occupied = new BitSet();
+        int[] count = {0};
+        selection.forEachBrick((id, type, color, bx, by, bz, rotation) -> {
+            int w = type.getActualWidth(rotation), l = type.getActualLength(rotation);
+            for (int cy = by; cy < by + type.getHeight(); cy++) {
+                for (int cz = bz; cz < bz + l; cz++) {
+                    int row = (cy * sizeZ + cz) * sizeX;
+                    occupied.set(row + bx, row + bx + w);
+                }
+            }
+            count[0] += w * l * type.getHeight();
+        });
+
+        cells = new int[count[0] * 3];
+        int n = 0;
+        int[] frontCount = new int[3], backCount = new int[3];
+        for (int axis = 0; axis < 3; axis++) {
+            front[axis] = new int[48];
+            back[axis] = new int[48];
+        }
+        int layer = sizeX * sizeZ;
+        for (int i = occupied.nextSetBit(0); i >= 0; i = occupied.nextSetBit(i + 1)) {
+            int cx = i % sizeX, cz = (i / sizeX) % sizeZ, cy = i / layer;
+            boolean[] frontFace = {cx == sizeX - 1 || !occupied.get(i + 1),
+                    cy == sizeY - 1 || !occupied.get(i + layer), cz == sizeZ - 1 || !occupied.get(i + sizeX)};
+            boolean[] backFace = {cx == 0 || !occupied.get(i - 1),
+                    cy == 0 || !occupied.get(i - layer), cz == 0 || !occupied.get(i - sizeX)};
+            for (int axis = 0; axis < 3; axis++) {
+                if (frontFace[axis]) {
+                    front[axis] = put(front[axis], frontCount[axis], cx, cy, cz);
+                    frontCount[axis] += 3;
+                }
+                if (backFace[axis]) {
+                    back[axis] = put(back[axis], backCount[axis], cx, cy, cz);
+                    backCount[axis] += 3;
+                }
+            }
+            put(cells, n, cx, cy, cz);
+            n += 3;
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            front[axis] = Arrays.copyOf(front[axis], frontCount[axis]);
+            back[axis] = Arrays.copyOf(back[axis], backCount[axis]);
+        }
+    }
+
+    public Selection getSelection() {
+        return selection;
+    }
+
+    public boolean isMoving() {
+        return moving;
+    }
+
+    public int getX() { return x; }
+    public int getY() { return y; }
+    public int getZ() { return z; }
+
+    /**
+     * Place the selection's minimum corner at (x, y, z) and revalidate.
+     *
+     * @return True if the selection can be placed there
+     */
+    public boolean moveTo(int x, int y, int z) {
+        if (!positioned || version != world.getVersion()) {
+            recount(x, y, z);
+            return isValid();
+        }
+        int[] delta = {x - this.x, y - this.y, z - this.z};
+        long stepCost = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            stepCost += (long) Math.abs(delta[axis]) * (front[axis].length + back[axis].length);
+        }
+        if (stepCost >= cells.length) {
+            recount(x, y, z);
+            return isValid();
+        }
+        for (int axis = 0; axis < 3; axis++) {
+            int sign = Integer.signum(delta[axis]);
+            for (int i = Math.abs(delta[axis]); i > 0; i--) {
+                int dx = axis == 0 ? sign : 0, dy = axis == 1 ? sign : 0, dz = axis == 2 ? sign : 0;
+                int[] entering = sign > 0 ? front[axis] : back[axis];
+                int[] leaving = sign > 0 ? back[axis] : front[axis];
+                conflicts += countOccupied(entering, this.x + dx, this.y + dy, this.z + dz)
+                        - countOccupied(leaving, this.x, this.y, this.z);
+                this.x += dx;
+                this.y += dy;
+                this.z += dz;
+            }
+        }
+        return isValid();
+    }
+
+    /**
+     * True if the selection fits at the current position: inside the world and on no other brick.
+     */
+    public boolean isValid() {
+        return positioned && conflicts == 0 && isInBounds();
+    }
+
+    /**
+     * Number of cells under the selection that are already taken.
+     */
+    public int getConflictCount() {
+        return conflicts;
+    }
+
+    /**
+     * Place the selection at the current position: pastes a copy, or moves the source bricks.
+     */
+    public BatchResult commit() {
+        if (!positioned) {
+            throw new IllegalStateException("Preview has no position yet");
+        }
+        return isMoving() ? world.moveSelection(selection, x, y, z) : world.pasteSelection(selection, x, y, z);
+    }
+
+    private boolean isInBounds() {
+        if (y < 0) {
+            return false;
+        }
+        int gridSize = world.getGridSize();
+        return !world.isBounded() || (x >= 0 && x + selection.getSizeX() <= gridSize
+                && z >= 0 && z + selection.getSizeZ() <= gridSize);
+    }
+
+    private void recount(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        conflicts = countOccupied(cells, x, y, z);
+        version = world.getVersion();
+        positioned = true;
+    }
+
+    private int countOccupied(int[] list, int ox, int oy, int oz) {
+        int count = 0;
+        for (int i = 0; i < list.length; i += 3) {
+            int id = world.getBrickIdAt(ox + list[i], oy + list[i + 1], oz + list[i + 2]);
+            if (id != NO_BRICK && !(moving && selection.contains(id))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Store a cell triple at offset n, growing the list if needed.
+     */
+    private static int[] put(int[] list, int n, int x, int y, int z) {
+        if (n + 3 > list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+        }
+        list[n] = x;
+        list[n + 1] = y;
+        list[n + 2] = z;
+        return list;
+    }
+}
@@ -0,0 +1,235 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Persistent hash array mapped trie from packed chunk keys to values.
+ *
+ * Updates copy only the path from the root to the changed entry and share
+ * everything else, so older roots stay valid and unchanged. Nodes carry the
+ * owner token they were created under: an update made with the same token
+ * mutates those nodes in place instead of copying them. Callers switch to a
+ * fresh token whenever they hand a root to other threads, after which nodes
+ * reachable from it are never written again.
+ *
+ * Keys are scrambled with a bijective mix, so distinct keys always diverge
+ * within the 64 hash bits and no collision nodes are needed.
+ */
+final class PersistentChunkMap<V> {
+    private static final int BITS = 5;
+    private static final int WIDTH_MASK = (1 << BITS) - 1;
+
+    private static final class Node {
+        int bitmap;
+        Object[] slots; // Node or Entry, in bitmap order
+        final Object owner;
+
+        Node(int bitmap, Object[] slots, Object owner) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+            this.owner = owner;
+        }
+    }
+
+    private static final class Entry {
+        final long key;
+        final Object value;
+
+        Entry(long key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final PersistentChunkMap<?> EMPTY = new PersistentChunkMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentChunkMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentChunkMap<V> empty() {
+        return (PersistentChunkMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        long hash = hash(key);
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            int bit = 1 << ((int) (hash >>> shift) & WIDTH_MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Entry entry) {
+                return entry.key == key ? (V) entry.value : null;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    /**
+     * Map key to value, reusing nodes created under the given owner token.
+     */
+    PersistentChunkMap<V> put(long key, V value, Object owner) {
+        boolean[] added = new boolean[1];
+        Node newRoot = put(root == null ? new Node(0, new Object[0], owner) : root,
+                0, hash(key), key, value, owner, added);
+        return newRoot == root && !added[0] ? this : new PersistentChunkMap<>(newRoot, size + (added[0] ? 1 : 0));
+    }
+
+    /**
+     * Remove key, reusing nodes created under the given owner token.
+     */
+    PersistentChunkMap<V> remove(long key, Object owner) {
+        if (root == null) {
+            return this;
+        }
+        Object result = remove(root, 0, hash(key), key, owner);
+        if (result == root) {
+            return this;
+        }
+        // The root never collapses, so the result is a node
+        return size == 1 ? empty() : new PersistentChunkMap<>((Node) result, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<V> action) {
+        if (root != null) {
+            forEach(root, (Consumer<Object>) action);
+        }
+    }
+
+    private static void forEach(Node node, Consumer<Object> action) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Entry entry) {
+                action.accept(entry.value);
+            } else {
+                forEach((Node) slot, action);
+            }
+        }
+    }
+
+    private static Node put(Node node, int shift, long hash, long key, Object value, Object owner, boolean[] added) {
+        int bit = 1 << ((int) (hash >>> shift) & WIDTH_MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = new Entry(key, value);
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return update(node, node.bitmap | bit, slots, owner);
+        }
+
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Entry entry) {
+            if (entry.key == key) {
+                if (entry.value == value) {
+                    return node;
+                }
+                replacement = new Entry(key, value);
+            } else {
+                // Push both entries one level down; they diverge somewhere in the remaining bits
+                added[0] = true;
+                Node child = new Node(0, new Object[0], owner);
+                child = put(child, shift + BITS, hash(entry.key), entry.key, entry.value, owner, new boolean[1]);
+                replacement = put(child, shift + BITS, hash, key, value, owner, new boolean[1]);
+            }
+        } else {
+            replacement = put((Node) slot, shift + BITS, hash, key, value, owner, added);
+            if (replacement == slot) {
+                return node;
+            }
+        }
+        return set(node, index, replacement, owner);
+    }
+
+    /**
+     * @return Node itself if the key is absent; otherwise the node without the key,
+     *         an Entry if only one entry is left to pull up, or null if nothing is left
+     */
+    private static Object remove(Node node, int shift, long hash, long key, Object owner) {
+        int bit = 1 << ((int) (hash >>> shift) & WIDTH_MASK);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Entry entry) {
+            if (entry.key != key) {
+                return node;
+            }
+            replacement = null;
+        } else {
+            replacement = remove((Node) slot, shift + BITS, hash, key, owner);
+            if (replacement == slot) {
+                return node;
+            }
+        }
+
+        if (replacement != null) {
+            // A lone entry left in a child node moves up as far as it can
+            if (replacement instanceof Entry && node.slots.length == 1 && shift > 0) {
+                return replacement;
+            }
+            return set(node, index, replacement, owner);
+        }
+        if (shift > 0) {
+            if (node.slots.length == 1) {
+                return null;
+            }
+            if (node.slots.length == 2 && node.slots[1 - index] instanceof Entry) {
+                return node.slots[1 - index];
+            }
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        return update(node, node.bitmap & ~bit, slots, owner);
+    }
+
+    private static Node set(Node node, int index, Object slot, Object owner) {
+        if (node.owner == owner) {
+            node.slots[index] = slot;
+            return node;
+        }
+        Object[] slots = Arrays.copyOf(node.slots, node.slots.length);
+        slots[index] = slot;
+        return new Node(node.bitmap, slots, owner);
+    }
+
+    private static Node update(Node node, int bitmap, Object[] slots, Object owner) {
+        if (node.owner == owner) {
+            node.bitmap = bitmap;
+            node.slots = slots;
+            return node;
+        }
+        return new Node(bitmap, slots, owner);
+    }
+
+    /**
+     * Bijective 64-bit mix (MurmurHash3 finalizer).
+     */
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
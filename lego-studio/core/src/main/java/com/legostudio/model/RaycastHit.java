@@ -0,0 +1,52 @@
+package com.legostudio.model;
+
+/**
+ * Result of {@link BrickWorld#raycast}: the brick that was hit, the grid cell
+ * the ray entered it through, and the normal of the face it crossed.
+ */
+public final class RaycastHit {
+    private final int brickId;
+    private final int cellX, cellY, cellZ;
+    private final int normalX, normalY, normalZ;
+    private final float distance;
+
+    RaycastHit(int brickId, int cellX, int cellY, int cellZ,
+               int normalX, int normalY, int normalZ, float distance) {
+        this.brickId = brickId;
+        this.cellX = cellX;
+        this.cellY = cellY;
+        this.cellZ = cellZ;
+        this.normalX = normalX;
+        this.normalY = normalY;
+        this.normalZ = normalZ;
+        this.distance = distance;
+    }
+
+    public int getBrickId() { return brickId; }
+
+    // Grid cell of the hit brick that the ray entered
+    public int getCellX() { return cellX; }
+    public int getCellY() { return cellY; }
+    public int getCellZ() { return cellZ; }
+
+    // Unit normal of the crossed face; all zero if the ray started inside the brick
+    public int getNormalX() { return normalX; }
+    public int getNormalY() { return normalY; }
+    public int getNormalZ() { return normalZ; }
+
+    // Empty cell in front of the hit face, where a brick placed against it would go
+    public int getAdjacentX() { return cellX + normalX; }
+    public int getAdjacentY() { return cellY + normalY; }
+    public int getAdjacentZ() { return cellZ + normalZ; }
+
+    /**
+     * Distance along the ray to the hit face, in world units.
+     */
+    public float getDistance() { return distance; }
+
+    @Override
+    public String toString() {
+        return String.format("RaycastHit[brick=%d, cell=(%d,%d,%d), normal=(%d,%d,%d), distance=%.2f]",
+                brickId, cellX, cellY, cellZ, normalX, normalY, normalZ, distance);
+    }
+}
@@ -0,0 +1,146 @@
+package com.legostudio.model;
+
+import java.util.BitSet;
+
+/**
+ * A group of bricks captured from a {@link BrickWorld} to move, rotate or copy as a unit.
+ *
+ * Brick records are kept relative to the minimum corner of the group's
+ * bounding box and carry the ID of the world brick they were taken from.
+ * Selections are immutable: {@link #rotated()} returns a new selection with
+ * the same source bricks. A selection goes stale once one of its source
+ * bricks is removed or changed; see {@link BrickWorld#isCurrent(Selection)}.
+ */
+public final class Selection {
+    private final BrickBatch bricks; // Relative to (0, 0, 0), IDs of the source bricks
+    private final BrickBatch sources; // The source bricks as captured, in world coordinates
+    private final BitSet sourceIds;
+    private final int originX, originY, originZ; // Minimum corner of the sources
+    private final int sizeX, sizeY, sizeZ;
+    private final int quarterTurns;
+
+    private Selection(BrickBatch bricks, BrickBatch sources, BitSet sourceIds,
+                      int originX, int originY, int originZ,
+                      int sizeX, int sizeY, int sizeZ, int quarterTurns) {
+        this.bricks = bricks;
+        this.sources = sources;
+        this.sourceIds = sourceIds;
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.quarterTurns = quarterTurns;
+    }
+
+    /**
+     * Capture the given stored bricks. IDs must be distinct and present in the store.
+     */
+    static Selection capture(BrickStore store, int[] ids) {
+        BrickBatch sources = new BrickBatch(ids.length);
+        BitSet sourceIds = new BitSet(store.getIdLimit());
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int id : ids) {
+            int x = store.getX(id), y = store.getY(id), z = store.getZ(id);
+            sources.add(id, store.getType(id), store.getColor(id), x, y, z, store.getRotation(id));
+            sourceIds.set(id);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x + store.getActualWidth(id));
+            maxY = Math.max(maxY, y + store.getType(id).getHeight());
+            maxZ = Math.max(maxZ, z + store.getActualLength(id));
+        }
+        if (ids.length == 0) {
+            minX = minY = minZ = maxX = maxY = maxZ = 0;
+        }
+
+        BrickBatch bricks = new BrickBatch(ids.length);
+        for (int i = 0; i < sources.size(); i++) {
+            bricks.add(sources.getId(i), sources.getType(i), sources.getColor(i),
+                    sources.getX(i) - minX, sources.getY(i) - minY, sources.getZ(i) - minZ, sources.getRotation(i));
+        }
+        return new Selection(bricks, sources, sourceIds, minX, minY, minZ,
+                maxX - minX, maxY - minY, maxZ - minZ, 0);
+    }
+
+    public int size() {
+        return bricks.size();
+    }
+
+    public boolean isEmpty() {
+        return bricks.isEmpty();
+    }
+
+    // Bounding box in studs (X/Z) and plates (Y)
+    public int getSizeX() { return sizeX; }
+    public int getSizeY() { return sizeY; }
+    public int getSizeZ() { return sizeZ; }
+
+    // Minimum corner of the source bricks in the world
+    public int getOriginX() { return originX; }
+    public int getOriginY() { return originY; }
+    public int getOriginZ() { return originZ; }
+
+    /**
+     * Quarter turns applied since capture, 0 to 3.
+     */
+    public int getQuarterTurns() {
+        return quarterTurns;
+    }
+
+    /**
+     * Check if the brick with the given ID is one of the source bricks.
+     */
+    public boolean contains(int id) {
+        return id >= 0 && sourceIds.get(id);
+    }
+
+    public int[] getSourceIds() {
+        int[] ids = new int[sources.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = sources.getId(i);
+        }
+        return ids;
+    }
+
+    /**
+     * Visit the bricks relative to the minimum corner; the ID is that of the source brick.
+     */
+    public void forEachBrick(BrickVisitor visitor) {
+        bricks.forEach(visitor);
+    }
+
+    /**
+     * Get the bricks with the minimum corner placed at (x, y, z), e.g. for {@link BrickWorld#addBricks}.
+     */
+    public BrickBatch placedAt(int x, int y, int z) {
+        BrickBatch placed = new BrickBatch(bricks.size());
+        bricks.forEach((id, type, color, bx, by, bz, rotation) ->
+                placed.add(id, type, color, x + bx, y + by, z + bz, rotation));
+        return placed;
+    }
+
+    /**
+     * Get this selection turned 90 degrees about the vertical axis, within its own bounding box.
+     */
+    public Selection rotated() {
+        BrickBatch turned = new BrickBatch(bricks.size());
+        // (x, z) -> (-z, x), shifted so the turned box starts at the origin again
+        bricks.forEach((id, type, color, x, y, z, rotation) ->
+                turned.add(id, type, color, sizeZ - z - type.getActualLength(rotation), y, x, rotation + 90));
+        return new Selection(turned, sources, sourceIds, originX, originY, originZ,
+                sizeZ, sizeY, sizeX, (quarterTurns + 1) & 3);
+    }
+
+    BrickBatch getSources() {
+        return sources;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Selection[%d bricks, %dx%dx%d]", size(), sizeX, sizeY, sizeZ);
+    }
+}
@@ -0,0 +1,181 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+
+import static com.legostudio.model.Chunk.MASK;
+import static com.legostudio.model.Chunk.SHIFT;
+
+/**
+ * Brick lookup by cell over a {@link WorldSnapshot}, from
+ * {@link WorldSnapshot#cellIndex()}.
+ *
+ * Each chunk is indexed the first time a cell in it is queried, from the
+ * records of the chunks that may hold the origin of a brick reaching into it;
+ * after that a lookup is one array read. Bricks found this way are numbered
+ * densely in the order they are first seen, so callers walking the snapshot
+ * can keep per-brick state in plain arrays. Not thread-safe: each background
+ * task takes its own index.
+ */
+public final class SnapshotCellIndex {
+    private static final int BRICK_INTS = 7; // id, x, y, z, rotated width, rotated length, height
+    private static final int[] EMPTY = new int[0];
+
+    private final WorldSnapshot snapshot;
+    private final int span, height;
+    private final ChunkMap<int[]> cells = new ChunkMap<>(); // Per chunk, brick number + 1 per cell; EMPTY if none
+    private int[] numbers = new int[64]; // Brick ID -> brick number + 1
+    private int[] bricks = new int[64 * BRICK_INTS];
+    private int count;
+    private int[] scratch = new int[32];
+
+    SnapshotCellIndex(WorldSnapshot snapshot, int span, int height) {
+        this.snapshot = snapshot;
+        this.span = span;
+        this.height = height;
+    }
+
+    /**
+     * Get the number of the brick covering the given cell, or -1 if the cell is empty.
+     */
+    public int find(int x, int y, int z) {
+        if (y < 0) {
+            return -1;
+        }
+        int[] grid = cells.getOrCreate(x >> SHIFT, y >> SHIFT, z >> SHIFT, this::indexChunk);
+        return grid == EMPTY ? -1 : grid[Chunk.index(x & MASK, y & MASK, z & MASK)] - 1;
+    }
+
+    /**
+     * Number of distinct bricks found so far; brick numbers are below this.
+     */
+    public int getBrickCount() {
+        return count;
+    }
+
+    public int getId(int brick) {
+        return bricks[brick * BRICK_INTS];
+    }
+
+    public int getX(int brick) {
+        return bricks[brick * BRICK_INTS + 1];
+    }
+
+    public int getY(int brick) {
+        return bricks[brick * BRICK_INTS + 2];
+    }
+
+    public int getZ(int brick) {
+        return bricks[brick * BRICK_INTS + 3];
+    }
+
+    public int getActualWidth(int brick) {
+        return bricks[brick * BRICK_INTS + 4];
+    }
+
+    public int getActualLength(int brick) {
+        return bricks[brick * BRICK_INTS + 5];
+    }
+
+    public int getHeight(int brick) {
+        return bricks[brick * BRICK_INTS + 6];
+    }
+
+    /**
+     * Get the numbers of the distinct bricks directly above or below the given one,
+     * the same stud connections {@link BrickWorld#getConnectedBricks} reports.
+     */
+    public int[] getConnected(int brick) {
+        int x = getX(brick), y = getY(brick), z = getZ(brick);
+        int w = getActualWidth(brick), l = getActualLength(brick);
+        int n = collectLayer(0, x, y + getHeight(brick), z, w, l);
+        if (y > 0) {
+            n = collectLayer(n, x, y - 1, z, w, l);
+        }
+        return Arrays.copyOf(scratch, n);
+    }
+
+    private int collectLayer(int n, int x, int y, int z, int w, int l) {
+        for (int cz = z; cz < z + l; cz++) {
+            for (int cx = x; cx < x + w; cx++) {
+                int brick = find(cx, y, cz);
+                if (brick < 0 || n > 0 && scratch[n - 1] == brick || contains(scratch, n, brick)) {
+                    continue;
+                }
+                if (n == scratch.length) {
+                    scratch = Arrays.copyOf(scratch, n * 2);
+                }
+                scratch[n++] = brick;
+            }
+        }
+        return n;
+    }
+
+    private static boolean contains(int[] values, int n, int value) {
+        for (int i = 0; i < n; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the cell grid of one chunk from the bricks whose origin lies close enough to reach into it.
+     */
+    private int[] indexChunk(int cx, int cy, int cz) {
+        int x0 = cx << SHIFT, y0 = cy << SHIFT, z0 = cz << SHIFT;
+        int[][] grid = {EMPTY};
+        for (int ny = Math.max(y0 - height + 1, 0) >> SHIFT; ny <= cy; ny++) {
+            for (int nz = (z0 - span + 1) >> SHIFT; nz <= cz; nz++) {
+                for (int nx = (x0 - span + 1) >> SHIFT; nx <= cx; nx++) {
+                    snapshot.forEachInChunk(nx, ny, nz, (id, type, color, x, y, z, rotation) -> {
+                        int w = type.getActualWidth(rotation), l = type.getActualLength(rotation);
+                        int ax = Math.max(x, x0), ay = Math.max(y, y0), az = Math.max(z, z0);
+                        int bx = Math.min(x + w, x0 + MASK + 1), by = Math.min(y + type.getHeight(), y0 + MASK + 1);
+                        int bz = Math.min(z + l, z0 + MASK + 1);
+                        if (ax >= bx || ay >= by || az >= bz) {
+                            return;
+                        }
+                        if (grid[0] == EMPTY) {
+                            grid[0] = new int[Chunk.VOLUME];
+                        }
+                        int number = number(id, x, y, z, w, l, type.getHeight()) + 1;
+                        for (int cellY = ay; cellY < by; cellY++) {
+                            for (int cellZ = az; cellZ < bz; cellZ++) {
+                                for (int cellX = ax; cellX < bx; cellX++) {
+                                    grid[0][Chunk.index(cellX - x0, cellY - y0, cellZ - z0)] = number;
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+        }
+        return grid[0];
+    }
+
+    /**
+     * Get the number of a brick, assigning the next one the first time it is seen.
+     */
+    private int number(int id, int x, int y, int z, int w, int l, int h) {
+        if (id >= numbers.length) {
+            numbers = Arrays.copyOf(numbers, Math.max(id + 1, numbers.length * 2));
+        }
+        if (numbers[id] > 0) {
+            return numbers[id] - 1;
+        }
+        if ((count + 1) * BRICK_INTS > bricks.length) {
+            bricks = Arrays.copyOf(bricks, bricks.length * 2);
+        }
+        int base = count * BRICK_INTS;
+        bricks[base] = id;
+        bricks[base + 1] = x;
+        bricks[base + 2] = y;
+        bricks[base + 3] = z;
+        bricks[base + 4] = w;
+        bricks[base + 5] = l;
+        bricks[base + 6] = h;
+        numbers[id] = ++count;
+        return count - 1;
+    }
+}
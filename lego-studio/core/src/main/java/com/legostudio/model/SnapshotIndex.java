@@ -0,0 +1,112 @@
+package com.legostudio.model;
+
+import java.util.Arrays;
+
+import static com.legostudio.model.Chunk.SHIFT;
+
+/**
+ * Keeps a {@link PersistentChunkMap} of brick records in step with a world so
+ * that publishing a {@link WorldSnapshot} costs O(1).
+ *
+ * Bricks are grouped by the chunk holding their origin. Between two publishes
+ * every node and record list is owned by the current token and edited in
+ * place; publishing switches to a new token, so the first edit afterwards
+ * copies one trie path and one chunk's records, and leaves the published
+ * version untouched.
+ */
+final class SnapshotIndex {
+    static final int RECORD_INTS = 5; // id, type | color << 8 | quarter turns << 16, x, y, z
+
+    /**
+     * Brick records whose origin lies in one chunk.
+     */
+    static final class ChunkRecords {
+        final Object owner;
+        int[] data;
+        int size; // In records
+
+        ChunkRecords(Object owner, int[] data, int size) {
+            this.owner = owner;
+            this.data = data;
+            this.size = size;
+        }
+    }
+
+    private PersistentChunkMap<ChunkRecords> chunks = PersistentChunkMap.empty();
+    private Object owner = new Object();
+    private int brickCount;
+    private WorldSnapshot published;
+
+    SnapshotIndex(BrickStore store) {
+        store.forEach((id, type, color, x, y, z, rotation) -> add(store, id));
+    }
+
+    WorldSnapshot publish(long version) {
+        if (published == null || published.getVersion() != version) {
+            published = new WorldSnapshot(version, chunks, brickCount);
+            owner = new Object();
+        }
+        return published;
+    }
+
+    void add(BrickStore store, int id) {
+        int x = store.getX(id), y = store.getY(id), z = store.getZ(id);
+        long key = ChunkMap.key(x >> SHIFT, y >> SHIFT, z >> SHIFT);
+        ChunkRecords records = editable(chunks.get(key), 1);
+        int base = records.size++ * RECORD_INTS;
+        records.data[base] = id;
+        records.data[base + 1] = store.getType(id).ordinal()
+                | store.getColor(id).ordinal() << 8 | (store.getRotation(id) / 90) << 16;
+        records.data[base + 2] = x;
+        records.data[base + 3] = y;
+        records.data[base + 4] = z;
+        chunks = chunks.put(key, records, owner);
+        brickCount++;
+    }
+
+    /**
+     * Drop a brick's record. Must be called while the brick is still in the store.
+     */
+    void remove(BrickStore store, int id) {
+        int x = store.getX(id), y = store.getY(id), z = store.getZ(id);
+        long key = ChunkMap.key(x >> SHIFT, y >> SHIFT, z >> SHIFT);
+        ChunkRecords current = chunks.get(key);
+        if (current.size == 1) {
+            chunks = chunks.remove(key, owner);
+        } else {
+            ChunkRecords records = editable(current, 0);
+            int index = 0;
+            while (records.data[index * RECORD_INTS] != id) {
+                index++;
+            }
+            // Swap-remove keeps records dense; their order carries no meaning
+            int last = --records.size;
+            System.arraycopy(records.data, last * RECORD_INTS, records.data, index * RECORD_INTS, RECORD_INTS);
+            chunks = chunks.put(key, records, owner);
+        }
+        brickCount--;
+    }
+
+    void clear() {
+        chunks = PersistentChunkMap.empty();
+        brickCount = 0;
+    }
+
+    /**
+     * Get records owned by the current token with room for extra more, copying if they are shared.
+     */
+    private ChunkRecords editable(ChunkRecords records, int extra) {
+        if (records == null) {
+            return new ChunkRecords(owner, new int[4 * RECORD_INTS], 0);
+        }
+        int needed = (records.size + extra) * RECORD_INTS;
+        if (records.owner == owner) {
+            if (needed > records.data.length) {
+                records.data = Arrays.copyOf(records.data, Math.max(needed, records.data.length * 2));
+            }
+            return records;
+        }
+        int[] data = Arrays.copyOf(records.data, Math.max(needed, records.size * RECORD_INTS + RECORD_INTS));
+        return new ChunkRecords(owner, data, records.size);
+    }
+}
@@ -0,0 +1,65 @@
+package com.legostudio.model;
+
+/**
+ * Describes one or more coalesced mutations of a {@link BrickWorld}.
+ *
+ * Consumers that mirror the world should apply the change in this order:
+ * drop everything if {@link #isCleared()}, then remove {@link #getRemoved()},
+ * then add {@link #getAdded()}. A brick added and removed within the same
+ * batch does not appear at all. Batches are owned by the event and must not
+ * be modified.
+ */
+public final class WorldChangeEvent {
+    private final long version;
+    private final boolean cleared;
+    private final BrickBatch added;
+    private final BrickBatch removed;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    WorldChangeEvent(long version, boolean cleared, BrickBatch added, BrickBatch removed,
+                     int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.version = version;
+        this.cleared = cleared;
+        this.added = added;
+        this.removed = removed;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    /**
+     * World version after this change.
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * True if the world was cleared; bricks present before are gone without being listed in removed.
+     */
+    public boolean isCleared() { return cleared; }
+
+    public BrickBatch getAdded() { return added; }
+    public BrickBatch getRemoved() { return removed; }
+
+    /**
+     * True if the change touched no cells (empty bounds).
+     */
+    public boolean isEmpty() { return minX > maxX; }
+
+    // Inclusive bounds of all grid cells touched by the change
+    public int getMinX() { return minX; }
+    public int getMinY() { return minY; }
+    public int getMinZ() { return minZ; }
+    public int getMaxX() { return maxX; }
+    public int getMaxY() { return maxY; }
+    public int getMaxZ() { return maxZ; }
+
+    @Override
+    public String toString() {
+        return String.format("WorldChangeEvent[v%d%s, +%d, -%d, cells=(%d,%d,%d)..(%d,%d,%d)]",
+                version, cleared ? ", cleared" : "", added.size(), removed.size(),
+                minX, minY, minZ, maxX, maxY, maxZ);
+    }
+}
@@ -0,0 +1,9 @@
+package com.legostudio.model;
+
+/**
+ * Receives change notifications from a {@link BrickWorld}.
+ */
+@FunctionalInterface
+public interface WorldChangeListener {
+    void onWorldChanged(WorldChangeEvent event);
+}
@@ -0,0 +1,179 @@
+package com.legostudio.model;
+
+import static com.legostudio.model.BrickStore.NO_BRICK;
+import static com.legostudio.model.Chunk.SHIFT;
+
+/**
+ * Immutable view of a {@link BrickWorld} at one version.
+ *
+ * Snapshots share structure with each other and with the live world, so
+ * taking one is cheap. They can be read from any thread without locking
+ * while the world keeps changing, which makes them the way to hand world
+ * state to mesh builders, exporters and other background work.
+ */
+public final class WorldSnapshot {
+    private static final BrickType[] TYPES = BrickType.values();
+    private static final BrickColor[] COLORS = BrickColor.values();
+    private static final int MAX_SPAN;
+    private static final int MAX_HEIGHT;
+
+    static {
+        int span = 1, height = 1;
+        for (BrickType type : TYPES) {
+            span = Math.max(span, Math.max(type.getWidth(), type.getLength()));
+            height = Math.max(height, type.getHeight());
+        }
+        MAX_SPAN = span;
+        MAX_HEIGHT = height;
+    }
+
+    private final long version;
+    private final PersistentChunkMap<SnapshotIndex.ChunkRecords> chunks;
+    private final int brickCount;
+
+    WorldSnapshot(long version, PersistentChunkMap<SnapshotIndex.ChunkRecords> chunks, int brickCount) {
+        this.version = version;
+        this.chunks = chunks;
+        this.brickCount = brickCount;
+    }
+
+    /**
+     * World version this snapshot was taken at.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getBrickCount() {
+        return brickCount;
+    }
+
+    public boolean isEmpty() {
+        return brickCount == 0;
+    }
+
+    /**
+     * Visit every brick. The order is unspecified but stable for a given snapshot.
+     */
+    public void forEachBrick(BrickVisitor visitor) {
+        chunks.forEach(records -> {
+            int[] data = records.data;
+            for (int base = 0; base < records.size * SnapshotIndex.RECORD_INTS; base += SnapshotIndex.RECORD_INTS) {
+                visit(data, base, visitor);
+            }
+        });
+    }
+
+    /**
+     * Get the ID the brick covering the given cell had at this version, or {@link BrickStore#NO_BRICK}.
+     */
+    public int getBrickIdAt(int x, int y, int z) {
+        int[] found = {NO_BRICK};
+        findAt(x, y, z, (id, type, color, bx, by, bz, rotation) -> found[0] = id);
+        return found[0];
+    }
+
+    /**
+     * Get a detached view of the brick covering the given cell, or null.
+     */
+    public Brick getBrickAt(int x, int y, int z) {
+        Brick[] found = {null};
+        findAt(x, y, z, (id, type, color, bx, by, bz, rotation) -> {
+            found[0] = new Brick(type, color, bx, by, bz);
+            found[0].setRotation(rotation);
+        });
+        return found[0];
+    }
+
+    /**
+     * Collect the occupied cells around one chunk, for many coverage tests near
+     * the bricks whose origin lies in it. See {@link ChunkOccupancy}.
+     */
+    public ChunkOccupancy occupancyAround(int cx, int cy, int cz) {
+        ChunkOccupancy occupancy = new ChunkOccupancy(this, cx, cy, cz, MAX_SPAN, MAX_HEIGHT);
+        for (int ny = Math.max(cy - 1, 0); ny <= cy + 1; ny++) {
+            for (int nz = cz - 1; nz <= cz + 1; nz++) {
+                for (int nx = cx - 1; nx <= cx + 1; nx++) {
+                    SnapshotIndex.ChunkRecords records = chunks.get(ChunkMap.key(nx, ny, nz));
+                    if (records == null) {
+                        continue;
+                    }
+                    int[] data = records.data;
+                    for (int base = 0; base < records.size * SnapshotIndex.RECORD_INTS;
+                         base += SnapshotIndex.RECORD_INTS) {
+                        BrickType type = TYPES[data[base + 1] & 0xFF];
+                        int rotation = (data[base + 1] >>> 16) * 90;
+                        occupancy.add(data[base + 2], data[base + 3], data[base + 4],
+                                type.getActualWidth(rotation), type.getHeight(), type.getActualLength(rotation));
+                    }
+                }
+            }
+        }
+        return occupancy;
+    }
+
+    /**
+     * Start a lazily built lookup from cells to bricks, for walking many bricks
+     * and their connections. See {@link SnapshotCellIndex}.
+     */
+    public SnapshotCellIndex cellIndex() {
+        return new SnapshotCellIndex(this, MAX_SPAN, MAX_HEIGHT);
+    }
+
+    /**
+     * Visit the bricks whose origin lies in the given chunk.
+     */
+    void forEachInChunk(int cx, int cy, int cz, BrickVisitor visitor) {
+        SnapshotIndex.ChunkRecords records = chunks.get(ChunkMap.key(cx, cy, cz));
+        if (records == null) {
+            return;
+        }
+        int[] data = records.data;
+        for (int base = 0; base < records.size * SnapshotIndex.RECORD_INTS; base += SnapshotIndex.RECORD_INTS) {
+            visit(data, base, visitor);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WorldSnapshot[v%d, %d bricks]", version, brickCount);
+    }
+
+    /**
+     * Scan the chunks that may hold the origin of a brick covering the cell.
+     */
+    private void findAt(int x, int y, int z, BrickVisitor visitor) {
+        if (y < 0) {
+            return;
+        }
+        for (int cy = Math.max(y - MAX_HEIGHT + 1, 0) >> SHIFT; cy <= y >> SHIFT; cy++) {
+            for (int cz = (z - MAX_SPAN + 1) >> SHIFT; cz <= z >> SHIFT; cz++) {
+                for (int cx = (x - MAX_SPAN + 1) >> SHIFT; cx <= x >> SHIFT; cx++) {
+                    SnapshotIndex.ChunkRecords records = chunks.get(ChunkMap.key(cx, cy, cz));
+                    if (records == null) {
+                        continue;
+                    }
+                    int[] data = records.data;
+                    for (int base = 0; base < records.size * SnapshotIndex.RECORD_INTS;
+                         base += SnapshotIndex.RECORD_INTS) {
+                        BrickType type = TYPES[data[base + 1] & 0xFF];
+                        int rotation = (data[base + 1] >>> 16) * 90;
+                        int bx = data[base + 2], by = data[base + 3], bz = data[base + 4];
+                        if (x >= bx && x < bx + type.getActualWidth(rotation)
+                                && y >= by && y < by + type.getHeight()
+                                && z >= bz && z < bz + type.getActualLength(rotation)) {
+                            visit(data, base, visitor);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void visit(int[] data, int base, BrickVisitor visitor) {
+        int packed = data[base + 1];
+        visitor.visit(data[base], TYPES[packed & 0xFF], COLORS[(packed >>> 8) & 0xFF],
+                data[base + 2], data[base + 3], data[base + 4], (packed >>> 16) * 90);
+    }
+}
@@ -1,7 +1,8 @@
 @echo off
 REM Lego Studio 3D - Build and Run Script for Windows
-REM Usage: run.bat [build|run|clean]
+REM Usage: run.bat [build|run|package|clean|cli]
 
+if "%1"=="cli" goto cli
 cd /d "%~dp0"
 
 if "%1"=="" goto run
@@ -25,7 +26,29 @@ goto end
 :package
 echo Packaging Lego Studio...
 call mvn clean package -q
-echo JAR created in target/
+echo JARs created in app\target\ and core\target\
+goto end
+
+:cli
+set CLI_JAR=%~dp0core\target\lego-studio-core-1.0.0.jar
+set CLI_CDS=%~dp0core\target\lego-studio-cli.jsa
+REM Incremental; the class data sharing archive is dropped whenever the jar changes
+call mvn -f "%~dp0pom.xml" -pl core package -q
+fc /b "%CLI_JAR%" "%CLI_JAR%.archived" >nul 2>&1 || (
+    del "%CLI_CDS%" 2>nul
+    copy /y "%CLI_JAR%" "%CLI_JAR%.archived" >nul
+)
+shift
+set CLI_ARGS=
+:cli_args
+if "%~1"=="" goto cli_run
+set CLI_ARGS=%CLI_ARGS% "%~1"
+shift
+goto cli_args
+:cli_run
+set CDS_OPT=-XX:ArchiveClassesAtExit="%CLI_CDS%"
+if exist "%CLI_CDS%" set CDS_OPT=-XX:SharedArchiveFile="%CLI_CDS%"
+java -Xshare:auto %CDS_OPT% -jar "%CLI_JAR%" %CLI_ARGS%
 goto end
 
 :clean
@@ -35,10 +58,11 @@ echo Clean complete!
 goto end
 
 :usage
-echo Usage: run.bat [build^|run^|package^|clean]
+echo Usage: run.bat [build^|run^|package^|clean^|cli]
 echo   build   - Compile the project
 echo   run     - Build and run (default)
-echo   package - Create executable JAR
+echo   package - Create executable JARs
+echo   cli     - Headless batch tool (run.bat cli --help)
 echo   clean   - Remove build files
 goto end
 
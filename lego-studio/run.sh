@@ -1,10 +1,39 @@
 #!/bin/bash
 
 # Lego Studio 3D - Build and Run Script
-# Usage: ./run.sh [build|run|clean]
+# Usage: ./run.sh [build|run|package|clean] [model files to import...]
+#        ./run.sh cli [options] <model files or directories...>
 
 set -e
 
+# Headless tool: no LWJGL, no GPU. Rebuilt only when the core sources change, then started
+# straight from the jar so that relative paths stay as given; the class data sharing archive
+# written on first use of each build cuts the startup of every later run.
+if [ "$1" = "cli" ]; then
+    DIR="$(cd "$(dirname "$0")" && pwd)"
+    JAR="$DIR/core/target/lego-studio-core-1.0.0.jar"
+    CDS="$DIR/core/target/lego-studio-cli.jsa"
+    if [ ! -f "$JAR" ] || [ -n "$(find "$DIR/core/src" "$DIR/core/pom.xml" "$DIR/pom.xml" -newer "$JAR" -print -quit)" ]; then
+        (cd "$DIR" && mvn -pl core package -q)
+        touch "$JAR"
+        rm -f "$CDS" # Archived for the old jar
+    fi
+    if [ -f "$CDS" ]; then CDS_OPT="-XX:SharedArchiveFile=$CDS"; else CDS_OPT="-XX:ArchiveClassesAtExit=$CDS"; fi
+    shift
+    exec java -Xshare:auto "$CDS_OPT" -jar "$JAR" "$@"
+fi
+
+# Resolve model paths before changing directory. Maven splits exec.args on spaces outside
+# quotes, so each path is quoted (with single quotes if it holds a double quote).
+MODELS=""
+for arg in "${@:2}"; do
+    model="$(cd "$(dirname "$arg")" && pwd)/$(basename "$arg")"
+    case "$model" in
+        *\"*) MODELS="$MODELS '$model'" ;;
+        *) MODELS="$MODELS \"$model\"" ;;
+    esac
+done
+
 cd "$(dirname "$0")"
 
 case "${1:-run}" in
@@ -15,12 +44,17 @@ case "${1:-run}" in
         ;;
     run)
         echo "Building and running Lego Studio..."
-        mvn clean compile exec:exec -q
+        if [ -n "$MODELS" ]; then
+            mvn clean compile exec:exec -q \
+                -Dexec.args="-XstartOnFirstThread -classpath %classpath com.legostudio.LegoStudio$MODELS"
+        else
+            mvn clean compile exec:exec -q
+        fi
         ;;
     package)
         echo "Packaging Lego Studio..."
         mvn clean package -q
-        echo "JAR created in target/"
+        echo "JARs created in app/target/ and core/target/"
         ;;
     clean)
         echo "Cleaning build files..."
@@ -28,10 +62,11 @@ case "${1:-run}" in
         echo "Clean complete!"
         ;;
     *)
-        echo "Usage: ./run.sh [build|run|package|clean]"
+        echo "Usage: ./run.sh [build|run|package|clean|cli] [model files...]"
         echo "  build   - Compile the project"
-        echo "  run     - Build and run (default)"
-        echo "  package - Create executable JAR"
+        echo "  run     - Build and run (default), importing any model files given"
+        echo "  package - Create executable JARs"
+        echo "  cli     - Headless batch tool (./run.sh cli --help)"
         echo "  clean   - Remove build files"
         exit 1
         ;;